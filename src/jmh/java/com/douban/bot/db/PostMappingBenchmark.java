@@ -0,0 +1,84 @@
+package com.douban.bot.db;
+
+import com.douban.bot.model.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Post 与数据库行之间的转换：toPostRow 序列化 JSON 列，toPost 只保存原文，
+ * toPostAndRead 包含首次读取 JSON 字段时的解析
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostMappingBenchmark {
+
+    // 图片和匹配关键词的数量
+    @Param({"0", "9"})
+    public int items;
+
+    private Post post;
+    private PostDao.PostRow row;
+
+    @Setup
+    public void setUp() {
+        List<String> photos = new ArrayList<>();
+        List<String> keywords = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            photos.add("https://img1.doubanio.com/view/group_topic/l/public/p" + (100000 + i) + ".webp");
+            keywords.add("关键词" + i);
+        }
+        post = Post.builder()
+                .postId("300000001")
+                .groupId("beijingzufang")
+                .authorInfo(Map.of("name", "用户", "alt", "https://www.douban.com/people/u1/"))
+                .alt("https://www.douban.com/group/topic/300000001/")
+                .title("朝阳两居室整租，近地铁")
+                .content("南北通透，精装修，拎包入住。".repeat(20))
+                .photoList(photos)
+                .isMatched(!keywords.isEmpty())
+                .keywordList(keywords)
+                .botReplied(false)
+                .simhash(123456789L)
+                .isDuplicate(false)
+                .replyCount(12)
+                .created(LocalDateTime.of(2024, 5, 1, 12, 30))
+                .updated(LocalDateTime.of(2024, 5, 2, 8, 0))
+                .build();
+        row = PostDao.toPostRow(post);
+    }
+
+    @Benchmark
+    public PostDao.PostRow toPostRow() {
+        return PostDao.toPostRow(post);
+    }
+
+    @Benchmark
+    public Post toPost() {
+        return PostDao.toPost(row);
+    }
+
+    @Benchmark
+    public int toPostAndRead() {
+        Post mapped = PostDao.toPost(row);
+        return mapped.getPhotoList().size() + mapped.getKeywordList().size() + mapped.getAuthorInfo().size();
+    }
+}
@@ -0,0 +1,54 @@
+package com.douban.bot.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发送评论后的验证（DoubanApiService）：在帖子页中查找评论内容、提取回应数。
+ * commentMissing 为评论不在页面中的情况，需要先查评论区再查全页
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommentVerificationBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private String topicHtml;
+
+    @Setup
+    public void setUp() {
+        topicHtml = Fixtures.topicPage(size)
+                .replace("</ul>", "<li class=\"comment-item\"><p class=\"reply-content\">你好，请问房子还在吗？</p></li></ul>");
+    }
+
+    @Benchmark
+    public boolean commentPresent() {
+        return DoubanApiService.isCommentPresent(topicHtml, "你好，请问房子还在吗？");
+    }
+
+    @Benchmark
+    public boolean commentMissing() {
+        return DoubanApiService.isCommentPresent(topicHtml, "这条评论不在页面中");
+    }
+
+    @Benchmark
+    public Integer extractCommentCount() {
+        return DoubanApiService.extractCommentCount(topicHtml);
+    }
+}
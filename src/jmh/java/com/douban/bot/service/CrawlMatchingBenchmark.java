@@ -0,0 +1,78 @@
+package com.douban.bot.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 爬取时对每个帖子执行的判断：关键词/排除关键词匹配（KeywordMatcher）和反爬页面识别（BlockedPageDetector）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CrawlMatchingBenchmark {
+
+    // 关键词和排除关键词各自的数量
+    @Param({"5", "50"})
+    public int keywords;
+
+    private KeywordMatcher matcher;
+    private String title;
+    private String content;
+    private String normalPage;
+    private String blockedPage;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        List<String> include = new ArrayList<>();
+        List<String> exclude = new ArrayList<>();
+        for (int i = 0; i < keywords; i++) {
+            include.add("关键词" + i);
+            exclude.add("排除" + i);
+        }
+        // 最后一个关键词命中，匹配需要扫描全部规则
+        include.set(keywords - 1, "两居室");
+        matcher = new KeywordMatcher(include, exclude);
+        title = Fixtures.words(random, 6) + "两居室";
+        content = Fixtures.words(random, 200);
+        normalPage = Fixtures.listPage("medium");
+        blockedPage = Fixtures.blockedPage();
+    }
+
+    @Benchmark
+    public KeywordMatcher.Result match() {
+        return matcher.match(title, content);
+    }
+
+    @Benchmark
+    public boolean isExcluded() {
+        return matcher.isExcluded(title, content);
+    }
+
+    @Benchmark
+    public BlockedPageDetector.Verdict detectBlockedNormal() {
+        return BlockedPageDetector.detect(normalPage);
+    }
+
+    @Benchmark
+    public BlockedPageDetector.Verdict detectBlockedBlocked() {
+        return BlockedPageDetector.detect(blockedPage);
+    }
+}
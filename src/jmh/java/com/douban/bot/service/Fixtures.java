@@ -0,0 +1,143 @@
+package com.douban.bot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 基准测试用的页面：优先读取 classpath 下录制的页面 fixtures/{name}-{size}.html（如 fixtures/list-large.html），
+ * 没有时按豆瓣页面结构生成。size 决定页面规模：
+ * small 为精简页面（10 条评论、无页面框架），medium 接近真实页面（100 条评论、约 40KB 脚本和导航），
+ * large 为最重的情况（100 条长评论带图片、约 150KB 页面框架）
+ */
+public final class Fixtures {
+
+    private static final String[] WORDS = {
+            "整租", "合租", "一居室", "两居室", "地铁", "朝阳", "海淀", "望京", "国贸", "通州", "转租", "押一付一",
+            "南北通透", "精装修", "拎包入住", "近公园", "带阳台", "独卫", "主卧", "次卧", "限女生", "短租", "长租",
+            "小区安静", "采光好", "可养猫", "有电梯", "民水民电", "燃气灶", "洗衣机", "空调", "冰箱", "宽带",
+            "房东直租", "无中介费", "随时看房", "下月入住", "价格可谈", "通勤方便", "步行五分钟", "公交站"
+    };
+
+    private Fixtures() {
+    }
+
+    public static String listPage(String size) {
+        String recorded = recorded("list", size);
+        if (recorded != null) {
+            return recorded;
+        }
+        Random random = new Random(42);
+        StringBuilder html = new StringBuilder(64 * 1024);
+        html.append("<html><head><title>小组讨论</title>").append(chrome(size, random)).append("</head><body>")
+                .append(navigation(size)).append("<div id=\"content\"><table class=\"olt\">")
+                .append("<tr class=\"th\"><td>讨论</td><td>作者</td><td>回应</td><td>最后回应</td></tr>");
+        for (int i = 0; i < 25; i++) {
+            long topicId = 300_000_000L + i;
+            String title = words(random, 6);
+            html.append("<tr><td class=\"title\"><a href=\"https://www.douban.com/group/topic/").append(topicId)
+                    .append("/\" title=\"").append(title).append("\">").append(title).append("</a></td>")
+                    .append("<td nowrap=\"nowrap\"><a href=\"https://www.douban.com/people/u").append(i)
+                    .append("/\">用户").append(i).append("</a></td>")
+                    .append("<td nowrap=\"nowrap\" class=\"r-count\">").append(i % 7 == 0 ? "" : i * 3).append("</td>")
+                    .append("<td nowrap=\"nowrap\" class=\"time\">0").append(1 + i % 9).append("-1").append(i % 10)
+                    .append(" 1").append(i % 10).append(":3").append(i % 10).append("</td></tr>");
+        }
+        html.append("</table></div>").append(footer(size)).append("</body></html>");
+        return html.toString();
+    }
+
+    public static String topicPage(String size) {
+        String recorded = recorded("topic", size);
+        if (recorded != null) {
+            return recorded;
+        }
+        Random random = new Random(7);
+        int comments = "small".equals(size) ? 10 : 100;
+        int commentWords = "large".equals(size) ? 60 : 12;
+        StringBuilder html = new StringBuilder(128 * 1024);
+        html.append("<html><head><title>帖子</title>").append(chrome(size, random))
+                .append("<script>var _CONFIG = {ck: 'abcd'};</script></head><body>")
+                .append(navigation(size)).append("<div id=\"content\"><h1>").append(words(random, 6)).append("</h1>")
+                .append("<span class=\"create-time\">2024-05-01 12:30:00</span>")
+                .append("<div class=\"topic-content\"><p>").append(words(random, "large".equals(size) ? 400 : 80)).append("</p>");
+        int photos = "large".equals(size) ? 9 : 2;
+        for (int i = 0; i < photos; i++) {
+            html.append("<div class=\"image-wrapper\"><img src=\"https://img1.doubanio.com/view/group_topic/l/public/p")
+                    .append(100000 + i).append(".webp\"></div>");
+        }
+        html.append("</div><div>").append(comments).append(" 回应</div><ul id=\"comments\">");
+        for (int i = 0; i < comments; i++) {
+            html.append("<li class=\"comment-item reply-item\" data-id=\"").append(4_000_000_000L + i).append("\">")
+                    .append("<div class=\"reply-doc\"><div class=\"bg-img-green\"><h4><a href=\"https://www.douban.com/people/c")
+                    .append(i).append("/\">评论者").append(i).append("</a><span class=\"pubtime\">2024-05-0")
+                    .append(1 + i % 9).append(" 1").append(i % 10).append(":00:00</span></h4></div>");
+            if (i % 5 == 4) {
+                html.append("<div class=\"reply-quote\"><a href=\"#comment-").append(4_000_000_000L + i - 1)
+                        .append("\">回复</a></div>");
+            }
+            html.append("<p class=\"reply-content\">").append(words(random, commentWords)).append("</p>")
+                    .append("<div class=\"operation-div\"><span class=\"like-count\">").append(i % 6)
+                    .append("</span></div></div></li>");
+        }
+        html.append("</ul><div class=\"paginator\"><span class=\"thispage\" data-total-page=\"3\">1</span>")
+                .append("<a href=\"?start=100\">2</a><a href=\"?start=200\">3</a></div></div>")
+                .append(footer(size)).append("</body></html>");
+        return html.toString();
+    }
+
+    public static String blockedPage() {
+        return "<html><head><title>禁止访问</title></head><body><div class=\"content\">"
+                + "<p>检测到有异常请求从你的 IP 发出，请输入验证码</p><form id=\"captcha\"></form></div></body></html>";
+    }
+
+    public static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder(count * 4);
+        for (int i = 0; i < count; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(i % 8 == 7 ? "。" : "，");
+        }
+        return text.toString();
+    }
+
+    private static String chrome(String size, Random random) {
+        int kb = switch (size) {
+            case "small" -> 0;
+            case "large" -> 150;
+            default -> 40;
+        };
+        StringBuilder chrome = new StringBuilder(kb * 1024);
+        chrome.append("<style>");
+        while (chrome.length() < kb * 512) {
+            chrome.append(".c").append(random.nextInt(100000)).append("{margin:0 auto;color:#3377aa;}");
+        }
+        chrome.append("</style><script>");
+        while (chrome.length() < kb * 1024) {
+            chrome.append("window.__t").append(random.nextInt(100000)).append("=function(a){return a&&a.length};");
+        }
+        return chrome.append("</script>").toString();
+    }
+
+    private static String navigation(String size) {
+        if ("small".equals(size)) {
+            return "";
+        }
+        StringBuilder nav = new StringBuilder("<div id=\"db-global-nav\"><ul>");
+        for (int i = 0; i < 40; i++) {
+            nav.append("<li><a href=\"https://www.douban.com/nav/").append(i).append("\">导航").append(i).append("</a></li>");
+        }
+        return nav.append("</ul></div>").toString();
+    }
+
+    private static String footer(String size) {
+        return "small".equals(size) ? "" : "<div id=\"footer\"><span>© 2005－2024 douban.com, all rights reserved</span></div>";
+    }
+
+    private static String recorded(String name, String size) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name + "-" + size + ".html")) {
+            return in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.douban.bot.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 列表页和帖子页解析。*Document 为在已解析的 Document 上提取字段，其余包含 Jsoup.parse 的完整耗时；
+ * parseListPage 和 parseTopicPage 为爬虫实际使用的流式解析，对应 parsePosts 和 parsePostDetail + parseComments。
+ * 用 -prof gc 运行时 gc.alloc.rate.norm 即每解析一页产生的垃圾（字节）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlParserBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private String listHtml;
+    private String topicHtml;
+    private Document listDoc;
+    private Document topicDoc;
+
+    @Setup
+    public void setUp() {
+        listHtml = Fixtures.listPage(size);
+        topicHtml = Fixtures.topicPage(size);
+        listDoc = Jsoup.parse(listHtml);
+        topicDoc = Jsoup.parse(topicHtml);
+    }
+
+    @Benchmark
+    public List<HtmlParser.ListRow> parsePosts() {
+        return HtmlParser.parsePosts(Jsoup.parse(listHtml));
+    }
+
+    @Benchmark
+    public List<HtmlParser.ListRow> parsePostsDocument() {
+        return HtmlParser.parsePosts(listDoc);
+    }
+
+    @Benchmark
+    public List<HtmlParser.ListRow> parseListPage() {
+        return HtmlParser.parseListPage(listHtml);
+    }
+
+    @Benchmark
+    public HtmlParser.TopicDetail parsePostDetail() {
+        return HtmlParser.parsePostDetail(Jsoup.parse(topicHtml));
+    }
+
+    @Benchmark
+    public HtmlParser.TopicDetail parsePostDetailDocument() {
+        return HtmlParser.parsePostDetail(topicDoc);
+    }
+
+    @Benchmark
+    public List<HtmlParser.CommentRow> parseComments() {
+        return HtmlParser.parseComments(Jsoup.parse(topicHtml));
+    }
+
+    @Benchmark
+    public HtmlParser.TopicPage parseTopicPage() {
+        return HtmlParser.parseTopicPage(topicHtml);
+    }
+
+    @Benchmark
+    public List<HtmlParser.CommentRow> parseCommentsDocument() {
+        return HtmlParser.parseComments(topicDoc);
+    }
+}
@@ -1,5 +1,6 @@
 package com.douban.bot.config;
 
+import com.douban.bot.utils.HttpUtils;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -40,11 +41,58 @@ public class AppConfig {
     private Integer crawlerMaxHistoryPosts = 50;
     private Integer crawlerMaxHistoryComments = 200;
     private Boolean crawlerDebug = false;
+    // 爬取任务租约时长（秒），超时未完成的任务可被重新领取
+    private Integer crawlerLeaseSeconds = 600;
+    // 单个列表页/帖子页的最大尝试次数，超过后本轮放弃
+    private Integer crawlerMaxAttempts = 3;
+    // 回复数未变化的帖子重新抓取详情的间隔（小时）
+    private Integer crawlerTopicRefreshHours = 24;
+    // 每次同步单个帖子评论时最多翻的页数（每页 100 条），其余下次继续
+    private Integer crawlerMaxCommentPages = 20;
+    // 按各小组的发帖速率自动调整爬取间隔，关闭时使用配置的 sleepSeconds
+    private Boolean crawlerAdaptiveInterval = true;
+    // 自动间隔的上下限（秒）
+    private Integer crawlerMinIntervalSeconds = 300;
+    private Integer crawlerMaxIntervalSeconds = 7200;
+    // 每次爬取期望看到的新帖数，发帖越快间隔越短
+    private Integer crawlerTargetPostsPerCrawl = 5;
+    // 所有小组每小时的列表页请求预算，超出时按平方根规则分配
+    private Integer crawlerListRequestsPerHour = 60;
+    // 启动时已到期的爬虫配置之间错开的间隔（秒）
+    private Integer crawlerBootStaggerSeconds = 60;
+    // 历史回溯未指定页数时默认回溯的页数
+    private Integer crawlerBackfillPages = 100;
+    // 会话熔断：最近 20 个请求中被拦截的比例达到该值时暂停该会话的请求
+    private Double crawlerBreakerBlockRate = 0.5;
+    // 熔断后首次等待的时间（秒），探测仍被拦截时加倍，最长 crawlerBreakerMaxSeconds
+    private Integer crawlerBreakerBaseSeconds = 60;
+    private Integer crawlerBreakerMaxSeconds = 1800;
+    // 需要等待的时间超过该值（秒）时结束本轮爬取，剩余任务下次继续
+    private Integer crawlerBreakerMaxWaitSeconds = 300;
+    // 页面响应缓存的有效期（秒），有效期内相同的页面请求共用结果，0 为关闭
+    private Integer responseCacheTtlSeconds = 30;
+    // 请求间随机等待时间的倍数（1 为正常速度，对接本地模拟服务压测时可设为 0）
+    private Double crawlerDelayScale = 1.0;
+    
+    // 近似重复帖判定的最大 SimHash 海明距离（0-3）
+    private Integer duplicateMaxDistance = 3;
+    
+    // 计数表校正间隔（毫秒）
+    private Long counterReconcileIntervalMs = 3600000L;
+
+    // RepositoryService 缓存的帖子爬取状态条数和各缓存的过期时间（秒）
+    private Integer repositoryCacheSize = 20000;
+    private Integer repositoryCacheTtlSeconds = 1800;
     
     // Web配置
     private Integer webPort = 8080;
     private String dbPath = "./db.sqlite3";
     
+    public void setCrawlerDelayScale(Double crawlerDelayScale) {
+        this.crawlerDelayScale = crawlerDelayScale;
+        HttpUtils.setDelayScale(crawlerDelayScale != null ? crawlerDelayScale : 1.0);
+    }
+
     public String getGroupTopicsBaseUrl() {
         return doubanBaseHost + "/group/%s/discussion";
     }
@@ -2,11 +2,14 @@ package com.douban.bot.controller;
 
 import com.douban.bot.config.AppConfig;
 import com.douban.bot.db.BotConfigDao;
+import com.douban.bot.db.PostProjection;
 import com.douban.bot.db.RepositoryService;
 import com.douban.bot.model.Comment;
 import com.douban.bot.model.Group;
 import com.douban.bot.model.Post;
 import com.douban.bot.service.LlmClient;
+import com.douban.bot.service.SearchService;
+import com.douban.bot.utils.TimeUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jdbi.v3.core.Jdbi;
@@ -29,6 +32,7 @@ public class ApiController {
     private final RepositoryService repository;
     private final AppConfig appConfig;
     private final LlmClient llmClient;
+    private final SearchService searchService;
     private final Jdbi jdbi;
 
     @GetMapping("/groups")
@@ -53,7 +57,9 @@ public class ApiController {
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int page_size,
             @RequestParam(required = false) String bot_replied,
-            @RequestParam(required = false) String sort) {
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) String fields) {
         try {
             if (page < 1) page = 1;
             if (page_size < 1 || page_size > 100) page_size = 20;
@@ -72,7 +78,24 @@ public class ApiController {
                 sortOrder = sort.toLowerCase();
             }
 
-            List<Post> posts = repository.getPostsWithPagination(group_id, page, page_size, botRepliedFilter, sortOrder);
+            // fields 指定列投影 > view=summary 轻量视图 > 完整帖子（兼容旧调用方）
+            List<?> posts;
+            if (fields != null && !fields.trim().isEmpty()) {
+                List<String> fieldList;
+                try {
+                    fieldList = PostProjection.parseFields(fields);
+                } catch (IllegalArgumentException e) {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("success", false);
+                    response.put("error", e.getMessage());
+                    return ResponseEntity.status(400).body(response);
+                }
+                posts = repository.getPostProjectionWithPagination(fieldList, group_id, page, page_size, botRepliedFilter, sortOrder);
+            } else if ("summary".equalsIgnoreCase(view)) {
+                posts = repository.getPostSummariesWithPagination(group_id, page, page_size, botRepliedFilter, sortOrder);
+            } else {
+                posts = repository.getPostsWithPagination(group_id, page, page_size, botRepliedFilter, sortOrder);
+            }
             int total = repository.getPostsCount(group_id, botRepliedFilter);
             int pages = (total + page_size - 1) / page_size;
 
@@ -133,6 +156,91 @@ public class ApiController {
         }
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "post") String type,
+            @RequestParam(required = false) String group_id,
+            @RequestParam(required = false) String post_id,
+            @RequestParam(required = false) String is_matched,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int page_size) {
+        Map<String, Object> response = new HashMap<>();
+        if (!SearchService.TYPE_POST.equals(type) && !SearchService.TYPE_COMMENT.equals(type)) {
+            response.put("success", false);
+            response.put("error", "type 参数无效: " + type + "，可选 post/comment");
+            return ResponseEntity.status(400).body(response);
+        }
+        String createdFrom;
+        String createdTo;
+        try {
+            createdFrom = ExportController.normalizeDateTime(from);
+            createdTo = ExportController.normalizeDateTime(to);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "时间参数格式错误，应为 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss");
+            return ResponseEntity.status(400).body(response);
+        }
+        try {
+            if (page < 1) page = 1;
+            if (page_size < 1 || page_size > 100) page_size = 20;
+            String groupId = group_id == null || group_id.isEmpty() ? null : group_id;
+
+            String isMatchedFilter = null;
+            if (is_matched != null && (is_matched.equalsIgnoreCase("true") || is_matched.equalsIgnoreCase("false"))) {
+                isMatchedFilter = is_matched.toLowerCase();
+            }
+
+            long startMs = System.currentTimeMillis();
+            SearchService.SearchResult result = SearchService.TYPE_COMMENT.equals(type)
+                    ? searchService.searchComments(q, groupId, post_id == null || post_id.isEmpty() ? null : post_id,
+                            createdFrom, createdTo, page, page_size)
+                    : searchService.searchPosts(q, groupId, createdFrom, createdTo, isMatchedFilter, page, page_size);
+
+            response.put("success", true);
+            response.put("data", result.items());
+            Map<String, Object> pagination = new HashMap<>();
+            pagination.put("page", page);
+            pagination.put("page_size", page_size);
+            pagination.put("total", result.total());
+            pagination.put("pages", (result.total() + page_size - 1) / page_size);
+            response.put("pagination", pagination);
+            response.put("took_ms", System.currentTimeMillis() - startMs);
+            // 后台重建索引期间结果可能不完整
+            response.put("index_rebuilding", searchService.isRebuilding());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("搜索失败: q={}", q, e);
+            response.put("success", false);
+            response.put("error", "搜索失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @PostMapping("/search/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSearchIndex() {
+        Map<String, Object> response = new HashMap<>();
+        if (searchService.isRebuilding()) {
+            response.put("success", false);
+            response.put("error", "索引正在重建中");
+            return ResponseEntity.status(409).body(response);
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                searchService.rebuildIndex(true);
+            } catch (Exception e) {
+                log.error("重建全文索引失败", e);
+            }
+        }, "search-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        response.put("success", true);
+        response.put("message", "已开始重建全文索引");
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getStats() {
         try {
@@ -149,6 +257,128 @@ public class ApiController {
         }
     }
 
+    /**
+     * 进程内缓存（小组、爬虫配置、帖子爬取状态）的大小和命中率
+     */
+    @GetMapping("/stats/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", repository.getCacheStats());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/stats/groups")
+    public ResponseEntity<Map<String, Object>> getGroupStats() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", repository.getGroupCounters());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "获取统计信息失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/keywords")
+    public ResponseEntity<Map<String, Object>> getKeywords(@RequestParam(required = false) String group_id) {
+        try {
+            String groupId = group_id == null || group_id.isEmpty() ? null : group_id;
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", repository.getKeywords(groupId));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "获取关键词失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/keywords/{keyword}/posts")
+    public ResponseEntity<Map<String, Object>> getKeywordPosts(
+            @PathVariable String keyword,
+            @RequestParam(required = false) String group_id,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int page_size) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Long keywordId = repository.getKeywordId(keyword);
+            if (keywordId == null) {
+                response.put("success", false);
+                response.put("error", "关键词不存在: " + keyword);
+                return ResponseEntity.status(404).body(response);
+            }
+            if (page < 1) page = 1;
+            if (page_size < 1 || page_size > 100) page_size = 20;
+            String groupId = group_id == null || group_id.isEmpty() ? null : group_id;
+
+            int total = repository.getPostsCountByKeyword(keywordId, groupId);
+            response.put("success", true);
+            response.put("data", repository.getPostsByKeyword(keywordId, groupId, page, page_size));
+            Map<String, Object> pagination = new HashMap<>();
+            pagination.put("page", page);
+            pagination.put("page_size", page_size);
+            pagination.put("total", total);
+            pagination.put("pages", (total + page_size - 1) / page_size);
+            response.put("pagination", pagination);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取关键词帖子失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 关键词按天的帖子数，from/to 默认为最近 30 天
+     */
+    @GetMapping("/keywords/{keyword}/daily")
+    public ResponseEntity<Map<String, Object>> getKeywordDailyCounts(
+            @PathVariable String keyword,
+            @RequestParam(required = false) String group_id,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to) {
+        Map<String, Object> response = new HashMap<>();
+        Long createdFrom;
+        Long createdTo;
+        try {
+            createdFrom = TimeUtils.parseEpochMillis(ExportController.normalizeDateTime(from));
+            createdTo = TimeUtils.parseEpochMillis(ExportController.normalizeDateTime(to));
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "时间参数格式错误，应为 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss");
+            return ResponseEntity.status(400).body(response);
+        }
+        try {
+            Long keywordId = repository.getKeywordId(keyword);
+            if (keywordId == null) {
+                response.put("success", false);
+                response.put("error", "关键词不存在: " + keyword);
+                return ResponseEntity.status(404).body(response);
+            }
+            String groupId = group_id == null || group_id.isEmpty() ? null : group_id;
+            if (createdTo == null) {
+                createdTo = Long.MAX_VALUE;
+            }
+            if (createdFrom == null) {
+                createdFrom = TimeUtils.toEpochMillis(LocalDateTime.now().toLocalDate().minusDays(29).atStartOfDay());
+            }
+
+            response.put("success", true);
+            response.put("data", repository.getKeywordDailyCounts(keywordId, groupId, createdFrom, createdTo));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取关键词统计失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
     @GetMapping("/bot/config")
     public ResponseEntity<Map<String, Object>> getBotConfig() {
         try {
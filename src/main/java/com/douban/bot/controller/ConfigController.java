@@ -1,17 +1,28 @@
 package com.douban.bot.controller;
 
+import com.douban.bot.db.CrawlFrontierDao;
+import com.douban.bot.db.CrawlRunDao;
+import com.douban.bot.db.CrawlScheduleDao;
 import com.douban.bot.db.CrawlerConfigDao;
+import com.douban.bot.db.RepositoryService;
 import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.model.DuplicatePolicy;
+import com.douban.bot.service.BackfillService;
+import com.douban.bot.service.CrawlIntervalPlanner;
 import com.douban.bot.service.CrawlerService;
+import com.douban.bot.service.RematchService;
+import com.douban.bot.utils.TimeUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jdbi.v3.core.Jdbi;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,7 +33,11 @@ import java.util.regex.Pattern;
 public class ConfigController {
 
     private final Jdbi jdbi;
+    private final RepositoryService repository;
     private final CrawlerService crawlerService;
+    private final RematchService rematchService;
+    private final CrawlIntervalPlanner intervalPlanner;
+    private final BackfillService backfillService;
     private static final Pattern GROUP_ID_PATTERN = Pattern.compile("/group/([^/]+)/");
 
     @GetMapping("/crawler")
@@ -106,7 +121,8 @@ public class ConfigController {
                           config.getEnabled() != null && config.getEnabled(), 
                           config.getCookie() != null ? config.getCookie() : "", 
                           config.getCrawlComments() != null ? config.getCrawlComments() : true,
-                          createdAt, updatedAt);
+                          config.getDuplicatePolicy(), createdAt, updatedAt);
+                intervalPlanner.invalidate();
                 
                 // 在同一连接中获取生成的 ID
                 long id = handle.createQuery("SELECT last_insert_rowid()")
@@ -158,11 +174,24 @@ public class ConfigController {
             }
             config.setGroupId(groupId);
 
-            dao.updateConfig(config);
+            repository.updateCrawlerConfig(config);
+            intervalPlanner.invalidate();
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("data", config);
+
+            // 关键词规则变化后，按新规则重新匹配小组内已有的帖子
+            if (!Objects.equals(existing.getKeywords(), config.getKeywords())
+                    || !Objects.equals(existing.getExcludeKeywords(), config.getExcludeKeywords())
+                    || !Objects.equals(existing.getGroupId(), config.getGroupId())) {
+                RematchService.Progress progress = rematchService.start(config);
+                if (progress != null) {
+                    response.put("rematch", progress.toMap());
+                } else {
+                    log.warn("小组已有重新匹配任务在运行，本次修改未触发: configId={}, groupId={}", id, groupId);
+                }
+            }
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -184,7 +213,12 @@ public class ConfigController {
                 return ResponseEntity.status(404).body(response);
             }
 
-            dao.deleteConfig(id);
+            repository.deleteCrawlerConfig(id);
+            intervalPlanner.invalidate();
+            jdbi.onDemand(CrawlFrontierDao.class).deleteByConfig(id);
+            jdbi.onDemand(CrawlScheduleDao.class).deleteByConfigId(id);
+            jdbi.onDemand(CrawlRunDao.class).deleteByConfigId(id);
+            backfillService.delete(id);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -200,26 +234,24 @@ public class ConfigController {
     @PostMapping("/crawler/{id}/run")
     public ResponseEntity<Map<String, Object>> runCrawler(@PathVariable Long id) {
         try {
-            CrawlerConfigDao dao = jdbi.onDemand(CrawlerConfigDao.class);
-            CrawlerConfig config = dao.getConfigById(id).orElse(null);
+            CrawlerConfig config = repository.getCrawlerConfigById(id);
             if (config == null || !config.getEnabled()) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "配置不存在或未启用");
                 return ResponseEntity.status(400).body(response);
             }
+            if (crawlerService.isRunning(id)) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("error", "该爬虫任务正在运行");
+                return ResponseEntity.status(409).body(response);
+            }
 
             // 在新线程中运行爬虫，避免阻塞请求
             new Thread(() -> {
                 try {
-                    crawlerService.crawl(
-                            config.getGroupId(),
-                            config.getPages(),
-                            config.getKeywords() != null ? config.getKeywords() : List.of(),
-                            config.getExcludeKeywords() != null ? config.getExcludeKeywords() : List.of(),
-                            config.getCookie() != null ? config.getCookie() : "",
-                            config.getCrawlComments() != null ? config.getCrawlComments() : true
-                    );
+                    crawlerService.crawl(config);
                 } catch (Exception e) {
                     System.err.println("爬虫执行失败: " + e.getMessage());
                     e.printStackTrace();
@@ -238,6 +270,316 @@ public class ConfigController {
         }
     }
 
+    /**
+     * 按当前配置的关键词重新匹配小组内已有帖子。dry_run=true 时同步返回影响范围，不写库
+     */
+    @PostMapping("/crawler/{id}/rematch")
+    public ResponseEntity<Map<String, Object>> rematch(@PathVariable Long id,
+                                                       @RequestParam(defaultValue = "false") boolean dry_run) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CrawlerConfigDao dao = jdbi.onDemand(CrawlerConfigDao.class);
+            CrawlerConfig config = dao.getConfigById(id).orElse(null);
+            if (config == null) {
+                response.put("success", false);
+                response.put("error", "配置不存在");
+                return ResponseEntity.status(404).body(response);
+            }
+
+            if (dry_run) {
+                RematchService.Progress progress = rematchService.preview(config);
+                if ("failed".equals(progress.getStatus())) {
+                    response.put("success", false);
+                    response.put("error", "预览失败: " + progress.toMap().get("error"));
+                    return ResponseEntity.status(500).body(response);
+                }
+                response.put("success", true);
+                response.put("data", progress.toMap());
+                return ResponseEntity.ok(response);
+            }
+
+            RematchService.Progress progress = rematchService.start(config);
+            if (progress == null) {
+                response.put("success", false);
+                response.put("error", "该小组已有重新匹配任务在运行");
+                return ResponseEntity.status(409).body(response);
+            }
+            response.put("success", true);
+            response.put("data", progress.toMap());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "重新匹配失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    @GetMapping("/crawler/{id}/rematch")
+    public ResponseEntity<Map<String, Object>> getRematchProgress(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        RematchService.Progress progress = rematchService.getProgress(id);
+        if (progress == null) {
+            response.put("success", false);
+            response.put("error", "该配置没有重新匹配任务");
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("success", true);
+        response.put("data", progress.toMap());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 已启用配置的爬取间隔计划：各小组估计的发帖速率、采用的间隔及依据、上次/下次执行时间
+     */
+    @GetMapping("/crawler/schedule")
+    public ResponseEntity<Map<String, Object>> getSchedule() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            List<CrawlerConfig> enabledConfigs = jdbi.onDemand(CrawlerConfigDao.class).getAllConfigs().stream()
+                    .filter(c -> c.getEnabled() != null && c.getEnabled())
+                    .toList();
+            CrawlIntervalPlanner.Plan plan = intervalPlanner.getPlan(enabledConfigs);
+            Map<Long, CrawlScheduleDao.Schedule> schedules = new HashMap<>();
+            jdbi.onDemand(CrawlScheduleDao.class).findAll().forEach(schedule -> schedules.put(schedule.configId(), schedule));
+
+            List<Map<String, Object>> intervals = new ArrayList<>();
+            for (CrawlIntervalPlanner.Interval interval : plan.intervals()) {
+                Map<String, Object> run = new HashMap<>();
+                run.put("configId", interval.configId());
+                run.put("name", interval.name());
+                run.put("groupId", interval.groupId());
+                run.put("pages", interval.pages());
+                run.put("ratePerHour", interval.ratePerHour());
+                run.put("ewmaRate", interval.ewmaRate());
+                run.put("profileRate", interval.profileRate());
+                run.put("intervalSeconds", interval.intervalSeconds());
+                run.put("reason", interval.reason());
+                CrawlScheduleDao.Schedule schedule = schedules.get(interval.configId());
+                Long lastRunAt = schedule != null ? schedule.lastRunAt() : null;
+                run.put("lastRunAt", lastRunAt != null ? TimeUtils.fromEpochMillis(lastRunAt) : null);
+                run.put("nextRunAt", lastRunAt != null
+                        ? TimeUtils.fromEpochMillis(lastRunAt + interval.intervalSeconds() * 1000L) : null);
+                run.put("running", crawlerService.isRunning(interval.configId()));
+                intervals.add(run);
+            }
+            Map<String, Object> data = plan.toMap();
+            data.put("intervals", intervals);
+            response.put("success", true);
+            response.put("data", data);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取爬取计划失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 爬取任务队列状态：按类型/状态统计的任务数和调度时间
+     */
+    @GetMapping("/crawler/{id}/frontier")
+    public ResponseEntity<Map<String, Object>> getFrontier(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CrawlerConfig config = jdbi.onDemand(CrawlerConfigDao.class).getConfigById(id).orElse(null);
+            if (config == null) {
+                response.put("success", false);
+                response.put("error", "配置不存在");
+                return ResponseEntity.status(404).body(response);
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("running", crawlerService.isRunning(id));
+            data.put("counts", jdbi.onDemand(CrawlFrontierDao.class).countByStatus(id));
+            jdbi.onDemand(CrawlScheduleDao.class).findByConfigId(id).ifPresent(schedule -> {
+                data.put("lastRunAt", schedule.lastRunAt() != null ? TimeUtils.fromEpochMillis(schedule.lastRunAt()) : null);
+                data.put("nextRunAt", TimeUtils.fromEpochMillis(schedule.nextRunAt()));
+            });
+            response.put("success", true);
+            response.put("data", data);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取任务队列失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 最近的爬取记录（所有配置），limit 默认 50、最多 500
+     */
+    @GetMapping("/crawler/runs")
+    public ResponseEntity<Map<String, Object>> getRecentRuns(@RequestParam(defaultValue = "50") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            List<Map<String, Object>> runs = jdbi.onDemand(CrawlRunDao.class).findRecent(Math.max(1, Math.min(limit, 500)))
+                    .stream().map(this::runToMap).toList();
+            response.put("success", true);
+            response.put("data", runs);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取爬取记录失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 最近 days 天（默认 7）各配置的爬取汇总，按总耗时从高到低排列，用于找出最耗时的小组和阶段
+     */
+    @GetMapping("/crawler/runs/summary")
+    public ResponseEntity<Map<String, Object>> getRunSummary(@RequestParam(defaultValue = "7") int days) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long since = System.currentTimeMillis() - Math.max(1, days) * 86_400_000L;
+            response.put("success", true);
+            response.put("data", jdbi.onDemand(CrawlRunDao.class).totalsByConfig(since));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取爬取汇总失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 一个配置的爬取记录，按开始时间倒序
+     */
+    @GetMapping("/crawler/{id}/runs")
+    public ResponseEntity<Map<String, Object>> getRuns(@PathVariable Long id,
+                                                       @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            List<Map<String, Object>> runs = jdbi.onDemand(CrawlRunDao.class)
+                    .findByConfigId(id, Math.max(1, Math.min(limit, 500)))
+                    .stream().map(this::runToMap).toList();
+            response.put("success", true);
+            response.put("data", runs);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取爬取记录失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 一个配置最近 days 天（默认 14）按天汇总的爬取数据，用于对比调整前后的耗时和产出
+     */
+    @GetMapping("/crawler/{id}/runs/trend")
+    public ResponseEntity<Map<String, Object>> getRunTrend(@PathVariable Long id,
+                                                           @RequestParam(defaultValue = "14") int days) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long since = System.currentTimeMillis() - Math.max(1, days) * 86_400_000L;
+            response.put("success", true);
+            response.put("data", jdbi.onDemand(CrawlRunDao.class).dailyTotals(id, since));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取爬取趋势失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * otherMs 为总耗时中不属于等待、请求、解析和数据库的部分
+     */
+    private Map<String, Object> runToMap(CrawlRunDao.CrawlRun run) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", run.id());
+        data.put("configId", run.configId());
+        data.put("groupId", run.groupId());
+        data.put("status", run.status());
+        data.put("startedAt", TimeUtils.fromEpochMillis(run.startedAt()));
+        data.put("finishedAt", run.finishedAt() != null ? TimeUtils.fromEpochMillis(run.finishedAt()) : null);
+        Long durationMs = run.finishedAt() != null ? run.finishedAt() - run.startedAt() : null;
+        data.put("durationMs", durationMs);
+        data.put("listPages", run.listPages());
+        data.put("listPagesOk", run.listPagesOk());
+        data.put("topics", run.topics());
+        data.put("topicsOk", run.topicsOk());
+        data.put("postsNew", run.postsNew());
+        data.put("postsUpdated", run.postsUpdated());
+        data.put("postsSkipped", run.postsSkipped());
+        data.put("commentsStored", run.commentsStored());
+        data.put("bytesIn", run.bytesIn());
+        data.put("sleepMs", run.sleepMs());
+        data.put("fetchMs", run.fetchMs());
+        data.put("parseMs", run.parseMs());
+        data.put("dbMs", run.dbMs());
+        data.put("otherMs", durationMs != null
+                ? Math.max(0, durationMs - run.sleepMs() - run.fetchMs() - run.parseMs() - run.dbMs()) : null);
+        data.put("blocked", run.blocked());
+        data.put("retries", run.retries());
+        data.put("error", run.error());
+        return data;
+    }
+
+    /**
+     * 开始或继续历史回溯：从常规爬取覆盖的页数之后逐页抓取更早的帖子，在后台以低优先级执行。
+     * pages 为回溯页数，restart=true 时丢弃已有进度重新开始
+     */
+    @PostMapping("/crawler/{id}/backfill")
+    public ResponseEntity<Map<String, Object>> startBackfill(@PathVariable Long id,
+                                                             @RequestParam(required = false) Integer pages,
+                                                             @RequestParam(defaultValue = "false") boolean restart) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CrawlerConfig config = jdbi.onDemand(CrawlerConfigDao.class).getConfigById(id).orElse(null);
+            if (config == null) {
+                response.put("success", false);
+                response.put("error", "配置不存在");
+                return ResponseEntity.status(404).body(response);
+            }
+            if (pages != null && pages <= 0) {
+                response.put("success", false);
+                response.put("error", "回溯页数必须大于0");
+                return ResponseEntity.status(400).body(response);
+            }
+            backfillService.start(config, pages, restart);
+            response.put("success", true);
+            response.put("data", backfillService.getStatus(id));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "启动历史回溯失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 历史回溯进度、吞吐量（页/小时）和预计剩余时间
+     */
+    @GetMapping("/crawler/{id}/backfill")
+    public ResponseEntity<Map<String, Object>> getBackfill(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        Map<String, Object> status = backfillService.getStatus(id);
+        if (status == null) {
+            response.put("success", false);
+            response.put("error", "该配置没有历史回溯任务");
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("success", true);
+        response.put("data", status);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 暂停历史回溯，进度保留，再次 POST 时继续
+     */
+    @DeleteMapping("/crawler/{id}/backfill")
+    public ResponseEntity<Map<String, Object>> pauseBackfill(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        if (!backfillService.pause(id)) {
+            response.put("success", false);
+            response.put("error", "该配置没有进行中的历史回溯");
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("success", true);
+        response.put("data", backfillService.getStatus(id));
+        return ResponseEntity.ok(response);
+    }
+
     private CrawlerConfig parseConfigFromRequest(Map<String, Object> request) {
         try {
             String name = (String) request.get("name");
@@ -257,6 +599,8 @@ public class ConfigController {
             Boolean enabled = parseBoolean(request.get("enabled"), true);
             String cookie = request.get("cookie") != null ? request.get("cookie").toString().trim() : "";
             Boolean crawlComments = parseBoolean(request.get("crawlComments"), true);
+            String duplicatePolicy = DuplicatePolicy.fromValue(
+                    request.get("duplicatePolicy") != null ? request.get("duplicatePolicy").toString() : null).value();
 
             log.debug("解析配置参数: name={}, groupUrl={}, keywords={}, excludeKeywords={}, pages={}, sleepSeconds={}, enabled={}, hasCookie={}, crawlComments={}",
                 name, groupUrl, keywords, excludeKeywords, pages, sleepSeconds, enabled, !cookie.isEmpty(), crawlComments);
@@ -271,6 +615,7 @@ public class ConfigController {
                     .enabled(enabled)
                     .cookie(cookie)
                     .crawlComments(crawlComments)
+                    .duplicatePolicy(duplicatePolicy)
                     .createdAt(java.time.LocalDateTime.now())
                     .build();
         } catch (Exception e) {
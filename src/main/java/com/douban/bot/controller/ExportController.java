@@ -0,0 +1,167 @@
+package com.douban.bot.controller;
+
+import com.douban.bot.service.ExportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 数据导出接口：以 NDJSON/CSV 流式输出帖子和评论，支持按小组、时间范围、匹配状态过滤，
+ * 并可通过 cursor（上一次导出的最后一行 id）断点续传
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/export")
+@RequiredArgsConstructor
+public class ExportController {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ExportService exportService;
+
+    @GetMapping("/posts")
+    public void exportPosts(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) String group_id,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String is_matched,
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(required = false) String gzip,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        String exportFormat = format.toLowerCase();
+        if (!ExportService.isSupportedFormat(exportFormat)) {
+            writeError(response, 400, "不支持的导出格式: " + format + "，可选 ndjson/csv");
+            return;
+        }
+
+        // 验证 is_matched 参数：null/"all"/"true"/"false"
+        String isMatchedFilter = null;
+        if (is_matched != null && !is_matched.isEmpty() && !is_matched.equalsIgnoreCase("all")) {
+            if (!is_matched.equalsIgnoreCase("true") && !is_matched.equalsIgnoreCase("false")) {
+                writeError(response, 400, "is_matched 参数无效: " + is_matched);
+                return;
+            }
+            isMatchedFilter = is_matched.toLowerCase();
+        }
+
+        String createdFrom;
+        String createdTo;
+        try {
+            createdFrom = normalizeDateTime(from);
+            createdTo = normalizeDateTime(to);
+        } catch (Exception e) {
+            writeError(response, 400, "时间参数格式错误，应为 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss");
+            return;
+        }
+
+        boolean useGzip = shouldGzip(gzip, acceptEncoding);
+        prepareResponse(response, exportFormat, "posts", useGzip);
+        try (OutputStream out = openOutput(response, useGzip)) {
+            exportService.exportPosts(out, exportFormat, Math.max(cursor, 0), emptyToNull(group_id),
+                    createdFrom, createdTo, isMatchedFilter);
+        }
+    }
+
+    @GetMapping("/comments")
+    public void exportComments(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) String group_id,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(required = false) String gzip,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        String exportFormat = format.toLowerCase();
+        if (!ExportService.isSupportedFormat(exportFormat)) {
+            writeError(response, 400, "不支持的导出格式: " + format + "，可选 ndjson/csv");
+            return;
+        }
+
+        String createdFrom;
+        String createdTo;
+        try {
+            createdFrom = normalizeDateTime(from);
+            createdTo = normalizeDateTime(to);
+        } catch (Exception e) {
+            writeError(response, 400, "时间参数格式错误，应为 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss");
+            return;
+        }
+
+        boolean useGzip = shouldGzip(gzip, acceptEncoding);
+        prepareResponse(response, exportFormat, "comments", useGzip);
+        try (OutputStream out = openOutput(response, useGzip)) {
+            exportService.exportComments(out, exportFormat, Math.max(cursor, 0), emptyToNull(group_id),
+                    createdFrom, createdTo);
+        }
+    }
+
+    /**
+     * gzip 参数显式指定时以参数为准，否则根据 Accept-Encoding 协商
+     */
+    private boolean shouldGzip(String gzip, String acceptEncoding) {
+        if (gzip != null && !gzip.isEmpty()) {
+            return Boolean.parseBoolean(gzip);
+        }
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private void prepareResponse(HttpServletResponse response, String format, String name, boolean useGzip) {
+        response.setStatus(200);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(ExportService.FORMAT_CSV.equals(format) ? "text/csv" : "application/x-ndjson");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + name + "." + format + "\"");
+        if (useGzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+    }
+
+    private OutputStream openOutput(HttpServletResponse response, boolean useGzip) throws IOException {
+        OutputStream out = response.getOutputStream();
+        return useGzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+
+    /**
+     * 把 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss 统一为数据库中的时间格式，空值返回 null
+     */
+    static String normalizeDateTime(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.length() == 10) {
+            return LocalDate.parse(trimmed, DATE_FORMAT).atStartOfDay().format(DATETIME_FORMAT);
+        }
+        return LocalDateTime.parse(trimmed, DATETIME_FORMAT).format(DATETIME_FORMAT);
+    }
+
+    private String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("error", message);
+        response.setStatus(status);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType("application/json");
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+}
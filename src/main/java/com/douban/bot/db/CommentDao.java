@@ -1,24 +1,28 @@
 package com.douban.bot.db;
 
 import com.douban.bot.model.Comment;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.douban.bot.utils.JsonUtils;
+import com.douban.bot.utils.SearchTokenizer;
 import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 import org.jdbi.v3.sqlobject.transaction.Transaction;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface CommentDao {
     
     DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    ObjectMapper objectMapper = new ObjectMapper();
 
     @SqlQuery("SELECT id, comment_id as commentId, post_id as postId, group_id as groupId, " +
             "author_info as authorInfo, content, reply_to_id as replyToId, like_count as likeCount, " +
@@ -39,6 +43,24 @@ public interface CommentDao {
     @RegisterConstructorMapper(CommentRow.class)
     List<CommentRow> findByGroupId(@Bind("groupId") String groupId, @Bind("limit") int limit);
 
+    /**
+     * 按自增 id 分批读取评论，用于导出：每批用完即释放连接和读锁，下一批从上一批最后的 id 之后继续
+     */
+    @SqlQuery("SELECT id, comment_id as commentId, post_id as postId, group_id as groupId, " +
+            "author_info as authorInfo, content, reply_to_id as replyToId, like_count as likeCount, " +
+            "created FROM \"Comment\" " +
+            "WHERE id > :afterId " +
+            "AND (:groupId IS NULL OR group_id = :groupId) " +
+            "AND (:createdFrom IS NULL OR created >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR created < :createdTo) " +
+            "ORDER BY id ASC LIMIT :limit")
+    @RegisterConstructorMapper(CommentExportRow.class)
+    List<CommentExportRow> findForExport(@Bind("afterId") long afterId,
+                                         @Bind("groupId") String groupId,
+                                         @Bind("createdFrom") String createdFrom,
+                                         @Bind("createdTo") String createdTo,
+                                         @Bind("limit") int limit);
+
     @SqlUpdate("INSERT INTO \"Comment\" (comment_id, post_id, group_id, author_info, content, reply_to_id, like_count, created) " +
             "VALUES (:commentId, :postId, :groupId, :authorInfo, :content, :replyToId, :likeCount, :created)")
     @Transaction
@@ -51,6 +73,64 @@ public interface CommentDao {
                 @Bind("likeCount") int likeCount,
                 @Bind("created") String created);
 
+    @SqlUpdate("INSERT INTO \"CommentFts\" (rowid, content) " +
+            "SELECT id, :content FROM \"Comment\" WHERE comment_id = :commentId")
+    void insertSearchIndex(@Bind("commentId") String commentId, @Bind("content") String content);
+
+    // 按页增量同步评论：新评论批量写入，已有评论只更新点赞数
+
+    @SqlBatch("INSERT OR IGNORE INTO \"Comment\" (comment_id, post_id, group_id, author_info, content, reply_to_id, like_count, created) " +
+            "VALUES (:commentId, :postId, :groupId, :authorInfo, :content, :replyToId, :likeCount, :created)")
+    int[] insertIfAbsent(@BindMethods List<CommentRow> rows);
+
+    @SqlBatch("INSERT INTO \"CommentFts\" (rowid, content) " +
+            "SELECT id, :content FROM \"Comment\" WHERE comment_id = :commentId")
+    void insertSearchIndexes(@Bind("commentId") List<String> commentIds, @Bind("content") List<String> contents);
+
+    @SqlBatch("UPDATE \"Comment\" SET like_count = :likeCount, updated_at = datetime('now') " +
+            "WHERE comment_id = :commentId AND like_count != :likeCount")
+    int[] updateLikeCounts(@BindMethods List<CommentRow> rows);
+
+    @SqlQuery("SELECT post_id as postId, last_page as lastPage, last_comment_id as lastCommentId, " +
+            "comment_count as commentCount, updated_at as updatedAt FROM \"TopicCommentCursor\" WHERE post_id = :postId")
+    @RegisterConstructorMapper(CommentCursor.class)
+    Optional<CommentCursor> findCursor(@Bind("postId") String postId);
+
+    @SqlUpdate("INSERT INTO \"TopicCommentCursor\" (post_id, last_page, last_comment_id, comment_count, updated_at) " +
+            "VALUES (:postId, :lastPage, :lastCommentId, :commentCount, :updatedAt) " +
+            "ON CONFLICT(post_id) DO UPDATE SET last_page = excluded.last_page, last_comment_id = excluded.last_comment_id, " +
+            "comment_count = excluded.comment_count, updated_at = excluded.updated_at")
+    void saveCursor(@BindMethods CommentCursor cursor);
+
+    /**
+     * 保存一页评论，返回新增数和点赞数有变化的条数。
+     * 第一条语句就是写操作，事务开始时即拿到写锁
+     */
+    @Transaction
+    default PageSyncResult saveCommentPage(List<Comment> comments) {
+        if (comments.isEmpty()) {
+            return new PageSyncResult(0, 0);
+        }
+        List<CommentRow> rows = comments.stream().map(this::toCommentRow).toList();
+        int[] inserted = insertIfAbsent(rows);
+        List<String> newIds = new ArrayList<>();
+        List<String> newContents = new ArrayList<>();
+        List<CommentRow> existing = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (inserted[i] > 0) {
+                newIds.add(rows.get(i).commentId());
+                newContents.add(SearchTokenizer.indexText(rows.get(i).content()));
+            } else {
+                existing.add(rows.get(i));
+            }
+        }
+        if (!newIds.isEmpty()) {
+            insertSearchIndexes(newIds, newContents);
+        }
+        int likesUpdated = existing.isEmpty() ? 0 : Arrays.stream(updateLikeCounts(existing)).sum();
+        return new PageSyncResult(newIds.size(), likesUpdated);
+    }
+
     default Comment getCommentByCommentId(String commentId) {
         return findByCommentId(commentId).map(this::toComment).orElse(null);
     }
@@ -65,52 +145,58 @@ public interface CommentDao {
         return rows.stream().map(this::toComment).toList();
     }
 
+    @Transaction
     default void createComment(Comment comment) {
         CommentRow row = toCommentRow(comment);
         insert(row.commentId(), row.postId(), row.groupId(), row.authorInfo(),
                 row.content(), row.replyToId(), row.likeCount(), row.created());
+        insertSearchIndex(row.commentId(), SearchTokenizer.indexText(row.content()));
     }
 
     private CommentRow toCommentRow(Comment comment) {
-        try {
-            String authorInfoJson = comment.getAuthorInfo() != null ? objectMapper.writeValueAsString(comment.getAuthorInfo()) : "{}";
-            String created = comment.getCreated() != null ? comment.getCreated().format(DATETIME_FORMAT) : LocalDateTime.now().format(DATETIME_FORMAT);
-            
-            return new CommentRow(
-                    comment.getCommentId(), comment.getPostId(), comment.getGroupId(),
-                    authorInfoJson, comment.getContent(), comment.getReplyToId(),
-                    comment.getLikeCount() != null ? comment.getLikeCount() : 0, created
-            );
-        } catch (Exception e) {
-            throw new RuntimeException("Error converting Comment to CommentRow", e);
-        }
+        String authorInfoJson = comment.getAuthorInfoJson() != null
+                ? comment.getAuthorInfoJson() : JsonUtils.write(comment.getAuthorInfo(), "{}");
+        String created = comment.getCreated() != null ? comment.getCreated().format(DATETIME_FORMAT) : LocalDateTime.now().format(DATETIME_FORMAT);
+
+        return new CommentRow(
+                comment.getCommentId(), comment.getPostId(), comment.getGroupId(),
+                authorInfoJson, comment.getContent(), comment.getReplyToId(),
+                comment.getLikeCount() != null ? comment.getLikeCount() : 0, created
+        );
     }
 
+    /**
+     * author_info 只保存原文，由 Comment 在首次读取时解析
+     */
     private Comment toComment(CommentRow row) {
-        try {
-            Map<String, Object> authorInfo = row.authorInfo() != null && !row.authorInfo().isEmpty() && !row.authorInfo().equals("{}")
-                    ? objectMapper.readValue(row.authorInfo(), new TypeReference<Map<String, Object>>() {})
-                    : Map.of();
-            
-            LocalDateTime created = row.created() != null ? LocalDateTime.parse(row.created(), DATETIME_FORMAT) : LocalDateTime.now();
-
-            return Comment.builder()
-                    .commentId(row.commentId())
-                    .postId(row.postId())
-                    .groupId(row.groupId())
-                    .authorInfo(authorInfo)
-                    .content(row.content())
-                    .replyToId(row.replyToId())
-                    .likeCount(row.likeCount())
-                    .created(created)
-                    .build();
-        } catch (Exception e) {
-            throw new RuntimeException("Error converting CommentRow to Comment", e);
-        }
+        LocalDateTime created = row.created() != null ? LocalDateTime.parse(row.created(), DATETIME_FORMAT) : LocalDateTime.now();
+
+        return Comment.builder()
+                .commentId(row.commentId())
+                .postId(row.postId())
+                .groupId(row.groupId())
+                .authorInfoJson(row.authorInfo())
+                .content(row.content())
+                .replyToId(row.replyToId())
+                .likeCount(row.likeCount())
+                .created(created)
+                .build();
     }
 
     record CommentRow(
             String commentId, String postId, String groupId, String authorInfo,
             String content, String replyToId, int likeCount, String created
     ) {}
+
+    /**
+     * 帖子评论的同步进度：已同步到的页码（从 0 开始）和该页最后一条评论
+     */
+    record CommentCursor(String postId, int lastPage, String lastCommentId, int commentCount, long updatedAt) {}
+
+    record PageSyncResult(int inserted, int likesUpdated) {}
+
+    record CommentExportRow(
+            long id, String commentId, String postId, String groupId, String authorInfo,
+            String content, String replyToId, int likeCount, String created
+    ) {}
 }
@@ -0,0 +1,64 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 小组计数表 GroupCounter 的读取与校正。计数本身由 Post/Comment 上的触发器维护（见 DatabaseConfig）
+ */
+public interface CounterDao {
+
+    @SqlQuery("SELECT group_id as groupId, posts, matched, replied, pending, comments FROM \"GroupCounter\" ORDER BY group_id")
+    @RegisterConstructorMapper(GroupCounter.class)
+    List<GroupCounter> findAll();
+
+    @SqlQuery("SELECT group_id as groupId, posts, matched, replied, pending, comments FROM \"GroupCounter\" WHERE group_id = :groupId")
+    @RegisterConstructorMapper(GroupCounter.class)
+    Optional<GroupCounter> findByGroupId(@Bind("groupId") String groupId);
+
+    @SqlQuery("SELECT '' as groupId, COALESCE(SUM(posts), 0) as posts, COALESCE(SUM(matched), 0) as matched, " +
+            "COALESCE(SUM(replied), 0) as replied, COALESCE(SUM(pending), 0) as pending, " +
+            "COALESCE(SUM(comments), 0) as comments FROM \"GroupCounter\"")
+    @RegisterConstructorMapper(GroupCounter.class)
+    GroupCounter sumAll();
+
+    /**
+     * 用源表重新统计的真实计数覆盖有偏差的行，返回修正的行数。
+     * 统计和写入在同一条语句内完成，执行时持有写锁，不会与触发器的增量更新交错
+     */
+    @SqlUpdate("INSERT INTO \"GroupCounter\" (group_id, posts, matched, replied, pending, comments) " +
+            "SELECT group_id, SUM(posts), SUM(matched), SUM(replied), SUM(pending), SUM(comments) FROM (" +
+            "  SELECT group_id, COUNT(*) as posts, SUM(is_matched != 0) as matched, SUM(bot_replied != 0) as replied, " +
+            "  SUM(is_matched != 0 AND bot_replied = 0) as pending, 0 as comments FROM \"Post\" GROUP BY group_id " +
+            "  UNION ALL " +
+            "  SELECT group_id, 0, 0, 0, 0, COUNT(*) FROM \"Comment\" GROUP BY group_id" +
+            ") WHERE true GROUP BY group_id " +
+            "ON CONFLICT(group_id) DO UPDATE SET posts = excluded.posts, matched = excluded.matched, " +
+            "replied = excluded.replied, pending = excluded.pending, comments = excluded.comments " +
+            "WHERE posts != excluded.posts OR matched != excluded.matched OR replied != excluded.replied " +
+            "OR pending != excluded.pending OR comments != excluded.comments")
+    int correctFromSource();
+
+    /**
+     * 删除源表中已没有任何数据的小组的计数行
+     */
+    @SqlUpdate("DELETE FROM \"GroupCounter\" WHERE group_id NOT IN (" +
+            "SELECT group_id FROM \"Post\" UNION SELECT group_id FROM \"Comment\")")
+    int deleteOrphans();
+
+    /**
+     * 用源表的真实计数校正计数表，返回被修正的行数
+     */
+    @Transaction
+    default int reconcile() {
+        return correctFromSource() + deleteOrphans();
+    }
+
+    record GroupCounter(String groupId, long posts, long matched, long replied, long pending, long comments) {}
+}
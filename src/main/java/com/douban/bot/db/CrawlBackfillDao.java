@@ -0,0 +1,71 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 历史回溯任务（CrawlBackfill）：每个爬虫配置一条，next_start 为下一页列表的 start 偏移，
+ * 每抓完一页推进一次，重启后从该偏移继续
+ */
+public interface CrawlBackfillDao {
+
+    String STATUS_RUNNING = "running";
+    String STATUS_PAUSED = "paused";
+    String STATUS_DONE = "done";
+    String STATUS_FAILED = "failed";
+
+    String COLUMNS = "config_id as configId, group_id as groupId, next_start as nextStart, end_start as endStart, " +
+            "status, pages_done as pagesDone, posts_seen as postsSeen, failures, last_error as lastError, " +
+            "started_at as startedAt, updated_at as updatedAt, finished_at as finishedAt";
+
+    @SqlQuery("SELECT " + COLUMNS + " FROM \"CrawlBackfill\" WHERE config_id = :configId")
+    @RegisterConstructorMapper(Backfill.class)
+    Optional<Backfill> findByConfigId(@Bind("configId") long configId);
+
+    @SqlQuery("SELECT " + COLUMNS + " FROM \"CrawlBackfill\" WHERE status = 'running' ORDER BY updated_at")
+    @RegisterConstructorMapper(Backfill.class)
+    List<Backfill> findRunning();
+
+    /**
+     * 从 start 偏移开始新的回溯，覆盖该配置之前的记录
+     */
+    @SqlUpdate("INSERT OR REPLACE INTO \"CrawlBackfill\" (config_id, group_id, next_start, end_start, status, pages_done, " +
+            "posts_seen, failures, started_at, updated_at) " +
+            "VALUES (:configId, :groupId, :start, :endStart, 'running', 0, 0, 0, :now, :now)")
+    void start(@Bind("configId") long configId, @Bind("groupId") String groupId, @Bind("start") int start,
+               @Bind("endStart") int endStart, @Bind("now") long now);
+
+    /**
+     * 继续暂停或失败的回溯，可调整结束偏移
+     */
+    @SqlUpdate("UPDATE \"CrawlBackfill\" SET status = 'running', end_start = :endStart, failures = 0, updated_at = :now " +
+            "WHERE config_id = :configId")
+    void resume(@Bind("configId") long configId, @Bind("endStart") int endStart, @Bind("now") long now);
+
+    /**
+     * 一页处理完后推进偏移，清除连续失败次数
+     */
+    @SqlUpdate("UPDATE \"CrawlBackfill\" SET next_start = :nextStart, pages_done = pages_done + 1, " +
+            "posts_seen = posts_seen + :posts, failures = 0, last_error = NULL, updated_at = :now WHERE config_id = :configId")
+    void advance(@Bind("configId") long configId, @Bind("nextStart") int nextStart, @Bind("posts") int posts,
+                 @Bind("now") long now);
+
+    @SqlUpdate("UPDATE \"CrawlBackfill\" SET failures = failures + 1, last_error = :error, updated_at = :now " +
+            "WHERE config_id = :configId")
+    void recordFailure(@Bind("configId") long configId, @Bind("error") String error, @Bind("now") long now);
+
+    @SqlUpdate("UPDATE \"CrawlBackfill\" SET status = :status, updated_at = :now, " +
+            "finished_at = CASE WHEN :status IN ('done', 'failed') THEN :now ELSE finished_at END WHERE config_id = :configId")
+    int setStatus(@Bind("configId") long configId, @Bind("status") String status, @Bind("now") long now);
+
+    @SqlUpdate("DELETE FROM \"CrawlBackfill\" WHERE config_id = :configId")
+    int deleteByConfigId(@Bind("configId") long configId);
+
+    record Backfill(long configId, String groupId, int nextStart, int endStart, String status, int pagesDone,
+                    long postsSeen, int failures, String lastError, long startedAt, long updatedAt, Long finishedAt) {}
+}
@@ -0,0 +1,113 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 爬取任务队列（CrawlFrontier）：每个爬虫配置一轮爬取要抓的列表页和帖子页。
+ * 任务按 priority 降序、id 升序领取，领取时写入租约到期时间并累加尝试次数，
+ * 进程中途退出后未完成的任务在下次运行时继续执行
+ */
+public interface CrawlFrontierDao {
+
+    String KIND_LIST = "list";
+    String KIND_TOPIC = "topic";
+
+    String STATUS_PENDING = "pending";
+    String STATUS_DONE = "done";
+    String STATUS_FAILED = "failed";
+
+    @SqlQuery("SELECT EXISTS (SELECT 1 FROM \"CrawlFrontier\" WHERE config_id = :configId AND status = 'pending')")
+    boolean hasPending(@Bind("configId") long configId);
+
+    /**
+     * 上一轮已全部结束时清理其记录；还有未完成的任务时保留已完成的记录，避免续跑时重复入队
+     */
+    @SqlUpdate("DELETE FROM \"CrawlFrontier\" WHERE config_id = :configId AND status != 'pending' " +
+            "AND NOT EXISTS (SELECT 1 FROM \"CrawlFrontier\" WHERE config_id = :configId AND status = 'pending')")
+    int deleteFinished(@Bind("configId") long configId);
+
+    @SqlBatch("INSERT OR IGNORE INTO \"CrawlFrontier\" (config_id, group_id, kind, url, payload, priority, created_at, updated_at) " +
+            "VALUES (:configId, :groupId, :kind, :url, :payload, :priority, :now, :now)")
+    void enqueue(@BindMethods List<NewItem> items, @Bind("now") long now);
+
+    /**
+     * 领取一个可执行的任务。单条语句完成查找和加租约，并发领取不会拿到同一个任务；
+     * 已用完尝试次数的任务不再领取，由 {@link #failExhausted} 标记为失败
+     */
+    @SqlQuery("UPDATE \"CrawlFrontier\" SET lease_until = :leaseUntil, attempts = attempts + 1, updated_at = :now " +
+            "WHERE id = (SELECT id FROM \"CrawlFrontier\" WHERE config_id = :configId AND status = 'pending' " +
+            "  AND lease_until <= :now AND attempts < :maxAttempts ORDER BY priority DESC, id LIMIT 1) " +
+            "RETURNING id, kind, url, payload, priority, attempts")
+    @RegisterConstructorMapper(Item.class)
+    Optional<Item> claim(@Bind("configId") long configId, @Bind("maxAttempts") int maxAttempts, @Bind("now") long now,
+                         @Bind("leaseUntil") long leaseUntil);
+
+    /**
+     * 把尝试次数已用完、租约已过期仍未结束的任务标记为失败。这类任务是处理过程中进程退出或抛出意外异常留下的，
+     * 不标记的话 hasPending 一直为 true，resumeOrSeed 永远不会写入新的列表页
+     */
+    @SqlUpdate("UPDATE \"CrawlFrontier\" SET status = 'failed', lease_until = 0, " +
+            "last_error = COALESCE(last_error, '超过最大尝试次数'), updated_at = :now " +
+            "WHERE config_id = :configId AND status = 'pending' AND lease_until <= :now AND attempts >= :maxAttempts")
+    int failExhausted(@Bind("configId") long configId, @Bind("maxAttempts") int maxAttempts, @Bind("now") long now);
+
+    @SqlUpdate("UPDATE \"CrawlFrontier\" SET status = 'done', lease_until = 0, last_error = NULL, updated_at = :now WHERE id = :id")
+    void markDone(@Bind("id") long id, @Bind("now") long now);
+
+    @SqlUpdate("UPDATE \"CrawlFrontier\" SET status = 'failed', lease_until = 0, last_error = :error, updated_at = :now WHERE id = :id")
+    void markFailed(@Bind("id") long id, @Bind("error") String error, @Bind("now") long now);
+
+    /**
+     * 失败的任务释放租约并降低优先级，本轮先处理其他任务后再重试
+     */
+    @SqlUpdate("UPDATE \"CrawlFrontier\" SET lease_until = 0, priority = priority - 1, last_error = :error, updated_at = :now " +
+            "WHERE id = :id")
+    void retryLater(@Bind("id") long id, @Bind("error") String error, @Bind("now") long now);
+
+    /**
+     * 交还任务且不计入尝试次数，用于会话熔断时提前结束本轮爬取
+     */
+    @SqlUpdate("UPDATE \"CrawlFrontier\" SET lease_until = 0, attempts = MAX(attempts - 1, 0), updated_at = :now WHERE id = :id")
+    void release(@Bind("id") long id, @Bind("now") long now);
+
+    /**
+     * 启动时释放所有租约：只有本进程在爬取，上次退出前持有的租约都已失效
+     */
+    @SqlUpdate("UPDATE \"CrawlFrontier\" SET lease_until = 0 WHERE status = 'pending' AND lease_until > 0")
+    int releaseAllLeases();
+
+    @SqlQuery("SELECT kind, status, COUNT(*) as count FROM \"CrawlFrontier\" WHERE config_id = :configId GROUP BY kind, status")
+    @RegisterConstructorMapper(StatusCount.class)
+    List<StatusCount> countByStatus(@Bind("configId") long configId);
+
+    @SqlUpdate("DELETE FROM \"CrawlFrontier\" WHERE config_id = :configId")
+    int deleteByConfig(@Bind("configId") long configId);
+
+    /**
+     * 开始一轮爬取：有未完成的任务时继续执行，返回 true；否则清理上一轮的记录并写入新的列表页
+     */
+    @Transaction
+    default boolean resumeOrSeed(long configId, List<NewItem> listPages, long now) {
+        deleteFinished(configId);
+        if (hasPending(configId)) {
+            return true;
+        }
+        enqueue(listPages, now);
+        return false;
+    }
+
+    record NewItem(long configId, String groupId, String kind, String url, String payload, int priority) {}
+
+    record Item(long id, String kind, String url, String payload, int priority, int attempts) {}
+
+    record StatusCount(String kind, String status, long count) {}
+}
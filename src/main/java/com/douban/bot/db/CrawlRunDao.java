@@ -0,0 +1,94 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.List;
+
+/**
+ * 爬取记录（CrawlRun）：每次常规爬取一条，开始时写入 running，结束时写入页数、帖子数、下载字节数，
+ * 以及耗时在等待、请求、解析和数据库之间的分布（毫秒）
+ */
+public interface CrawlRunDao {
+
+    String STATUS_RUNNING = "running";
+    String STATUS_DONE = "done";
+    String STATUS_FAILED = "failed";
+    String STATUS_ABORTED = "aborted";
+    // 会话熔断，剩余任务留到下次
+    String STATUS_PAUSED = "paused";
+
+    String COLUMNS = "id, config_id as configId, group_id as groupId, status, started_at as startedAt, " +
+            "finished_at as finishedAt, list_pages as listPages, list_pages_ok as listPagesOk, topics, topics_ok as topicsOk, " +
+            "posts_new as postsNew, posts_updated as postsUpdated, posts_skipped as postsSkipped, " +
+            "comments_stored as commentsStored, bytes_in as bytesIn, sleep_ms as sleepMs, fetch_ms as fetchMs, " +
+            "parse_ms as parseMs, db_ms as dbMs, blocked, retries, error";
+
+    // 汇总列：duration 只统计已结束的记录
+    String TOTALS = "COUNT(*) as runs, SUM(CASE WHEN status = 'failed' THEN 1 ELSE 0 END) as failed, " +
+            "COALESCE(SUM(finished_at - started_at), 0) as durationMs, COALESCE(SUM(list_pages_ok), 0) as listPagesOk, " +
+            "COALESCE(SUM(topics_ok), 0) as topicsOk, COALESCE(SUM(posts_new), 0) as postsNew, " +
+            "COALESCE(SUM(posts_updated), 0) as postsUpdated, COALESCE(SUM(comments_stored), 0) as commentsStored, " +
+            "COALESCE(SUM(bytes_in), 0) as bytesIn, COALESCE(SUM(sleep_ms), 0) as sleepMs, " +
+            "COALESCE(SUM(fetch_ms), 0) as fetchMs, COALESCE(SUM(parse_ms), 0) as parseMs, " +
+            "COALESCE(SUM(db_ms), 0) as dbMs, COALESCE(SUM(blocked), 0) as blocked, COALESCE(SUM(retries), 0) as retries";
+
+    @SqlQuery("INSERT INTO \"CrawlRun\" (config_id, group_id, status, started_at) " +
+            "VALUES (:configId, :groupId, 'running', :startedAt) RETURNING id")
+    long start(@Bind("configId") long configId, @Bind("groupId") String groupId, @Bind("startedAt") long startedAt);
+
+    @SqlUpdate("UPDATE \"CrawlRun\" SET status = :status, finished_at = :finishedAt, list_pages = :listPages, " +
+            "list_pages_ok = :listPagesOk, topics = :topics, topics_ok = :topicsOk, posts_new = :postsNew, " +
+            "posts_updated = :postsUpdated, posts_skipped = :postsSkipped, comments_stored = :commentsStored, " +
+            "bytes_in = :bytesIn, sleep_ms = :sleepMs, fetch_ms = :fetchMs, parse_ms = :parseMs, db_ms = :dbMs, " +
+            "blocked = :blocked, retries = :retries, error = :error WHERE id = :id")
+    void finish(@BindMethods CrawlRun run);
+
+    /**
+     * 启动时把上次退出前没有结束的记录标记为 aborted
+     */
+    @SqlUpdate("UPDATE \"CrawlRun\" SET status = 'aborted', finished_at = :now WHERE status = 'running'")
+    int abortRunning(@Bind("now") long now);
+
+    @SqlQuery("SELECT " + COLUMNS + " FROM \"CrawlRun\" WHERE config_id = :configId ORDER BY started_at DESC LIMIT :limit")
+    @RegisterConstructorMapper(CrawlRun.class)
+    List<CrawlRun> findByConfigId(@Bind("configId") long configId, @Bind("limit") int limit);
+
+    @SqlQuery("SELECT " + COLUMNS + " FROM \"CrawlRun\" ORDER BY started_at DESC LIMIT :limit")
+    @RegisterConstructorMapper(CrawlRun.class)
+    List<CrawlRun> findRecent(@Bind("limit") int limit);
+
+    @SqlQuery("SELECT date(started_at / 1000, 'unixepoch', 'localtime') as day, " + TOTALS +
+            " FROM \"CrawlRun\" WHERE config_id = :configId AND started_at >= :since AND status != 'running' " +
+            "GROUP BY day ORDER BY day")
+    @RegisterConstructorMapper(DailyTotals.class)
+    List<DailyTotals> dailyTotals(@Bind("configId") long configId, @Bind("since") long since);
+
+    /**
+     * 按配置汇总，总耗时最多的排在前面
+     */
+    @SqlQuery("SELECT config_id as configId, group_id as groupId, " + TOTALS +
+            " FROM \"CrawlRun\" WHERE started_at >= :since AND status != 'running' " +
+            "GROUP BY config_id, group_id ORDER BY durationMs DESC")
+    @RegisterConstructorMapper(ConfigTotals.class)
+    List<ConfigTotals> totalsByConfig(@Bind("since") long since);
+
+    @SqlUpdate("DELETE FROM \"CrawlRun\" WHERE config_id = :configId")
+    int deleteByConfigId(@Bind("configId") long configId);
+
+    record CrawlRun(long id, long configId, String groupId, String status, long startedAt, Long finishedAt,
+                    int listPages, int listPagesOk, int topics, int topicsOk, int postsNew, int postsUpdated,
+                    int postsSkipped, int commentsStored, long bytesIn, long sleepMs, long fetchMs, long parseMs,
+                    long dbMs, int blocked, int retries, String error) {}
+
+    record DailyTotals(String day, int runs, int failed, long durationMs, long listPagesOk, long topicsOk, long postsNew,
+                       long postsUpdated, long commentsStored, long bytesIn, long sleepMs, long fetchMs, long parseMs,
+                       long dbMs, long blocked, long retries) {}
+
+    record ConfigTotals(long configId, String groupId, int runs, int failed, long durationMs, long listPagesOk,
+                        long topicsOk, long postsNew, long postsUpdated, long commentsStored, long bytesIn, long sleepMs,
+                        long fetchMs, long parseMs, long dbMs, long blocked, long retries) {}
+}
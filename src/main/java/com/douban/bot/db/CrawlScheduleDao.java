@@ -0,0 +1,43 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 爬虫配置的调度时间（CrawlSchedule），取代内存中的上次执行时间，重启后不会所有配置同时开跑
+ */
+public interface CrawlScheduleDao {
+
+    @SqlQuery("SELECT config_id as configId, last_run_at as lastRunAt, next_run_at as nextRunAt FROM \"CrawlSchedule\"")
+    @RegisterConstructorMapper(Schedule.class)
+    List<Schedule> findAll();
+
+    @SqlQuery("SELECT config_id as configId, last_run_at as lastRunAt, next_run_at as nextRunAt FROM \"CrawlSchedule\" " +
+            "WHERE config_id = :configId")
+    @RegisterConstructorMapper(Schedule.class)
+    Optional<Schedule> findByConfigId(@Bind("configId") long configId);
+
+    /**
+     * 记录一次执行并排定下次执行时间
+     */
+    @SqlUpdate("INSERT INTO \"CrawlSchedule\" (config_id, last_run_at, next_run_at) VALUES (:configId, :lastRunAt, :nextRunAt) " +
+            "ON CONFLICT(config_id) DO UPDATE SET last_run_at = excluded.last_run_at, next_run_at = excluded.next_run_at")
+    void markRun(@Bind("configId") long configId, @Bind("lastRunAt") long lastRunAt, @Bind("nextRunAt") long nextRunAt);
+
+    /**
+     * 只调整下次执行时间，不改变上次执行时间（启动时错开已到期的配置）
+     */
+    @SqlUpdate("INSERT INTO \"CrawlSchedule\" (config_id, next_run_at) VALUES (:configId, :nextRunAt) " +
+            "ON CONFLICT(config_id) DO UPDATE SET next_run_at = excluded.next_run_at")
+    void setNextRun(@Bind("configId") long configId, @Bind("nextRunAt") long nextRunAt);
+
+    @SqlUpdate("DELETE FROM \"CrawlSchedule\" WHERE config_id = :configId")
+    int deleteByConfigId(@Bind("configId") long configId);
+
+    record Schedule(long configId, Long lastRunAt, long nextRunAt) {}
+}
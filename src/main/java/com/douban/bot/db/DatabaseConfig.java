@@ -11,8 +11,14 @@ import javax.sql.DataSource;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Configuration
 public class DatabaseConfig {
@@ -127,31 +133,21 @@ public class DatabaseConfig {
             """;
         stmt.execute(groupTableSQL);
 
-        // Post表
-        String postTableSQL = """
-            CREATE TABLE IF NOT EXISTS "Post" (
-                "id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
-                "post_id" TEXT NOT NULL UNIQUE,
-                "group_id" TEXT NOT NULL,
+        // Post表（时间列为 epoch 毫秒）
+        stmt.execute(postTableSQL("Post"));
+
+        // PostBody表 - 帖子正文等大字段单独存放，Post 表只保留列表/计数/回复队列扫描用到的小字段
+        String postBodyTableSQL = """
+            CREATE TABLE IF NOT EXISTS "PostBody" (
+                "post_id" TEXT PRIMARY KEY NOT NULL,
                 "author_info" TEXT NOT NULL DEFAULT '{}',
-                "alt" TEXT NOT NULL,
-                "title" TEXT NOT NULL,
-                "content" TEXT NOT NULL,
+                "content" TEXT NOT NULL DEFAULT '',
                 "photo_list" TEXT NOT NULL DEFAULT '[]',
-                "rent" REAL,
-                "subway" TEXT,
-                "contact" TEXT,
-                "is_matched" INTEGER NOT NULL DEFAULT 0,
-                "keyword_list" TEXT NOT NULL DEFAULT '[]',
-                "comment" TEXT,
-                "is_collected" INTEGER NOT NULL DEFAULT 0,
-                "created" TEXT NOT NULL,
-                "updated" TEXT NOT NULL,
-                "created_at" TEXT NOT NULL DEFAULT (datetime('now')),
-                FOREIGN KEY (group_id) REFERENCES "Group"(id) ON DELETE CASCADE
+                "bot_reply_content" TEXT,
+                FOREIGN KEY (post_id) REFERENCES "Post"(post_id) ON DELETE CASCADE
             );
             """;
-        stmt.execute(postTableSQL);
+        stmt.execute(postBodyTableSQL);
 
         // Comment表
         String commentTableSQL = """
@@ -173,6 +169,31 @@ public class DatabaseConfig {
             """;
         stmt.execute(commentTableSQL);
 
+        // TopicCommentCursor表 - 每个帖子评论的同步进度，再次爬取时从 last_page 开始翻页
+        String commentCursorTableSQL = """
+            CREATE TABLE IF NOT EXISTS "TopicCommentCursor" (
+                "post_id" TEXT PRIMARY KEY NOT NULL,
+                "last_page" INTEGER NOT NULL DEFAULT 0,
+                "last_comment_id" TEXT,
+                "comment_count" INTEGER NOT NULL DEFAULT 0,
+                "updated_at" INTEGER NOT NULL
+            );
+            """;
+        stmt.execute(commentCursorTableSQL);
+
+        // 全文索引：rowid 分别对应 Post.id / Comment.id。写入的是 SearchTokenizer 切分后的文本，
+        // 原文不在索引中重复保存（contentless），contentless_delete 允许按 rowid 删除/替换
+        stmt.execute("""
+            CREATE VIRTUAL TABLE IF NOT EXISTS "PostFts" USING fts5(
+                title, content, content='', contentless_delete=1, tokenize='unicode61 remove_diacritics 2'
+            );
+            """);
+        stmt.execute("""
+            CREATE VIRTUAL TABLE IF NOT EXISTS "CommentFts" USING fts5(
+                content, content='', contentless_delete=1, tokenize='unicode61 remove_diacritics 2'
+            );
+            """);
+
         // CrawlerConfig表 - 存储爬虫配置
         String configTableSQL = """
             CREATE TABLE IF NOT EXISTS "CrawlerConfig" (
@@ -251,12 +272,51 @@ public class DatabaseConfig {
             // 字段已存在，忽略错误
         }
         try {
-            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"bot_reply_content\" TEXT");
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"bot_reply_at\" INTEGER");
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        try {
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"simhash\" INTEGER");
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        try {
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"duplicate_of\" TEXT");
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        try {
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"is_duplicate\" INTEGER NOT NULL DEFAULT 0");
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        // 列表页的回复数和详情页抓取时间/正文摘要，用于判断帖子是否需要重新抓取详情
+        try {
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"reply_count\" INTEGER");
         } catch (SQLException e) {
             // 字段已存在，忽略错误
         }
         try {
-            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"bot_reply_at\" TEXT");
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"content_hash\" TEXT");
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        try {
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"detail_fetched_at\" INTEGER NOT NULL DEFAULT 0");
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        // 列表卡片的正文摘要，写入正文时生成；新加的列在正文迁移完成后从 PostBody 回填
+        boolean previewAdded = false;
+        try {
+            stmt.execute("ALTER TABLE \"Post\" ADD COLUMN \"content_preview\" TEXT");
+            previewAdded = true;
+        } catch (SQLException e) {
+            // 字段已存在，忽略错误
+        }
+        try {
+            stmt.execute("ALTER TABLE \"CrawlerConfig\" ADD COLUMN \"duplicate_policy\" TEXT NOT NULL DEFAULT 'skip'");
         } catch (SQLException e) {
             // 字段已存在，忽略错误
         }
@@ -281,9 +341,403 @@ public class DatabaseConfig {
             // 字段已存在，忽略错误
         }
 
+        // 旧版本数据库的正文字段在 Post 表中，迁移到 PostBody
+        migratePostBody(stmt);
+        // 旧版本数据库的帖子时间为文本，重建 Post 表转换为 epoch 毫秒
+        migratePostTimestamps(stmt);
+        if (previewAdded) {
+            backfillContentPreview(stmt);
+        }
+
+        // Keyword/PostKeyword表 - 匹配关键词的规范化存储，keyword_list 列仍保留 JSON 原文供展示。
+        // PostKeyword 无 rowid，主键按"关键词 → 小组 → 时间"排列，按关键词查帖子和按天计数都只读索引
+        String keywordTableSQL = """
+            CREATE TABLE IF NOT EXISTS "Keyword" (
+                "id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                "keyword" TEXT NOT NULL UNIQUE,
+                "created_at" TEXT NOT NULL DEFAULT (datetime('now'))
+            );
+            """;
+        stmt.execute(keywordTableSQL);
+        String postKeywordTableSQL = """
+            CREATE TABLE IF NOT EXISTS "PostKeyword" (
+                "keyword_id" INTEGER NOT NULL,
+                "group_id" TEXT NOT NULL,
+                "created" INTEGER NOT NULL,
+                "post_id" TEXT NOT NULL,
+                PRIMARY KEY (keyword_id, group_id, created, post_id),
+                FOREIGN KEY (keyword_id) REFERENCES "Keyword"(id) ON DELETE CASCADE,
+                FOREIGN KEY (post_id) REFERENCES "Post"(post_id) ON DELETE CASCADE
+            ) WITHOUT ROWID;
+            """;
+        stmt.execute(postKeywordTableSQL);
+        // 旧版本数据库只有 keyword_list，从 JSON 回填
+        backfillPostKeywords(stmt);
+
+        // PostSimhashBand表 - SimHash 指纹按 16 位分段的 LSH 索引，近似重复检测时按段精确查找候选帖子。
+        // Post.simhash 为 NULL 表示尚未计算（旧数据由 DuplicateDetector 启动时回填），0 表示文本过短不参与检测
+        String simhashBandTableSQL = """
+            CREATE TABLE IF NOT EXISTS "PostSimhashBand" (
+                "band" INTEGER NOT NULL,
+                "value" INTEGER NOT NULL,
+                "post_id" TEXT NOT NULL,
+                PRIMARY KEY (band, value, post_id),
+                FOREIGN KEY (post_id) REFERENCES "Post"(post_id) ON DELETE CASCADE
+            ) WITHOUT ROWID;
+            """;
+        stmt.execute(simhashBandTableSQL);
+
+        // GroupCounter表 - 按小组维护的计数，由触发器在 Post/Comment 写入时同一事务内更新，
+        // 供统计接口和分页总数直接读取；CounterReconciler 定期按源表重算校正
+        String groupCounterTableSQL = """
+            CREATE TABLE IF NOT EXISTS "GroupCounter" (
+                "group_id" TEXT PRIMARY KEY NOT NULL,
+                "posts" INTEGER NOT NULL DEFAULT 0,
+                "matched" INTEGER NOT NULL DEFAULT 0,
+                "replied" INTEGER NOT NULL DEFAULT 0,
+                "pending" INTEGER NOT NULL DEFAULT 0,
+                "comments" INTEGER NOT NULL DEFAULT 0
+            );
+            """;
+        stmt.execute(groupCounterTableSQL);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS trg_post_counter_insert AFTER INSERT ON "Post"
+            BEGIN
+                INSERT OR IGNORE INTO "GroupCounter" (group_id) VALUES (NEW.group_id);
+                UPDATE "GroupCounter" SET
+                    posts = posts + 1,
+                    matched = matched + (NEW.is_matched != 0),
+                    replied = replied + (NEW.bot_replied != 0),
+                    pending = pending + (NEW.is_matched != 0 AND NEW.bot_replied = 0)
+                WHERE group_id = NEW.group_id;
+            END;
+            """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS trg_post_counter_update AFTER UPDATE OF group_id, is_matched, bot_replied ON "Post"
+            BEGIN
+                UPDATE "GroupCounter" SET
+                    posts = posts - 1,
+                    matched = matched - (OLD.is_matched != 0),
+                    replied = replied - (OLD.bot_replied != 0),
+                    pending = pending - (OLD.is_matched != 0 AND OLD.bot_replied = 0)
+                WHERE group_id = OLD.group_id;
+                INSERT OR IGNORE INTO "GroupCounter" (group_id) VALUES (NEW.group_id);
+                UPDATE "GroupCounter" SET
+                    posts = posts + 1,
+                    matched = matched + (NEW.is_matched != 0),
+                    replied = replied + (NEW.bot_replied != 0),
+                    pending = pending + (NEW.is_matched != 0 AND NEW.bot_replied = 0)
+                WHERE group_id = NEW.group_id;
+            END;
+            """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS trg_post_counter_delete AFTER DELETE ON "Post"
+            BEGIN
+                UPDATE "GroupCounter" SET
+                    posts = posts - 1,
+                    matched = matched - (OLD.is_matched != 0),
+                    replied = replied - (OLD.bot_replied != 0),
+                    pending = pending - (OLD.is_matched != 0 AND OLD.bot_replied = 0)
+                WHERE group_id = OLD.group_id;
+            END;
+            """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS trg_comment_counter_insert AFTER INSERT ON "Comment"
+            BEGIN
+                INSERT OR IGNORE INTO "GroupCounter" (group_id) VALUES (NEW.group_id);
+                UPDATE "GroupCounter" SET comments = comments + 1 WHERE group_id = NEW.group_id;
+            END;
+            """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS trg_comment_counter_delete AFTER DELETE ON "Comment"
+            BEGIN
+                UPDATE "GroupCounter" SET comments = comments - 1 WHERE group_id = OLD.group_id;
+            END;
+            """);
+
+        // CrawlFrontier表 - 每个爬虫配置一轮爬取的待抓列表页/帖子页，领取时写租约（lease_until，毫秒），
+        // 进程退出后未完成的任务在下次运行时继续；payload 为列表页解析出的帖子信息（JSON）
+        String crawlFrontierTableSQL = """
+            CREATE TABLE IF NOT EXISTS "CrawlFrontier" (
+                "id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                "config_id" INTEGER NOT NULL,
+                "group_id" TEXT NOT NULL,
+                "kind" TEXT NOT NULL,
+                "url" TEXT NOT NULL,
+                "payload" TEXT NOT NULL DEFAULT '{}',
+                "priority" INTEGER NOT NULL DEFAULT 0,
+                "status" TEXT NOT NULL DEFAULT 'pending',
+                "attempts" INTEGER NOT NULL DEFAULT 0,
+                "lease_until" INTEGER NOT NULL DEFAULT 0,
+                "last_error" TEXT,
+                "created_at" INTEGER NOT NULL,
+                "updated_at" INTEGER NOT NULL,
+                UNIQUE (config_id, kind, url)
+            );
+            """;
+        stmt.execute(crawlFrontierTableSQL);
+
+        // CrawlSchedule表 - 每个爬虫配置的上次/下次执行时间（毫秒），重启后按此继续调度
+        String crawlScheduleTableSQL = """
+            CREATE TABLE IF NOT EXISTS "CrawlSchedule" (
+                "config_id" INTEGER PRIMARY KEY NOT NULL,
+                "last_run_at" INTEGER,
+                "next_run_at" INTEGER NOT NULL DEFAULT 0
+            );
+            """;
+        stmt.execute(crawlScheduleTableSQL);
+
+        // CrawlBackfill表 - 每个爬虫配置的历史回溯进度，next_start/end_start 为列表页的 start 偏移（每页 25 条）
+        String crawlBackfillTableSQL = """
+            CREATE TABLE IF NOT EXISTS "CrawlBackfill" (
+                "config_id" INTEGER PRIMARY KEY NOT NULL,
+                "group_id" TEXT NOT NULL,
+                "next_start" INTEGER NOT NULL,
+                "end_start" INTEGER NOT NULL,
+                "status" TEXT NOT NULL DEFAULT 'running',
+                "pages_done" INTEGER NOT NULL DEFAULT 0,
+                "posts_seen" INTEGER NOT NULL DEFAULT 0,
+                "failures" INTEGER NOT NULL DEFAULT 0,
+                "last_error" TEXT,
+                "started_at" INTEGER NOT NULL,
+                "updated_at" INTEGER NOT NULL,
+                "finished_at" INTEGER
+            );
+            """;
+        stmt.execute(crawlBackfillTableSQL);
+
+        // CrawlRun表 - 每次常规爬取的记录，耗时列为毫秒，finished_at 为空表示仍在进行
+        String crawlRunTableSQL = """
+            CREATE TABLE IF NOT EXISTS "CrawlRun" (
+                "id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                "config_id" INTEGER NOT NULL,
+                "group_id" TEXT NOT NULL,
+                "status" TEXT NOT NULL DEFAULT 'running',
+                "started_at" INTEGER NOT NULL,
+                "finished_at" INTEGER,
+                "list_pages" INTEGER NOT NULL DEFAULT 0,
+                "list_pages_ok" INTEGER NOT NULL DEFAULT 0,
+                "topics" INTEGER NOT NULL DEFAULT 0,
+                "topics_ok" INTEGER NOT NULL DEFAULT 0,
+                "posts_new" INTEGER NOT NULL DEFAULT 0,
+                "posts_updated" INTEGER NOT NULL DEFAULT 0,
+                "posts_skipped" INTEGER NOT NULL DEFAULT 0,
+                "comments_stored" INTEGER NOT NULL DEFAULT 0,
+                "bytes_in" INTEGER NOT NULL DEFAULT 0,
+                "sleep_ms" INTEGER NOT NULL DEFAULT 0,
+                "fetch_ms" INTEGER NOT NULL DEFAULT 0,
+                "parse_ms" INTEGER NOT NULL DEFAULT 0,
+                "db_ms" INTEGER NOT NULL DEFAULT 0,
+                "blocked" INTEGER NOT NULL DEFAULT 0,
+                "retries" INTEGER NOT NULL DEFAULT 0,
+                "error" TEXT
+            );
+            """;
+        stmt.execute(crawlRunTableSQL);
+
         // 创建索引
         stmt.execute("CREATE INDEX IF NOT EXISTS idx_comment_post_id ON \"Comment\"(post_id);");
         stmt.execute("CREATE INDEX IF NOT EXISTS idx_comment_group_id ON \"Comment\"(group_id);");
         stmt.execute("CREATE INDEX IF NOT EXISTS idx_config_enabled ON \"CrawlerConfig\"(enabled);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_crawlrun_config_started ON \"CrawlRun\"(config_id, started_at);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_crawlrun_started ON \"CrawlRun\"(started_at);");
+        // 帖子列表分页按 created 排序，可按小组过滤
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_post_created ON \"Post\"(created);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_post_group_created ON \"Post\"(group_id, created);");
+        // 不分小组按关键词查询/按天计数；post_id 索引用于按帖子删除关键词
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_post_keyword_created ON \"PostKeyword\"(keyword_id, created);");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_post_keyword_post ON \"PostKeyword\"(post_id);");
+        // 指纹回填：只索引还没有指纹的帖子
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_post_simhash_missing ON \"Post\"(id) WHERE simhash IS NULL;");
+        // 回复队列：只索引待回复的帖子，取下一条待回复帖子是一次索引查找
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_post_reply_queue ON \"Post\"(next_attempt_at, created) " +
+                "WHERE is_matched = 1 AND bot_replied = 0;");
+        // 爬取任务领取：只索引未完成的任务
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_crawl_frontier_pending ON \"CrawlFrontier\"(config_id, priority DESC, id) " +
+                "WHERE status = 'pending';");
+    }
+
+    private String postTableSQL(String tableName) {
+        return """
+            CREATE TABLE IF NOT EXISTS "%s" (
+                "id" INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                "post_id" TEXT NOT NULL UNIQUE,
+                "group_id" TEXT NOT NULL,
+                "alt" TEXT NOT NULL,
+                "title" TEXT NOT NULL,
+                "rent" REAL,
+                "subway" TEXT,
+                "contact" TEXT,
+                "is_matched" INTEGER NOT NULL DEFAULT 0,
+                "keyword_list" TEXT NOT NULL DEFAULT '[]',
+                "comment" TEXT,
+                "is_collected" INTEGER NOT NULL DEFAULT 0,
+                "created" INTEGER NOT NULL,
+                "updated" INTEGER NOT NULL,
+                "created_at" TEXT NOT NULL DEFAULT (datetime('now')),
+                "bot_replied" INTEGER NOT NULL DEFAULT 0,
+                "bot_reply_at" INTEGER,
+                "next_attempt_at" INTEGER NOT NULL DEFAULT 0,
+                "simhash" INTEGER,
+                "duplicate_of" TEXT,
+                "is_duplicate" INTEGER NOT NULL DEFAULT 0,
+                "reply_count" INTEGER,
+                "content_hash" TEXT,
+                "content_preview" TEXT,
+                "detail_fetched_at" INTEGER NOT NULL DEFAULT 0,
+                FOREIGN KEY (group_id) REFERENCES "Group"(id) ON DELETE CASCADE
+            );
+            """.formatted(tableName);
+    }
+
+    /**
+     * 为升级前的帖子生成正文摘要，截断规则与 {@link PostProjection#contentPreview} 一致
+     */
+    private void backfillContentPreview(Statement stmt) throws SQLException {
+        int chars = PostProjection.PREVIEW_CHARS;
+        int updated = stmt.executeUpdate("""
+            UPDATE "Post" SET content_preview = (
+                SELECT CASE WHEN length(b.content) > %d THEN substr(b.content, 1, %d) || '...' ELSE b.content END
+                FROM "PostBody" b WHERE b.post_id = "Post".post_id)
+            WHERE content_preview IS NULL
+            """.formatted(chars, chars));
+        System.out.println("帖子正文摘要回填完成，共 " + updated + " 条");
+    }
+
+    /**
+     * PostKeyword 为空而帖子中已有匹配关键词时（旧版本数据库升级），用 json_each 展开 keyword_list 回填
+     */
+    private void backfillPostKeywords(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT NOT EXISTS (SELECT 1 FROM \"PostKeyword\") " +
+                "AND EXISTS (SELECT 1 FROM \"Post\" WHERE keyword_list NOT IN ('', '[]'))")) {
+            if (!rs.next() || !rs.getBoolean(1)) {
+                return;
+            }
+        }
+
+        System.out.println("正在回填帖子关键词到 PostKeyword 表...");
+        Connection conn = stmt.getConnection();
+        conn.setAutoCommit(false);
+        try {
+            stmt.executeUpdate("""
+                INSERT OR IGNORE INTO "Keyword" (keyword)
+                SELECT DISTINCT j.value FROM "Post" p, json_each(p.keyword_list) j
+                WHERE json_valid(p.keyword_list) AND j.type = 'text' AND j.value != ''
+                """);
+            int moved = stmt.executeUpdate("""
+                INSERT OR IGNORE INTO "PostKeyword" (keyword_id, group_id, created, post_id)
+                SELECT k.id, p.group_id, p.created, p.post_id FROM "Post" p, json_each(p.keyword_list) j
+                JOIN "Keyword" k ON k.keyword = j.value
+                WHERE json_valid(p.keyword_list)
+                """);
+            conn.commit();
+            System.out.println("帖子关键词回填完成，共 " + moved + " 条");
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 把旧版 Post 表中的文本时间（yyyy-MM-dd HH:mm:ss，本地时间）转换为 epoch 毫秒。
+     * SQLite 不能修改列类型，所以新建表复制数据后替换旧表，id 保持不变（全文索引以 id 关联）。
+     * 未回复帖子的 next_attempt_at 取上次尝试时间，迁移后可以立即重试
+     */
+    private void migratePostTimestamps(Statement stmt) throws SQLException {
+        String createdType = null;
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(\"Post\")")) {
+            while (rs.next()) {
+                if ("created".equals(rs.getString("name"))) {
+                    createdType = rs.getString("type");
+                }
+            }
+        }
+        if (!"TEXT".equalsIgnoreCase(createdType)) {
+            return;
+        }
+
+        System.out.println("正在转换帖子时间为 epoch 毫秒...");
+        String toMillis = "CAST(strftime('%%s', %s, 'utc') AS INTEGER) * 1000";
+        String botReplyAt = "CASE WHEN bot_reply_at IS NULL OR bot_reply_at = '' THEN NULL ELSE " +
+                toMillis.formatted("bot_reply_at") + " END";
+        Connection conn = stmt.getConnection();
+        conn.setAutoCommit(false);
+        try {
+            stmt.execute("DROP TABLE IF EXISTS \"Post_new\"");
+            stmt.execute(postTableSQL("Post_new"));
+            int moved = stmt.executeUpdate("""
+                INSERT INTO "Post_new" (id, post_id, group_id, alt, title, rent, subway, contact, is_matched,
+                    keyword_list, comment, is_collected, created, updated, created_at, bot_replied, bot_reply_at, next_attempt_at)
+                SELECT id, post_id, group_id, alt, title, rent, subway, contact, is_matched,
+                    keyword_list, comment, is_collected, COALESCE(%s, 0), COALESCE(%s, 0), created_at,
+                    COALESCE(bot_replied, 0), %s, CASE WHEN bot_replied = 1 THEN 0 ELSE COALESCE(%s, 0) END
+                FROM "Post"
+                """.formatted(toMillis.formatted("created"), toMillis.formatted("updated"), botReplyAt, botReplyAt));
+            stmt.execute("DROP TABLE \"Post\"");
+            stmt.execute("ALTER TABLE \"Post_new\" RENAME TO \"Post\"");
+            conn.commit();
+            System.out.println("帖子时间转换完成，共 " + moved + " 条");
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 把旧版 Post 表中的正文字段（author_info/content/photo_list/bot_reply_content）搬到 PostBody 表，
+     * 然后从 Post 表删除这些列。只在 Post 表仍包含这些列时执行，整个过程在一个事务中完成
+     */
+    private void migratePostBody(Statement stmt) throws SQLException {
+        Set<String> postColumns = new HashSet<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(\"Post\")")) {
+            while (rs.next()) {
+                postColumns.add(rs.getString("name"));
+            }
+        }
+
+        Map<String, String> bodyColumns = new LinkedHashMap<>();
+        bodyColumns.put("author_info", "'{}'");
+        bodyColumns.put("content", "''");
+        bodyColumns.put("photo_list", "'[]'");
+        bodyColumns.put("bot_reply_content", "NULL");
+        List<String> legacyColumns = bodyColumns.keySet().stream().filter(postColumns::contains).toList();
+        if (legacyColumns.isEmpty()) {
+            return;
+        }
+
+        System.out.println("正在迁移帖子正文到 PostBody 表...");
+        StringBuilder select = new StringBuilder("post_id");
+        for (Map.Entry<String, String> entry : bodyColumns.entrySet()) {
+            select.append(", ");
+            if (postColumns.contains(entry.getKey())) {
+                select.append("COALESCE(\"").append(entry.getKey()).append("\", ").append(entry.getValue()).append(")");
+            } else {
+                select.append(entry.getValue());
+            }
+        }
+
+        Connection conn = stmt.getConnection();
+        conn.setAutoCommit(false);
+        try {
+            int moved = stmt.executeUpdate("INSERT OR IGNORE INTO \"PostBody\" (post_id, author_info, content, photo_list, bot_reply_content) " +
+                    "SELECT " + select + " FROM \"Post\"");
+            for (String column : legacyColumns) {
+                stmt.execute("ALTER TABLE \"Post\" DROP COLUMN \"" + column + "\"");
+            }
+            conn.commit();
+            System.out.println("帖子正文迁移完成，共 " + moved + " 条");
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        // 删除列后释放旧页面，让 Post 表重新紧凑存放
+        stmt.execute("VACUUM");
     }
 }
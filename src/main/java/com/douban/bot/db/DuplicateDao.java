@@ -0,0 +1,62 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
+
+import java.util.List;
+
+/**
+ * 近似重复检测：按 SimHash 分段在 PostSimhashBand 上精确查找候选帖子，海明距离由调用方计算。
+ * 新帖子的指纹和分段由 PostDao.createPost 在同一事务内写入
+ */
+public interface DuplicateDao {
+
+    /**
+     * 任一分段相同的帖子都是候选，按发帖时间排序以便优先链接到最早的原帖
+     */
+    @SqlQuery("SELECT p.post_id as postId, p.group_id as groupId, p.simhash, p.duplicate_of as duplicateOf, p.created " +
+            "FROM \"Post\" p WHERE p.post_id IN (" +
+            "  SELECT post_id FROM \"PostSimhashBand\" WHERE band = 0 AND value = :b0 " +
+            "  UNION SELECT post_id FROM \"PostSimhashBand\" WHERE band = 1 AND value = :b1 " +
+            "  UNION SELECT post_id FROM \"PostSimhashBand\" WHERE band = 2 AND value = :b2 " +
+            "  UNION SELECT post_id FROM \"PostSimhashBand\" WHERE band = 3 AND value = :b3" +
+            ") ORDER BY p.created LIMIT :limit")
+    @RegisterConstructorMapper(Candidate.class)
+    List<Candidate> findCandidates(@Bind("b0") int b0, @Bind("b1") int b1, @Bind("b2") int b2, @Bind("b3") int b3,
+                                   @Bind("limit") int limit);
+
+    // 旧数据回填：按 id 分批读取还没有指纹的帖子
+
+    @SqlQuery("SELECT EXISTS (SELECT 1 FROM \"Post\" WHERE simhash IS NULL)")
+    boolean hasMissingFingerprints();
+
+    @SqlQuery("SELECT p.id, p.post_id as postId, p.title, COALESCE(b.content, '') as content FROM \"Post\" p " +
+            "LEFT JOIN \"PostBody\" b ON b.post_id = p.post_id " +
+            "WHERE p.simhash IS NULL AND p.id > :afterId ORDER BY p.id LIMIT :limit")
+    @RegisterConstructorMapper(FingerprintSource.class)
+    List<FingerprintSource> findMissingFingerprints(@Bind("afterId") long afterId, @Bind("limit") int limit);
+
+    @SqlBatch("UPDATE \"Post\" SET simhash = :simhash WHERE id = :id")
+    void updateFingerprints(@BindMethods List<Fingerprint> fingerprints);
+
+    @SqlBatch("INSERT OR IGNORE INTO \"PostSimhashBand\" (band, value, post_id) " +
+            "SELECT 0, :b0, :postId WHERE :simhash != 0 UNION ALL SELECT 1, :b1, :postId WHERE :simhash != 0 " +
+            "UNION ALL SELECT 2, :b2, :postId WHERE :simhash != 0 UNION ALL SELECT 3, :b3, :postId WHERE :simhash != 0")
+    void insertBands(@BindMethods List<Fingerprint> fingerprints);
+
+    @Transaction
+    default void saveFingerprints(List<Fingerprint> fingerprints) {
+        updateFingerprints(fingerprints);
+        insertBands(fingerprints);
+    }
+
+    record Candidate(String postId, String groupId, long simhash, String duplicateOf, long created) {}
+
+    record FingerprintSource(long id, String postId, String title, String content) {}
+
+    record Fingerprint(long id, String postId, long simhash, int b0, int b1, int b2, int b3) {}
+}
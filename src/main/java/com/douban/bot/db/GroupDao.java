@@ -31,6 +31,9 @@ public interface GroupDao {
     @RegisterConstructorMapper(GroupRow.class)
     List<GroupRow> findAll();
 
+    @SqlQuery("SELECT COUNT(*) FROM \"Group\"")
+    int countGroups();
+
     default void createGroup(Group group) {
         String created = group.getCreated() != null ? group.getCreated().format(DATE_FORMAT) : LocalDate.now().format(DATE_FORMAT);
         String createdAt = group.getCreatedAt() != null ? group.getCreatedAt().format(DATETIME_FORMAT) : LocalDateTime.now().format(DATETIME_FORMAT);
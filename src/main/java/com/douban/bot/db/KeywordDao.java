@@ -0,0 +1,111 @@
+package com.douban.bot.db;
+
+import com.douban.bot.model.PostSummary;
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.UseRowMapper;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 按关键词查询帖子。PostKeyword 的主键 (keyword_id, group_id, created, post_id) 覆盖"某小组某关键词最新帖子"，
+ * 索引 idx_post_keyword_created (keyword_id, created) 覆盖不分小组的查询和按天计数，查询都只读索引。
+ * PostKeyword 由 PostDao 在写入帖子的同一事务内维护
+ */
+public interface KeywordDao {
+
+    @SqlQuery("SELECT id FROM \"Keyword\" WHERE keyword = :keyword")
+    Optional<Long> findIdByKeyword(@Bind("keyword") String keyword);
+
+    @SqlQuery("SELECT k.id, k.keyword, " +
+            "(SELECT COUNT(*) FROM \"PostKeyword\" pk WHERE pk.keyword_id = k.id) as posts " +
+            "FROM \"Keyword\" k ORDER BY posts DESC, k.keyword")
+    @RegisterConstructorMapper(KeywordCount.class)
+    List<KeywordCount> findAllWithCounts();
+
+    @SqlQuery("SELECT k.id, k.keyword, " +
+            "(SELECT COUNT(*) FROM \"PostKeyword\" pk WHERE pk.keyword_id = k.id AND pk.group_id = :groupId) as posts " +
+            "FROM \"Keyword\" k ORDER BY posts DESC, k.keyword")
+    @RegisterConstructorMapper(KeywordCount.class)
+    List<KeywordCount> findAllWithCountsByGroup(@Bind("groupId") String groupId);
+
+    /**
+     * 分页只在 PostKeyword 索引上完成，再为当前页联表 Post 读取摘要字段
+     */
+    @SqlQuery("SELECT p.post_id as postId, p.group_id as groupId, p.title, p.alt, p.is_matched as isMatched, " +
+            "p.bot_replied as botReplied, p.bot_reply_at as botReplyAt, p.created, p.updated FROM (" +
+            "  SELECT post_id, created FROM \"PostKeyword\" WHERE keyword_id = :keywordId " +
+            "  ORDER BY created DESC LIMIT :limit OFFSET :offset" +
+            ") pk JOIN \"Post\" p ON p.post_id = pk.post_id ORDER BY pk.created DESC")
+    @UseRowMapper(PostSummaryMapper.class)
+    List<PostSummary> findLatestPosts(@Bind("keywordId") long keywordId,
+                                      @Bind("limit") int limit,
+                                      @Bind("offset") int offset);
+
+    @SqlQuery("SELECT p.post_id as postId, p.group_id as groupId, p.title, p.alt, p.is_matched as isMatched, " +
+            "p.bot_replied as botReplied, p.bot_reply_at as botReplyAt, p.created, p.updated FROM (" +
+            "  SELECT post_id, created FROM \"PostKeyword\" WHERE keyword_id = :keywordId AND group_id = :groupId " +
+            "  ORDER BY created DESC LIMIT :limit OFFSET :offset" +
+            ") pk JOIN \"Post\" p ON p.post_id = pk.post_id ORDER BY pk.created DESC")
+    @UseRowMapper(PostSummaryMapper.class)
+    List<PostSummary> findLatestPostsByGroup(@Bind("keywordId") long keywordId,
+                                             @Bind("groupId") String groupId,
+                                             @Bind("limit") int limit,
+                                             @Bind("offset") int offset);
+
+    @SqlQuery("SELECT COUNT(*) FROM \"PostKeyword\" WHERE keyword_id = :keywordId")
+    int countPosts(@Bind("keywordId") long keywordId);
+
+    @SqlQuery("SELECT COUNT(*) FROM \"PostKeyword\" WHERE keyword_id = :keywordId AND group_id = :groupId")
+    int countPostsByGroup(@Bind("keywordId") long keywordId, @Bind("groupId") String groupId);
+
+    /**
+     * 按本地日期统计，时间范围为 [createdFrom, createdTo) 的 epoch 毫秒
+     */
+    @SqlQuery("SELECT date(created / 1000, 'unixepoch', 'localtime') as day, COUNT(*) as posts " +
+            "FROM \"PostKeyword\" WHERE keyword_id = :keywordId AND created >= :createdFrom AND created < :createdTo " +
+            "GROUP BY day ORDER BY day")
+    @RegisterConstructorMapper(DailyCount.class)
+    List<DailyCount> countPerDay(@Bind("keywordId") long keywordId,
+                                 @Bind("createdFrom") long createdFrom,
+                                 @Bind("createdTo") long createdTo);
+
+    @SqlQuery("SELECT date(created / 1000, 'unixepoch', 'localtime') as day, COUNT(*) as posts " +
+            "FROM \"PostKeyword\" WHERE keyword_id = :keywordId AND group_id = :groupId " +
+            "AND created >= :createdFrom AND created < :createdTo " +
+            "GROUP BY day ORDER BY day")
+    @RegisterConstructorMapper(DailyCount.class)
+    List<DailyCount> countPerDayByGroup(@Bind("keywordId") long keywordId,
+                                        @Bind("groupId") String groupId,
+                                        @Bind("createdFrom") long createdFrom,
+                                        @Bind("createdTo") long createdTo);
+
+    // 小组过滤拆成单独的语句：写成 (:groupId IS NULL OR group_id = :groupId) 时 SQLite 无法使用主键前缀
+
+    default List<KeywordCount> getKeywords(String groupId) {
+        return groupId != null ? findAllWithCountsByGroup(groupId) : findAllWithCounts();
+    }
+
+    default List<PostSummary> getLatestPosts(long keywordId, String groupId, int page, int pageSize) {
+        int offset = (page - 1) * pageSize;
+        return groupId != null
+                ? findLatestPostsByGroup(keywordId, groupId, pageSize, offset)
+                : findLatestPosts(keywordId, pageSize, offset);
+    }
+
+    default int getPostsCount(long keywordId, String groupId) {
+        return groupId != null ? countPostsByGroup(keywordId, groupId) : countPosts(keywordId);
+    }
+
+    default List<DailyCount> getDailyCounts(long keywordId, String groupId, long createdFrom, long createdTo) {
+        return groupId != null
+                ? countPerDayByGroup(keywordId, groupId, createdFrom, createdTo)
+                : countPerDay(keywordId, createdFrom, createdTo);
+    }
+
+    record KeywordCount(long id, String keyword, long posts) {}
+
+    record DailyCount(String day, long posts) {}
+}
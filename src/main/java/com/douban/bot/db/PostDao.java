@@ -1,150 +1,356 @@
 package com.douban.bot.db;
 
 import com.douban.bot.model.Post;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.douban.bot.model.PostSummary;
+import com.douban.bot.utils.JsonUtils;
+import com.douban.bot.utils.SearchTokenizer;
+import com.douban.bot.utils.SimHash;
+import com.douban.bot.utils.TimeUtils;
 import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Define;
 import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMethods;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.statement.UseRowMapper;
 import org.jdbi.v3.sqlobject.transaction.Transaction;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PostDao {
     
-    DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    ObjectMapper objectMapper = new ObjectMapper();
     
-    @SqlQuery("SELECT id, post_id as postId, group_id as groupId, author_info as authorInfo, alt, title, content, " +
-            "photo_list as photoList, is_matched as isMatched, keyword_list as keywordList, " +
-            "bot_replied as botReplied, bot_reply_content as botReplyContent, bot_reply_at as botReplyAt, " +
-            "created, updated, created_at as createdAt FROM \"Post\" WHERE post_id = :postId")
-    @RegisterConstructorMapper(PostRow.class)
-    Optional<PostRow> findByPostId(@Bind("postId") String postId);
+    // 完整帖子：元数据来自 Post，正文等大字段联表读取 PostBody
+    String FULL_COLUMNS = "p.id, p.post_id as postId, p.group_id as groupId, COALESCE(b.author_info, '{}') as authorInfo, " +
+            "p.alt, p.title, COALESCE(b.content, '') as content, COALESCE(b.photo_list, '[]') as photoList, " +
+            "p.is_matched as isMatched, p.keyword_list as keywordList, p.bot_replied as botReplied, " +
+            "b.bot_reply_content as botReplyContent, COALESCE(p.bot_reply_at, 0) as botReplyAt, " +
+            "p.next_attempt_at as nextAttemptAt, p.simhash, p.duplicate_of as duplicateOf, p.is_duplicate as isDuplicate, " +
+            "p.reply_count as replyCount, p.created, p.updated";
+    String BODY_JOIN = "LEFT JOIN \"PostBody\" b ON b.post_id = p.post_id ";
 
-    @SqlQuery("SELECT id, post_id as postId, group_id as groupId, author_info as authorInfo, alt, title, content, " +
-            "photo_list as photoList, is_matched as isMatched, keyword_list as keywordList, " +
-            "bot_replied as botReplied, bot_reply_content as botReplyContent, bot_reply_at as botReplyAt, " +
-            "created, updated, created_at as createdAt FROM \"Post\" WHERE title = :title LIMIT 1")
+    @SqlQuery("SELECT " + FULL_COLUMNS + " FROM \"Post\" p " + BODY_JOIN + "WHERE p.post_id = :postId")
     @RegisterConstructorMapper(PostRow.class)
-    Optional<PostRow> findByTitle(@Bind("title") String title);
-
-    @SqlQuery("SELECT COUNT(*) FROM \"Post\" " +
-            "WHERE (:groupId IS NULL OR group_id = :groupId) " +
-            "AND (:botReplied IS NULL OR " +
-            "     (:botReplied = 'true' AND bot_replied = 1) OR " +
-            "     (:botReplied = 'false' AND (bot_replied IS NULL OR bot_replied = 0)))")
-    int countPosts(@Bind("groupId") String groupId, @Bind("botReplied") String botReplied);
+    Optional<PostRow> findByPostId(@Bind("postId") String postId);
 
-    @SqlQuery("SELECT id, post_id as postId, group_id as groupId, author_info as authorInfo, alt, title, content, " +
-            "photo_list as photoList, is_matched as isMatched, keyword_list as keywordList, " +
-            "bot_replied as botReplied, bot_reply_content as botReplyContent, bot_reply_at as botReplyAt, " +
-            "created, updated, created_at as createdAt FROM \"Post\" " +
+    /**
+     * 分页先在 Post 表上完成（只扫描元数据），再为当前页的帖子联表读取正文
+     */
+    @SqlQuery("SELECT " + FULL_COLUMNS + " FROM (SELECT * FROM \"Post\" " +
             "WHERE (:groupId IS NULL OR group_id = :groupId) " +
             "AND (:botReplied IS NULL OR " +
             "     (:botReplied = 'true' AND bot_replied = 1) OR " +
-            "     (:botReplied = 'false' AND (bot_replied IS NULL OR bot_replied = 0))) " +
-            "ORDER BY created DESC LIMIT :limit OFFSET :offset")
+            "     (:botReplied = 'false' AND bot_replied = 0)) " +
+            "ORDER BY created DESC LIMIT :limit OFFSET :offset) p " + BODY_JOIN +
+            "ORDER BY p.created DESC")
     @RegisterConstructorMapper(PostRow.class)
     List<PostRow> findWithPaginationDesc(@Bind("groupId") String groupId, 
                                          @Bind("botReplied") String botReplied,
                                          @Bind("limit") int limit, 
                                          @Bind("offset") int offset);
 
-    @SqlQuery("SELECT id, post_id as postId, group_id as groupId, author_info as authorInfo, alt, title, content, " +
-            "photo_list as photoList, is_matched as isMatched, keyword_list as keywordList, " +
-            "bot_replied as botReplied, bot_reply_content as botReplyContent, bot_reply_at as botReplyAt, " +
-            "created, updated, created_at as createdAt FROM \"Post\" " +
+    @SqlQuery("SELECT " + FULL_COLUMNS + " FROM (SELECT * FROM \"Post\" " +
             "WHERE (:groupId IS NULL OR group_id = :groupId) " +
             "AND (:botReplied IS NULL OR " +
             "     (:botReplied = 'true' AND bot_replied = 1) OR " +
-            "     (:botReplied = 'false' AND (bot_replied IS NULL OR bot_replied = 0))) " +
-            "ORDER BY created ASC LIMIT :limit OFFSET :offset")
+            "     (:botReplied = 'false' AND bot_replied = 0)) " +
+            "ORDER BY created ASC LIMIT :limit OFFSET :offset) p " + BODY_JOIN +
+            "ORDER BY p.created ASC")
     @RegisterConstructorMapper(PostRow.class)
     List<PostRow> findWithPaginationAsc(@Bind("groupId") String groupId, 
                                         @Bind("botReplied") String botReplied,
                                         @Bind("limit") int limit, 
                                         @Bind("offset") int offset);
 
-    @SqlQuery("SELECT id, post_id as postId, group_id as groupId, author_info as authorInfo, alt, title, content, " +
-            "photo_list as photoList, is_matched as isMatched, keyword_list as keywordList, " +
-            "bot_replied as botReplied, bot_reply_content as botReplyContent, bot_reply_at as botReplyAt, " +
-            "created, updated, created_at as createdAt FROM \"Post\" " +
-            "WHERE group_id = :groupId ORDER BY created DESC LIMIT :limit")
+    @SqlQuery("SELECT post_id as postId, group_id as groupId, title, alt, is_matched as isMatched, " +
+            "bot_replied as botReplied, bot_reply_at as botReplyAt, created, updated FROM \"Post\" " +
+            "WHERE (:groupId IS NULL OR group_id = :groupId) " +
+            "AND (:botReplied IS NULL OR " +
+            "     (:botReplied = 'true' AND bot_replied = 1) OR " +
+            "     (:botReplied = 'false' AND bot_replied = 0)) " +
+            "ORDER BY created DESC LIMIT :limit OFFSET :offset")
+    @UseRowMapper(PostSummaryMapper.class)
+    List<PostSummary> findSummariesDesc(@Bind("groupId") String groupId,
+                                        @Bind("botReplied") String botReplied,
+                                        @Bind("limit") int limit,
+                                        @Bind("offset") int offset);
+
+    @SqlQuery("SELECT post_id as postId, group_id as groupId, title, alt, is_matched as isMatched, " +
+            "bot_replied as botReplied, bot_reply_at as botReplyAt, created, updated FROM \"Post\" " +
+            "WHERE (:groupId IS NULL OR group_id = :groupId) " +
+            "AND (:botReplied IS NULL OR " +
+            "     (:botReplied = 'true' AND bot_replied = 1) OR " +
+            "     (:botReplied = 'false' AND bot_replied = 0)) " +
+            "ORDER BY created ASC LIMIT :limit OFFSET :offset")
+    @UseRowMapper(PostSummaryMapper.class)
+    List<PostSummary> findSummariesAsc(@Bind("groupId") String groupId,
+                                       @Bind("botReplied") String botReplied,
+                                       @Bind("limit") int limit,
+                                       @Bind("offset") int offset);
+
+    /**
+     * 按 fields 参数只查询指定列，columns 由 {@link PostProjection#selectClause} 基于白名单生成；
+     * 只有请求了正文字段时 join 才会联表 PostBody
+     */
+    @SqlQuery("SELECT <columns> FROM (SELECT * FROM \"Post\" " +
+            "WHERE (:groupId IS NULL OR group_id = :groupId) " +
+            "AND (:botReplied IS NULL OR " +
+            "     (:botReplied = 'true' AND bot_replied = 1) OR " +
+            "     (:botReplied = 'false' AND bot_replied = 0)) " +
+            "ORDER BY created <order> LIMIT :limit OFFSET :offset) p <join>" +
+            "ORDER BY p.created <order>")
+    @UseRowMapper(PostProjection.Mapper.class)
+    List<Map<String, Object>> findProjection(@Define("columns") String columns,
+                                             @Define("join") String join,
+                                             @Define("order") String order,
+                                             @Bind("groupId") String groupId,
+                                             @Bind("botReplied") String botReplied,
+                                             @Bind("limit") int limit,
+                                             @Bind("offset") int offset);
+
+    @SqlQuery("SELECT " + FULL_COLUMNS + " FROM (SELECT * FROM \"Post\" " +
+            "WHERE group_id = :groupId ORDER BY created DESC LIMIT :limit) p " + BODY_JOIN +
+            "ORDER BY p.created DESC")
     @RegisterConstructorMapper(PostRow.class)
     List<PostRow> findByGroupId(@Bind("groupId") String groupId, @Bind("limit") int limit);
     
-    @SqlQuery("SELECT id, post_id as postId, group_id as groupId, author_info as authorInfo, alt, title, content, " +
-            "photo_list as photoList, is_matched as isMatched, keyword_list as keywordList, " +
-            "bot_replied as botReplied, bot_reply_content as botReplyContent, bot_reply_at as botReplyAt, " +
-            "created, updated, created_at as createdAt FROM \"Post\" " +
-            "WHERE is_matched = 1 AND (bot_replied IS NULL OR bot_replied = 0) " +
-            "AND (bot_reply_at IS NULL OR bot_reply_at = '' OR datetime(bot_reply_at) <= datetime('now', '-' || :cooldownSeconds || ' seconds')) " +
-            "ORDER BY created ASC LIMIT 1")
+    /**
+     * 回复队列：条件与部分索引 idx_post_reply_queue 的 WHERE 一致，排序与索引列一致，
+     * 取第一条只需一次索引查找。从未尝试过的帖子 next_attempt_at 为 0，按发帖时间先后处理
+     */
+    @SqlQuery("SELECT " + FULL_COLUMNS + " FROM (SELECT * FROM \"Post\" " +
+            "WHERE is_matched = 1 AND bot_replied = 0 AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at, created LIMIT 1) p " + BODY_JOIN)
     @RegisterConstructorMapper(PostRow.class)
-    Optional<PostRow> findOneUnrepliedPost(@Bind("cooldownSeconds") int cooldownSeconds);
+    Optional<PostRow> findOneUnrepliedPost(@Bind("now") long now);
 
-    @SqlUpdate("INSERT INTO \"Post\" (post_id, group_id, author_info, alt, title, content, photo_list, " +
-            "is_matched, keyword_list, created, updated) " +
-            "VALUES (:postId, :groupId, :authorInfo, :alt, :title, :content, :photoList, " +
-            ":isMatched, :keywordList, :created, :updated)")
-    @Transaction
+    /**
+     * 按自增 id 分批读取帖子，用于导出：每批用完即释放连接和读锁，下一批从上一批最后的 id 之后继续
+     */
+    @SqlQuery("SELECT " + FULL_COLUMNS + " FROM \"Post\" p " + BODY_JOIN +
+            "WHERE p.id > :afterId " +
+            "AND (:groupId IS NULL OR p.group_id = :groupId) " +
+            "AND (:createdFrom IS NULL OR p.created >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR p.created < :createdTo) " +
+            "AND (:isMatched IS NULL OR " +
+            "     (:isMatched = 'true' AND p.is_matched = 1) OR " +
+            "     (:isMatched = 'false' AND p.is_matched = 0)) " +
+            "ORDER BY p.id ASC LIMIT :limit")
+    @RegisterConstructorMapper(PostExportRow.class)
+    List<PostExportRow> findForExport(@Bind("afterId") long afterId,
+                                      @Bind("groupId") String groupId,
+                                      @Bind("createdFrom") Long createdFrom,
+                                      @Bind("createdTo") Long createdTo,
+                                      @Bind("isMatched") String isMatched,
+                                      @Bind("limit") int limit);
+
+    @SqlUpdate("INSERT INTO \"Post\" (post_id, group_id, alt, title, is_matched, keyword_list, simhash, " +
+            "duplicate_of, is_duplicate, reply_count, content_hash, content_preview, detail_fetched_at, created, updated) " +
+            "VALUES (:postId, :groupId, :alt, :title, :isMatched, :keywordList, :simhash, " +
+            ":duplicateOf, :isDuplicate, :replyCount, :contentHash, :contentPreview, :detailFetchedAt, :created, :updated)")
     void insert(@Bind("postId") String postId,
                 @Bind("groupId") String groupId,
-                @Bind("authorInfo") String authorInfo,
                 @Bind("alt") String alt,
                 @Bind("title") String title,
-                @Bind("content") String content,
-                @Bind("photoList") String photoList,
                 @Bind("isMatched") boolean isMatched,
                 @Bind("keywordList") String keywordList,
-                @Bind("created") String created,
-                @Bind("updated") String updated);
+                @Bind("simhash") long simhash,
+                @Bind("duplicateOf") String duplicateOf,
+                @Bind("isDuplicate") boolean isDuplicate,
+                @Bind("replyCount") Integer replyCount,
+                @Bind("contentHash") String contentHash,
+                @Bind("contentPreview") String contentPreview,
+                @Bind("detailFetchedAt") long detailFetchedAt,
+                @Bind("created") long created,
+                @Bind("updated") long updated);
+
+    /**
+     * 写入指纹的 4 个分段，simhash 为 0（文本过短）时不写入
+     */
+    @SqlUpdate("INSERT OR IGNORE INTO \"PostSimhashBand\" (band, value, post_id) " +
+            "SELECT 0, :b0, :postId WHERE :simhash != 0 UNION ALL SELECT 1, :b1, :postId WHERE :simhash != 0 " +
+            "UNION ALL SELECT 2, :b2, :postId WHERE :simhash != 0 UNION ALL SELECT 3, :b3, :postId WHERE :simhash != 0")
+    void insertSimhashBands(@Bind("postId") String postId, @Bind("simhash") long simhash,
+                            @Bind("b0") int b0, @Bind("b1") int b1, @Bind("b2") int b2, @Bind("b3") int b3);
+
+    @SqlUpdate("INSERT INTO \"PostBody\" (post_id, author_info, content, photo_list) " +
+            "VALUES (:postId, :authorInfo, :content, :photoList)")
+    void insertBody(@Bind("postId") String postId,
+                    @Bind("authorInfo") String authorInfo,
+                    @Bind("content") String content,
+                    @Bind("photoList") String photoList);
+
+    @SqlUpdate("INSERT INTO \"PostFts\" (rowid, title, content) " +
+            "SELECT id, :title, :content FROM \"Post\" WHERE post_id = :postId")
+    void insertSearchIndex(@Bind("postId") String postId, @Bind("title") String title, @Bind("content") String content);
+
+    /**
+     * 关键词写入字典表和 PostKeyword，keywordList 为 keyword_list 列的 JSON 数组原文
+     */
+    @SqlUpdate("INSERT OR IGNORE INTO \"Keyword\" (keyword) " +
+            "SELECT DISTINCT value FROM json_each(:keywordList) WHERE type = 'text' AND value != ''")
+    void insertKeywords(@Bind("keywordList") String keywordList);
+
+    @SqlUpdate("INSERT OR IGNORE INTO \"PostKeyword\" (keyword_id, group_id, created, post_id) " +
+            "SELECT k.id, :groupId, :created, :postId FROM json_each(:keywordList) j " +
+            "JOIN \"Keyword\" k ON k.keyword = j.value")
+    void insertPostKeywords(@Bind("postId") String postId,
+                            @Bind("groupId") String groupId,
+                            @Bind("created") long created,
+                            @Bind("keywordList") String keywordList);
+
+    // 重新匹配关键词（RematchService）：按 id 分批读取小组帖子，批量写回变化的行
+
+    @SqlQuery("SELECT p.id, p.post_id as postId, p.group_id as groupId, p.title, COALESCE(b.content, '') as content, " +
+            "p.is_matched as isMatched, p.keyword_list as keywordList, p.is_duplicate as isDuplicate, p.created " +
+            "FROM \"Post\" p " + BODY_JOIN +
+            "WHERE p.id > :afterId AND p.group_id = :groupId ORDER BY p.id LIMIT :limit")
+    @RegisterConstructorMapper(MatchSource.class)
+    List<MatchSource> findMatchSources(@Bind("groupId") String groupId, @Bind("afterId") long afterId, @Bind("limit") int limit);
+
+    @SqlBatch("UPDATE \"Post\" SET is_matched = :isMatched, keyword_list = :keywordList WHERE id = :id")
+    void updateMatches(@BindMethods List<MatchUpdate> updates);
+
+    @SqlBatch("DELETE FROM \"PostKeyword\" WHERE post_id = :postId")
+    void deletePostKeywords(@BindMethods List<MatchUpdate> updates);
+
+    @SqlBatch("INSERT OR IGNORE INTO \"Keyword\" (keyword) " +
+            "SELECT DISTINCT value FROM json_each(:keywordList) WHERE type = 'text' AND value != ''")
+    void insertKeywords(@BindMethods List<MatchUpdate> updates);
+
+    @SqlBatch("INSERT OR IGNORE INTO \"PostKeyword\" (keyword_id, group_id, created, post_id) " +
+            "SELECT k.id, :groupId, :created, :postId FROM json_each(:keywordList) j " +
+            "JOIN \"Keyword\" k ON k.keyword = j.value")
+    void insertPostKeywords(@BindMethods List<MatchUpdate> updates);
+
+    /**
+     * 写回重新匹配的结果，同时替换这些帖子在 PostKeyword 中的关键词
+     */
+    @Transaction
+    default void applyMatchUpdates(List<MatchUpdate> updates) {
+        updateMatches(updates);
+        deletePostKeywords(updates);
+        insertKeywords(updates);
+        insertPostKeywords(updates);
+    }
+
+    @SqlUpdate("DELETE FROM \"PostFts\" WHERE rowid = (SELECT id FROM \"Post\" WHERE post_id = :postId)")
+    void deleteSearchIndex(@Bind("postId") String postId);
+
+    @SqlQuery("SELECT content FROM \"PostBody\" WHERE post_id = :postId")
+    Optional<String> findContent(@Bind("postId") String postId);
 
     @SqlUpdate("UPDATE \"Post\" SET title = :title, updated = :updated WHERE post_id = :postId")
     @Transaction
-    void update(@Bind("postId") String postId, @Bind("title") String title, @Bind("updated") String updated);
+    void update(@Bind("postId") String postId, @Bind("title") String title, @Bind("updated") long updated);
     
-    @SqlUpdate("UPDATE \"Post\" SET bot_replied = :botReplied, bot_reply_content = :botReplyContent, bot_reply_at = :botReplyAt WHERE post_id = :postId")
+    /**
+     * 小组每小时的新帖数（hour 为 created / 3600000），用于估计发帖速率；走 idx_post_group_created
+     */
+    @SqlQuery("SELECT created / 3600000 as hour, COUNT(*) as posts FROM \"Post\" " +
+            "WHERE group_id = :groupId AND created >= :since GROUP BY hour ORDER BY hour")
+    @RegisterConstructorMapper(HourlyCount.class)
+    List<HourlyCount> countPerHour(@Bind("groupId") String groupId, @Bind("since") long since);
+
+    // 增量抓取：列表页的回复数/最后回复时间没变且详情未过期的帖子不再抓取详情
+
+    @SqlQuery("SELECT bot_replied as botReplied, reply_count as replyCount, updated, content_hash as contentHash, " +
+            "detail_fetched_at as detailFetchedAt FROM \"Post\" WHERE post_id = :postId")
+    @RegisterConstructorMapper(CrawlState.class)
+    Optional<CrawlState> findCrawlState(@Bind("postId") String postId);
+
+    @SqlUpdate("UPDATE \"Post\" SET title = :title, updated = :updated, reply_count = :replyCount, " +
+            "content_hash = :contentHash, detail_fetched_at = :detailFetchedAt WHERE post_id = :postId")
+    void updateCrawlState(@BindMethods TopicRefresh refresh);
+
+    @SqlUpdate("UPDATE \"PostBody\" SET content = :content, photo_list = :photoList WHERE post_id = :postId")
+    void updateBody(@BindMethods TopicRefresh refresh);
+
+    @SqlUpdate("UPDATE \"Post\" SET content_preview = :contentPreview WHERE post_id = :postId")
+    void updateContentPreview(@Bind("postId") String postId, @Bind("contentPreview") String contentPreview);
+
+    /**
+     * 保存重新抓取的详情：更新标题、回复数和抓取时间，正文有修改时一并更新正文并重建全文索引。
+     * 指纹仍是首次抓取时的内容，不随正文修改
+     */
     @Transaction
-    void updateBotReply(@Bind("postId") String postId, 
-                       @Bind("botReplied") boolean botReplied,
-                       @Bind("botReplyContent") String botReplyContent,
-                       @Bind("botReplyAt") String botReplyAt);
+    default void refreshTopic(TopicRefresh refresh, boolean contentChanged) {
+        updateCrawlState(refresh);
+        if (contentChanged) {
+            updateBody(refresh);
+            updateContentPreview(refresh.postId(), PostProjection.contentPreview(refresh.content()));
+        }
+        deleteSearchIndex(refresh.postId());
+        insertSearchIndex(refresh.postId(), SearchTokenizer.indexText(refresh.title()),
+                SearchTokenizer.indexText(refresh.content()));
+    }
 
-    default Post getPostByPostId(String postId) {
-        return findByPostId(postId).map(this::toPost).orElse(null);
+    @SqlUpdate("UPDATE \"Post\" SET bot_replied = :botReplied, bot_reply_at = :botReplyAt, " +
+            "next_attempt_at = :nextAttemptAt WHERE post_id = :postId")
+    void updateBotReplyState(@Bind("postId") String postId,
+                             @Bind("botReplied") boolean botReplied,
+                             @Bind("botReplyAt") long botReplyAt,
+                             @Bind("nextAttemptAt") long nextAttemptAt);
+
+    @SqlUpdate("INSERT INTO \"PostBody\" (post_id, bot_reply_content) VALUES (:postId, :botReplyContent) " +
+            "ON CONFLICT(post_id) DO UPDATE SET bot_reply_content = excluded.bot_reply_content")
+    void upsertBotReplyContent(@Bind("postId") String postId, @Bind("botReplyContent") String botReplyContent);
+
+    @Transaction
+    default void updateBotReply(String postId, boolean botReplied, String botReplyContent, long botReplyAt, long nextAttemptAt) {
+        updateBotReplyState(postId, botReplied, botReplyAt, nextAttemptAt);
+        upsertBotReplyContent(postId, botReplyContent);
     }
 
-    default boolean checkPostTitleExists(String title) {
-        return findByTitle(title).isPresent();
+    default Post getPostByPostId(String postId) {
+        return findByPostId(postId).map(PostDao::toPost).orElse(null);
     }
 
+    @Transaction
     default void createPost(Post post) {
         PostRow row = toPostRow(post);
-        insert(row.postId(), row.groupId(), row.authorInfo(), row.alt(), row.title(),
-                row.content(), row.photoList(), row.isMatched(), row.keywordList(),
-                row.created(), row.updated());
+        String content = row.content() != null ? row.content() : "";
+        long simhash = row.simhash() != null ? row.simhash() : SimHash.fingerprint(row.title(), content);
+        // 带正文摘要的帖子由爬虫抓取详情后写入，记为本次抓取
+        long detailFetchedAt = post.getContentHash() != null ? System.currentTimeMillis() : 0;
+        insert(row.postId(), row.groupId(), row.alt(), row.title(), row.isMatched(), row.keywordList(),
+                simhash, row.duplicateOf(), row.isDuplicate(), row.replyCount(), post.getContentHash(),
+                PostProjection.contentPreview(content), detailFetchedAt, row.created(), row.updated());
+        insertSimhashBands(row.postId(), simhash, SimHash.band(simhash, 0), SimHash.band(simhash, 1),
+                SimHash.band(simhash, 2), SimHash.band(simhash, 3));
+        insertBody(row.postId(), row.authorInfo(), content, row.photoList());
+        insertSearchIndex(row.postId(), SearchTokenizer.indexText(row.title()), SearchTokenizer.indexText(content));
+        if (!row.keywordList().equals("[]")) {
+            insertKeywords(row.keywordList());
+            insertPostKeywords(row.postId(), row.groupId(), row.created(), row.keywordList());
+        }
     }
 
+    @Transaction
     default void updatePost(Post post) {
-        String updated = post.getUpdated() != null ? post.getUpdated().format(DATETIME_FORMAT) : LocalDateTime.now().format(DATETIME_FORMAT);
-        update(post.getPostId(), post.getTitle(), updated);
+        LocalDateTime updated = post.getUpdated() != null ? post.getUpdated() : LocalDateTime.now();
+        update(post.getPostId(), post.getTitle(), TimeUtils.toEpochMillis(updated));
+        // 标题变化后重建该帖子的全文索引
+        String content = findContent(post.getPostId()).orElse("");
+        deleteSearchIndex(post.getPostId());
+        insertSearchIndex(post.getPostId(), SearchTokenizer.indexText(post.getTitle()), SearchTokenizer.indexText(content));
     }
     
+    /**
+     * 保存回复结果。未回复成功时 nextAttemptAt 决定下次重试时间，未设置时为本次尝试时间（立即可重试）
+     */
     default void updateBotReply(Post post) {
-        String botReplyAt = post.getBotReplyAt() != null 
-                ? post.getBotReplyAt().format(DATETIME_FORMAT) 
-                : LocalDateTime.now().format(DATETIME_FORMAT);
+        long botReplyAt = TimeUtils.toEpochMillis(post.getBotReplyAt() != null ? post.getBotReplyAt() : LocalDateTime.now());
+        long nextAttemptAt = post.getNextAttemptAt() != null ? TimeUtils.toEpochMillis(post.getNextAttemptAt()) : botReplyAt;
         updateBotReply(post.getPostId(), 
                       post.getBotReplied() != null && post.getBotReplied(),
                       post.getBotReplyContent() != null ? post.getBotReplyContent() : "",
-                      botReplyAt);
+                      botReplyAt, nextAttemptAt);
     }
 
     default List<Post> getPostsWithPagination(String groupId, int page, int pageSize, String botReplied, String sortOrder) {
@@ -155,88 +361,121 @@ public interface PostDao {
         } else {
             rows = findWithPaginationDesc(groupId, botReplied, pageSize, offset);
         }
-        return rows.stream().map(this::toPost).toList();
+        return rows.stream().map(PostDao::toPost).toList();
+    }
+
+    default List<PostSummary> getPostSummariesWithPagination(String groupId, int page, int pageSize, String botReplied, String sortOrder) {
+        int offset = (page - 1) * pageSize;
+        if (sortOrder != null && sortOrder.equalsIgnoreCase("asc")) {
+            return findSummariesAsc(groupId, botReplied, pageSize, offset);
+        }
+        return findSummariesDesc(groupId, botReplied, pageSize, offset);
     }
 
-    default int getPostsCount(String groupId, String botReplied) {
-        return countPosts(groupId, botReplied);
+    default List<Map<String, Object>> getPostProjectionWithPagination(List<String> fields, String groupId, int page, int pageSize,
+                                                                      String botReplied, String sortOrder) {
+        int offset = (page - 1) * pageSize;
+        String order = sortOrder != null && sortOrder.equalsIgnoreCase("asc") ? "ASC" : "DESC";
+        String join = PostProjection.needsBody(fields) ? BODY_JOIN : "";
+        return findProjection(PostProjection.selectClause(fields), join, order, groupId, botReplied, pageSize, offset);
     }
 
     default List<Post> getPostsByGroupId(String groupId, int limit) {
         List<PostRow> rows = findByGroupId(groupId, limit);
-        return rows.stream().map(this::toPost).toList();
+        return rows.stream().map(PostDao::toPost).toList();
     }
     
-    default Post getOneUnrepliedPost(int cooldownSeconds) {
-        return findOneUnrepliedPost(cooldownSeconds).map(this::toPost).orElse(null);
+    default Post getOneUnrepliedPost() {
+        return findOneUnrepliedPost(System.currentTimeMillis()).map(PostDao::toPost).orElse(null);
     }
 
-    private PostRow toPostRow(Post post) {
-        try {
-            String authorInfoJson = post.getAuthorInfo() != null ? objectMapper.writeValueAsString(post.getAuthorInfo()) : "{}";
-            String photoListJson = post.getPhotoList() != null ? objectMapper.writeValueAsString(post.getPhotoList()) : "[]";
-            String keywordListJson = post.getKeywordList() != null ? objectMapper.writeValueAsString(post.getKeywordList()) : "[]";
-            String created = post.getCreated() != null ? post.getCreated().format(DATETIME_FORMAT) : LocalDateTime.now().format(DATETIME_FORMAT);
-            String updated = post.getUpdated() != null ? post.getUpdated().format(DATETIME_FORMAT) : LocalDateTime.now().format(DATETIME_FORMAT);
-
-            String botReplyAt = post.getBotReplyAt() != null ? post.getBotReplyAt().format(DATETIME_FORMAT) : null;
-            return new PostRow(
-                    post.getPostId(), post.getGroupId(), authorInfoJson, post.getAlt(), post.getTitle(),
-                    post.getContent(), photoListJson, post.getIsMatched() != null && post.getIsMatched(),
-                    keywordListJson, 
-                    post.getBotReplied() != null && post.getBotReplied(),
-                    post.getBotReplyContent(),
-                    botReplyAt,
-                    created, updated
-            );
-        } catch (Exception e) {
-            throw new RuntimeException("Error converting Post to PostRow", e);
-        }
+    /**
+     * 写入时序列化 JSON 列；对从数据库读出且未修改过的字段直接复用原文
+     */
+    static PostRow toPostRow(Post post) {
+        String authorInfoJson = post.getAuthorInfoJson() != null
+                ? post.getAuthorInfoJson() : JsonUtils.write(post.getAuthorInfo(), "{}");
+        String photoListJson = post.getPhotoListJson() != null
+                ? post.getPhotoListJson() : JsonUtils.write(post.getPhotoList(), "[]");
+        String keywordListJson = post.getKeywordListJson() != null
+                ? post.getKeywordListJson() : JsonUtils.write(post.getKeywordList(), "[]");
+        long now = System.currentTimeMillis();
+        long created = post.getCreated() != null ? TimeUtils.toEpochMillis(post.getCreated()) : now;
+        long updated = post.getUpdated() != null ? TimeUtils.toEpochMillis(post.getUpdated()) : now;
+        long botReplyAt = TimeUtils.toEpochMillis(post.getBotReplyAt());
+        long nextAttemptAt = TimeUtils.toEpochMillis(post.getNextAttemptAt());
+        return new PostRow(
+                post.getPostId(), post.getGroupId(), authorInfoJson, post.getAlt(), post.getTitle(),
+                post.getContent(), photoListJson, post.getIsMatched() != null && post.getIsMatched(),
+                keywordListJson,
+                post.getBotReplied() != null && post.getBotReplied(),
+                post.getBotReplyContent(),
+                botReplyAt, nextAttemptAt,
+                post.getSimhash(), post.getDuplicateOf(), post.getIsDuplicate() != null && post.getIsDuplicate(),
+                post.getReplyCount(), created, updated
+        );
     }
 
-    private Post toPost(PostRow row) {
-        try {
-            Map<String, Object> authorInfo = row.authorInfo() != null && !row.authorInfo().isEmpty() && !row.authorInfo().equals("{}")
-                    ? objectMapper.readValue(row.authorInfo(), new TypeReference<Map<String, Object>>() {})
-                    : Map.of();
-            List<String> photoList = row.photoList() != null && !row.photoList().isEmpty() && !row.photoList().equals("[]")
-                    ? objectMapper.readValue(row.photoList(), new TypeReference<List<String>>() {})
-                    : List.of();
-            List<String> keywordList = row.keywordList() != null && !row.keywordList().isEmpty() && !row.keywordList().equals("[]")
-                    ? objectMapper.readValue(row.keywordList(), new TypeReference<List<String>>() {})
-                    : List.of();
-
-            LocalDateTime created = row.created() != null ? LocalDateTime.parse(row.created(), DATETIME_FORMAT) : LocalDateTime.now();
-            LocalDateTime updated = row.updated() != null ? LocalDateTime.parse(row.updated(), DATETIME_FORMAT) : LocalDateTime.now();
-            LocalDateTime botReplyAt = row.botReplyAt() != null && !row.botReplyAt().isEmpty() 
-                    ? LocalDateTime.parse(row.botReplyAt(), DATETIME_FORMAT) 
-                    : null;
-
-            return Post.builder()
-                    .postId(row.postId())
-                    .groupId(row.groupId())
-                    .authorInfo(authorInfo)
-                    .alt(row.alt())
-                    .title(row.title())
-                    .content(row.content())
-                    .photoList(photoList)
-                    .isMatched(row.isMatched())
-                    .keywordList(keywordList)
-                    .botReplied(row.botReplied())
-                    .botReplyContent(row.botReplyContent())
-                    .botReplyAt(botReplyAt)
-                    .created(created)
-                    .updated(updated)
-                    .build();
-        } catch (Exception e) {
-            throw new RuntimeException("Error converting PostRow to Post", e);
-        }
+    /**
+     * JSON 列只保存原文，由 Post 在首次读取对应字段时解析（多数调用方只用到 id、状态和标题）
+     */
+    static Post toPost(PostRow row) {
+        return Post.builder()
+                .postId(row.postId())
+                .groupId(row.groupId())
+                .authorInfoJson(row.authorInfo())
+                .alt(row.alt())
+                .title(row.title())
+                .content(row.content())
+                .photoListJson(row.photoList())
+                .isMatched(row.isMatched())
+                .keywordListJson(row.keywordList())
+                .botReplied(row.botReplied())
+                .botReplyContent(row.botReplyContent())
+                .botReplyAt(TimeUtils.fromEpochMillis(row.botReplyAt()))
+                .nextAttemptAt(TimeUtils.fromEpochMillis(row.nextAttemptAt()))
+                .simhash(row.simhash())
+                .duplicateOf(row.duplicateOf())
+                .isDuplicate(row.isDuplicate())
+                .replyCount(row.replyCount())
+                .created(TimeUtils.fromEpochMillis(row.created()))
+                .updated(TimeUtils.fromEpochMillis(row.updated()))
+                .build();
     }
 
+    // 时间列均为 epoch 毫秒，0 表示没有值
     record PostRow(
             String postId, String groupId, String authorInfo, String alt, String title,
             String content, String photoList, boolean isMatched, String keywordList,
-            boolean botReplied, String botReplyContent, String botReplyAt,
-            String created, String updated
+            boolean botReplied, String botReplyContent, long botReplyAt, long nextAttemptAt,
+            Long simhash, String duplicateOf, boolean isDuplicate,
+            Integer replyCount, long created, long updated
+    ) {}
+
+    /**
+     * 帖子的抓取状态，replyCount 为 null 表示未知（旧数据或兜底解析的列表行）
+     */
+    record CrawlState(boolean botReplied, Integer replyCount, long updated, String contentHash, long detailFetchedAt) {}
+
+    /**
+     * 重新抓取详情后要写回的字段，photoList 为 JSON 原文
+     */
+    record TopicRefresh(String postId, String title, long updated, Integer replyCount, String content,
+                        String photoList, String contentHash, long detailFetchedAt) {}
+
+    record HourlyCount(long hour, int posts) {}
+
+    record MatchSource(
+            long id, String postId, String groupId, String title, String content,
+            boolean isMatched, String keywordList, boolean isDuplicate, long created
+    ) {}
+
+    record MatchUpdate(long id, String postId, String groupId, long created, boolean isMatched, String keywordList) {}
+
+    record PostExportRow(
+            long id, String postId, String groupId, String authorInfo, String alt, String title,
+            String content, String photoList, boolean isMatched, String keywordList,
+            boolean botReplied, String botReplyContent, long botReplyAt,
+            long created, long updated
     ) {}
 }
@@ -0,0 +1,163 @@
+package com.douban.bot.db;
+
+import com.douban.bot.utils.JsonUtils;
+import com.douban.bot.utils.TimeUtils;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 帖子列表的字段投影：把 fields 参数中的字段名映射到 Post/PostBody 表的列，只查询被请求的列。
+ * 字段名与 {@link com.douban.bot.model.Post} 的 JSON 属性名保持一致
+ */
+public final class PostProjection {
+
+    private enum Kind { TEXT, BOOLEAN, DATETIME, JSON_OBJECT, JSON_ARRAY }
+
+    // sql 带表别名：p 为 Post，b 为 PostBody（正文字段，只在被请求时联表）
+    private record Column(String sql, Kind kind) {
+        boolean inBody() {
+            return sql.startsWith("b.");
+        }
+    }
+
+    // 列表卡片的正文摘要长度（字符数），超出时截断并加省略号
+    static final int PREVIEW_CHARS = 200;
+
+    private static final Map<String, Column> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("postId", new Column("p.post_id", Kind.TEXT));
+        COLUMNS.put("groupId", new Column("p.group_id", Kind.TEXT));
+        COLUMNS.put("title", new Column("p.title", Kind.TEXT));
+        COLUMNS.put("alt", new Column("p.alt", Kind.TEXT));
+        COLUMNS.put("isMatched", new Column("p.is_matched", Kind.BOOLEAN));
+        COLUMNS.put("botReplied", new Column("p.bot_replied", Kind.BOOLEAN));
+        COLUMNS.put("botReplyAt", new Column("p.bot_reply_at", Kind.DATETIME));
+        COLUMNS.put("created", new Column("p.created", Kind.DATETIME));
+        COLUMNS.put("updated", new Column("p.updated", Kind.DATETIME));
+        COLUMNS.put("keywordList", new Column("p.keyword_list", Kind.JSON_ARRAY));
+        COLUMNS.put("duplicateOf", new Column("p.duplicate_of", Kind.TEXT));
+        COLUMNS.put("isDuplicate", new Column("p.is_duplicate", Kind.BOOLEAN));
+        COLUMNS.put("authorInfo", new Column("b.author_info", Kind.JSON_OBJECT));
+        COLUMNS.put("photoList", new Column("b.photo_list", Kind.JSON_ARRAY));
+        COLUMNS.put("content", new Column("b.content", Kind.TEXT));
+        // 写入正文时生成，列表页不读 PostBody
+        COLUMNS.put("contentPreview", new Column("p.content_preview", Kind.TEXT));
+        COLUMNS.put("botReplyContent", new Column("b.bot_reply_content", Kind.TEXT));
+    }
+
+    private PostProjection() {
+    }
+
+    /**
+     * 正文摘要：前 {@value #PREVIEW_CHARS} 个字符，超出时加省略号。按码点截断，与 SQLite 的 substr 一致
+     */
+    static String contentPreview(String content) {
+        if (content == null) {
+            return "";
+        }
+        if (content.codePointCount(0, content.length()) <= PREVIEW_CHARS) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, PREVIEW_CHARS)) + "...";
+    }
+
+    public static Set<String> availableFields() {
+        return COLUMNS.keySet();
+    }
+
+    /**
+     * 解析逗号分隔的字段列表，postId 始终包含在结果中（前端依赖它打开详情）
+     *
+     * @throws IllegalArgumentException 包含未知字段时
+     */
+    public static List<String> parseFields(String fields) {
+        List<String> result = new ArrayList<>();
+        result.add("postId");
+        for (String part : fields.split(",")) {
+            String field = part.trim();
+            if (field.isEmpty() || result.contains(field)) {
+                continue;
+            }
+            if (!COLUMNS.containsKey(field)) {
+                throw new IllegalArgumentException("未知字段: " + field + "，可选字段: " + String.join(",", COLUMNS.keySet()));
+            }
+            result.add(field);
+        }
+        return result;
+    }
+
+    /**
+     * 是否请求了存放在 PostBody 中的字段
+     */
+    public static boolean needsBody(List<String> fields) {
+        for (String field : fields) {
+            Column column = COLUMNS.get(field);
+            if (column != null && column.inBody()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 生成 SELECT 子句，字段名只来自白名单，可以安全地拼接进 SQL
+     */
+    public static String selectClause(List<String> fields) {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            Column column = COLUMNS.get(field);
+            if (column == null) {
+                throw new IllegalArgumentException("未知字段: " + field);
+            }
+            if (!sb.isEmpty()) {
+                sb.append(", ");
+            }
+            sb.append(column.sql()).append(" AS ").append(field);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按列别名把结果行转换为 Map，只对被请求的 JSON 列做反序列化
+     */
+    public static class Mapper implements RowMapper<Map<String, Object>> {
+        @Override
+        public Map<String, Object> map(ResultSet rs, StatementContext ctx) throws SQLException {
+            ResultSetMetaData meta = rs.getMetaData();
+            int count = meta.getColumnCount();
+            Map<String, Object> row = new LinkedHashMap<>(count * 2);
+            for (int i = 1; i <= count; i++) {
+                String field = meta.getColumnLabel(i);
+                Column column = COLUMNS.get(field);
+                Kind kind = column != null ? column.kind() : Kind.TEXT;
+                row.put(field, readValue(rs, i, kind));
+            }
+            return row;
+        }
+
+        private Object readValue(ResultSet rs, int index, Kind kind) throws SQLException {
+            switch (kind) {
+                case BOOLEAN:
+                    return rs.getInt(index) != 0;
+                case DATETIME:
+                    return TimeUtils.fromEpochMillis(rs.getLong(index));
+                case JSON_OBJECT:
+                    return JsonUtils.readMap(rs.getString(index));
+                case JSON_ARRAY:
+                    return JsonUtils.readStringList(rs.getString(index));
+                default:
+                    return rs.getString(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.douban.bot.db;
+
+import com.douban.bot.model.PostSummary;
+import com.douban.bot.utils.TimeUtils;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 直接从结果集构建 {@link PostSummary}，不经过中间的行记录，也不读取正文和 JSON 列
+ */
+public class PostSummaryMapper implements RowMapper<PostSummary> {
+
+    @Override
+    public PostSummary map(ResultSet rs, StatementContext ctx) throws SQLException {
+        return PostSummary.builder()
+                .postId(rs.getString("postId"))
+                .groupId(rs.getString("groupId"))
+                .title(rs.getString("title"))
+                .alt(rs.getString("alt"))
+                .isMatched(rs.getInt("isMatched") != 0)
+                .botReplied(rs.getInt("botReplied") != 0)
+                .botReplyAt(TimeUtils.fromEpochMillis(rs.getLong("botReplyAt")))
+                .created(TimeUtils.fromEpochMillis(rs.getLong("created")))
+                .updated(TimeUtils.fromEpochMillis(rs.getLong("updated")))
+                .build();
+    }
+}
@@ -1,40 +1,94 @@
 package com.douban.bot.db;
 
+import com.douban.bot.config.AppConfig;
 import com.douban.bot.model.Comment;
 import com.douban.bot.model.CrawlerConfig;
 import com.douban.bot.model.Group;
 import com.douban.bot.model.Post;
+import com.douban.bot.model.PostSummary;
+import com.douban.bot.utils.TimeUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.jdbi.v3.core.Jdbi;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * 数据访问入口。小组、爬虫配置和帖子的爬取状态（CrawlState）在进程内缓存，按条数和过期时间限制，
+ * 经由本类的写方法修改时立即失效；缓存返回的是共享对象，调用方不要修改。
+ * 命中率通过 /api/stats/cache 和 Micrometer 的 cache.* 指标查看
+ */
 @Service
 public class RepositoryService {
-    
+
+    private static final int SMALL_CACHE_SIZE = 1000;
+    // 导出时每次查询读取的行数
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
     private final GroupDao groupDao;
     private final PostDao postDao;
     private final CommentDao commentDao;
     private final CrawlerConfigDao crawlerConfigDao;
+    private final CounterDao counterDao;
+    private final KeywordDao keywordDao;
     private final Jdbi jdbi;
 
-    public RepositoryService(Jdbi jdbi) {
+    private final Cache<String, Group> groups;
+    private final Cache<Long, CrawlerConfig> crawlerConfigs;
+    // 帖子不存在时缓存 Optional.empty()，新帖在详情抓取前后的两次检查只读一次数据库
+    private final Cache<String, Optional<PostDao.CrawlState>> postStates;
+
+    public RepositoryService(Jdbi jdbi, AppConfig config, MeterRegistry registry) {
         this.jdbi = jdbi;
         this.groupDao = jdbi.onDemand(GroupDao.class);
         this.postDao = jdbi.onDemand(PostDao.class);
         this.commentDao = jdbi.onDemand(CommentDao.class);
         this.crawlerConfigDao = jdbi.onDemand(CrawlerConfigDao.class);
+        this.counterDao = jdbi.onDemand(CounterDao.class);
+        this.keywordDao = jdbi.onDemand(KeywordDao.class);
+
+        Duration ttl = Duration.ofSeconds(config.getRepositoryCacheTtlSeconds() != null
+                ? config.getRepositoryCacheTtlSeconds() : 1800);
+        int postStateSize = config.getRepositoryCacheSize() != null ? config.getRepositoryCacheSize() : 20000;
+        this.groups = CaffeineCacheMetrics.monitor(registry, newCache(SMALL_CACHE_SIZE, ttl), "groups");
+        this.crawlerConfigs = CaffeineCacheMetrics.monitor(registry, newCache(SMALL_CACHE_SIZE, ttl), "crawlerConfigs");
+        this.postStates = CaffeineCacheMetrics.monitor(registry, newCache(postStateSize, ttl), "postStates");
+    }
+
+    private static <K, V> Cache<K, V> newCache(int maximumSize, Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
     }
 
     // Group methods
     public Group getGroupById(String id) {
-        return groupDao.getGroupById(id);
+        // 不存在的小组不缓存（Caffeine 不保存 null），创建后下次读取即可命中
+        return groups.get(id, groupDao::getGroupById);
     }
 
     public void createGroup(Group group) {
         groupDao.createGroup(group);
+        groups.invalidate(group.getGroupId());
     }
 
     public List<Group> getAllGroups() {
@@ -48,34 +102,91 @@ public class RepositoryService {
 
     public void createPost(Post post) {
         postDao.createPost(post);
+        postStates.invalidate(post.getPostId());
     }
 
     public void updatePost(Post post) {
         postDao.updatePost(post);
+        postStates.invalidate(post.getPostId());
+    }
+
+    public PostDao.CrawlState getPostCrawlState(String postId) {
+        return postStates.get(postId, postDao::findCrawlState).orElse(null);
+    }
+
+    public void refreshTopic(PostDao.TopicRefresh refresh, boolean contentChanged) {
+        postDao.refreshTopic(refresh, contentChanged);
+        postStates.invalidate(refresh.postId());
     }
     
     public void updatePostBotReply(Post post) {
         postDao.updateBotReply(post);
-    }
-
-    public boolean checkPostTitleExists(String title) {
-        return postDao.checkPostTitleExists(title);
+        postStates.invalidate(post.getPostId());
     }
 
     public List<Post> getPostsWithPagination(String groupId, int page, int pageSize, String botReplied, String sortOrder) {
         return postDao.getPostsWithPagination(groupId, page, pageSize, botReplied, sortOrder);
     }
 
+    public List<PostSummary> getPostSummariesWithPagination(String groupId, int page, int pageSize, String botReplied, String sortOrder) {
+        return postDao.getPostSummariesWithPagination(groupId, page, pageSize, botReplied, sortOrder);
+    }
+
+    public List<Map<String, Object>> getPostProjectionWithPagination(List<String> fields, String groupId, int page, int pageSize,
+                                                                     String botReplied, String sortOrder) {
+        return postDao.getPostProjectionWithPagination(fields, groupId, page, pageSize, botReplied, sortOrder);
+    }
+
+    /**
+     * 帖子总数直接读取计数表，botReplied 为 "true"/"false" 时分别返回已回复/未回复的数量
+     */
     public int getPostsCount(String groupId, String botReplied) {
-        return postDao.getPostsCount(groupId, botReplied);
+        CounterDao.GroupCounter counter = groupId != null
+                ? counterDao.findByGroupId(groupId).orElse(null)
+                : counterDao.sumAll();
+        if (counter == null) {
+            return 0;
+        }
+        if ("true".equals(botReplied)) {
+            return (int) counter.replied();
+        }
+        if ("false".equals(botReplied)) {
+            return (int) (counter.posts() - counter.replied());
+        }
+        return (int) counter.posts();
+    }
+
+    public List<PostDao.HourlyCount> getPostsPerHour(String groupId, long since) {
+        return postDao.countPerHour(groupId, since);
     }
 
     public List<Post> getPostsByGroupId(String groupId, int limit) {
         return postDao.getPostsByGroupId(groupId, limit);
     }
     
-    public Post getOneUnrepliedPost(int cooldownSeconds) {
-        return postDao.getOneUnrepliedPost(cooldownSeconds);
+    public Post getOneUnrepliedPost() {
+        return postDao.getOneUnrepliedPost();
+    }
+
+    // Keyword methods（读取 PostKeyword，不解析 keyword_list）
+    public List<KeywordDao.KeywordCount> getKeywords(String groupId) {
+        return keywordDao.getKeywords(groupId);
+    }
+
+    public Long getKeywordId(String keyword) {
+        return keywordDao.findIdByKeyword(keyword).orElse(null);
+    }
+
+    public List<PostSummary> getPostsByKeyword(long keywordId, String groupId, int page, int pageSize) {
+        return keywordDao.getLatestPosts(keywordId, groupId, page, pageSize);
+    }
+
+    public int getPostsCountByKeyword(long keywordId, String groupId) {
+        return keywordDao.getPostsCount(keywordId, groupId);
+    }
+
+    public List<KeywordDao.DailyCount> getKeywordDailyCounts(long keywordId, String groupId, long createdFrom, long createdTo) {
+        return keywordDao.getDailyCounts(keywordId, groupId, createdFrom, createdTo);
     }
 
     // Comment methods
@@ -95,23 +206,115 @@ public class RepositoryService {
         return commentDao.getCommentsByGroupId(groupId, limit);
     }
 
-    // Stats
+    public CommentDao.PageSyncResult saveCommentPage(List<Comment> comments) {
+        return commentDao.saveCommentPage(comments);
+    }
+
+    public CommentDao.CommentCursor getCommentCursor(String postId) {
+        return commentDao.findCursor(postId).orElse(null);
+    }
+
+    public void saveCommentCursor(CommentDao.CommentCursor cursor) {
+        commentDao.saveCursor(cursor);
+    }
+
+    // Export methods（返回的 Stream 独占一个数据库连接，调用方必须关闭）
+    public Stream<PostDao.PostExportRow> streamPostsForExport(long afterId, String groupId, String createdFrom,
+                                                              String createdTo, String isMatched) {
+        Long fromMillis = TimeUtils.parseEpochMillis(createdFrom);
+        Long toMillis = TimeUtils.parseEpochMillis(createdTo);
+        return keysetStream(afterId, PostDao.PostExportRow::id, lastId ->
+                postDao.findForExport(lastId, groupId, fromMillis, toMillis, isMatched, EXPORT_CHUNK_SIZE));
+    }
+
+    public Stream<CommentDao.CommentExportRow> streamCommentsForExport(long afterId, String groupId,
+                                                                       String createdFrom, String createdTo) {
+        return keysetStream(afterId, CommentDao.CommentExportRow::id, lastId ->
+                commentDao.findForExport(lastId, groupId, createdFrom, createdTo, EXPORT_CHUNK_SIZE));
+    }
+
+    /**
+     * 按 id 分批读取的 Stream：每批 {@value #EXPORT_CHUNK_SIZE} 行，读完一批才取下一批。
+     * 导出速度取决于客户端的读取速度，不能在整个导出期间持有读游标（回滚日志模式下会挡住所有写入），
+     * 每批的连接和读锁在查询返回时就已释放
+     */
+    private static <T> Stream<T> keysetStream(long afterId, ToLongFunction<T> idOf, LongFunction<List<T>> fetchAfter) {
+        Iterator<T> it = new Iterator<>() {
+            private List<T> chunk = List.of();
+            private int position;
+            private long lastId = afterId;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (position < chunk.size()) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                chunk = fetchAfter.apply(lastId);
+                position = 0;
+                exhausted = chunk.size() < EXPORT_CHUNK_SIZE;
+                if (chunk.isEmpty()) {
+                    return false;
+                }
+                lastId = idOf.applyAsLong(chunk.get(chunk.size() - 1));
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.get(position++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Stats（计数来自 GroupCounter，不扫描 Post/Comment）
     public Map<String, Object> getStats() {
+        CounterDao.GroupCounter total = counterDao.sumAll();
         Map<String, Object> stats = new HashMap<>();
-        stats.put("groups", getAllGroups().size());
-        stats.put("posts", postDao.getPostsCount(null, null)); // 查询所有帖子，不筛选
-        // TODO: Add comment count query
-        stats.put("comments", 0);
+        stats.put("groups", groupDao.countGroups());
+        stats.put("posts", total.posts());
+        stats.put("matched", total.matched());
+        stats.put("replied", total.replied());
+        stats.put("pending", total.pending());
+        stats.put("comments", total.comments());
         return stats;
     }
 
+    public List<CounterDao.GroupCounter> getGroupCounters() {
+        return counterDao.findAll();
+    }
+
+    /**
+     * 按源表重算计数并校正，返回被修正的小组数
+     */
+    public int reconcileCounters() {
+        return counterDao.reconcile();
+    }
+
     // CrawlerConfig methods
     public List<CrawlerConfig> getAllCrawlerConfigs() {
         return crawlerConfigDao.getAllConfigs();
     }
 
     public CrawlerConfig getCrawlerConfigById(Long id) {
-        return crawlerConfigDao.getConfigById(id).orElse(null);
+        return crawlerConfigs.get(id, key -> crawlerConfigDao.getConfigById(key).orElse(null));
+    }
+
+    public void updateCrawlerConfig(CrawlerConfig config) {
+        crawlerConfigDao.updateConfig(config);
+        crawlerConfigs.invalidate(config.getId());
+    }
+
+    public void deleteCrawlerConfig(Long id) {
+        crawlerConfigDao.deleteConfig(id);
+        crawlerConfigs.invalidate(id);
     }
     
     public List<CrawlerConfig> getEnabledCrawlerConfigs() {
@@ -119,4 +322,25 @@ public class RepositoryService {
                 .filter(c -> c.getEnabled() != null && c.getEnabled())
                 .toList();
     }
+
+    // Cache stats
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("groups", cacheStats(groups));
+        stats.put("crawlerConfigs", cacheStats(crawlerConfigs));
+        stats.put("postStates", cacheStats(postStates));
+        return stats;
+    }
+
+    private static Map<String, Object> cacheStats(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> data = new HashMap<>();
+        data.put("size", cache.estimatedSize());
+        data.put("hits", stats.hitCount());
+        data.put("misses", stats.missCount());
+        data.put("hitRate", stats.requestCount() > 0 ? stats.hitRate() : null);
+        data.put("evictions", stats.evictionCount());
+        data.put("averageLoadMs", stats.averageLoadPenalty() / 1_000_000.0);
+        return data;
+    }
 }
@@ -0,0 +1,139 @@
+package com.douban.bot.db;
+
+import org.jdbi.v3.sqlobject.config.RegisterConstructorMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.List;
+
+/**
+ * 帖子/评论全文检索（FTS5）。MATCH 表达式由 {@link com.douban.bot.utils.SearchTokenizer#matchQuery} 生成，
+ * 排序使用 bm25，帖子标题权重高于正文
+ */
+public interface SearchDao {
+
+    /**
+     * 先在索引和 Post 元数据上完成过滤、排序和分页，再为当前页读取正文用于生成摘要
+     */
+    @SqlQuery("SELECT p.id, p.post_id as postId, p.group_id as groupId, p.title, p.alt, " +
+            "COALESCE(b.content, '') as content, p.is_matched as isMatched, p.bot_replied as botReplied, " +
+            "p.created, m.score FROM (" +
+            "  SELECT \"PostFts\".rowid AS id, bm25(\"PostFts\", 10.0, 1.0) AS score " +
+            "  FROM \"PostFts\" JOIN \"Post\" ON \"Post\".id = \"PostFts\".rowid " +
+            "  WHERE \"PostFts\" MATCH :match " +
+            "  AND (:groupId IS NULL OR \"Post\".group_id = :groupId) " +
+            "  AND (:createdFrom IS NULL OR \"Post\".created >= :createdFrom) " +
+            "  AND (:createdTo IS NULL OR \"Post\".created < :createdTo) " +
+            "  AND (:isMatched IS NULL OR " +
+            "       (:isMatched = 'true' AND \"Post\".is_matched = 1) OR " +
+            "       (:isMatched = 'false' AND \"Post\".is_matched = 0)) " +
+            "  ORDER BY score LIMIT :limit OFFSET :offset" +
+            ") m JOIN \"Post\" p ON p.id = m.id LEFT JOIN \"PostBody\" b ON b.post_id = p.post_id " +
+            "ORDER BY m.score")
+    @RegisterConstructorMapper(PostHit.class)
+    List<PostHit> searchPosts(@Bind("match") String match,
+                              @Bind("groupId") String groupId,
+                              @Bind("createdFrom") Long createdFrom,
+                              @Bind("createdTo") Long createdTo,
+                              @Bind("isMatched") String isMatched,
+                              @Bind("limit") int limit,
+                              @Bind("offset") int offset);
+
+    @SqlQuery("SELECT COUNT(*) FROM \"PostFts\" JOIN \"Post\" ON \"Post\".id = \"PostFts\".rowid " +
+            "WHERE \"PostFts\" MATCH :match " +
+            "AND (:groupId IS NULL OR \"Post\".group_id = :groupId) " +
+            "AND (:createdFrom IS NULL OR \"Post\".created >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR \"Post\".created < :createdTo) " +
+            "AND (:isMatched IS NULL OR " +
+            "     (:isMatched = 'true' AND \"Post\".is_matched = 1) OR " +
+            "     (:isMatched = 'false' AND \"Post\".is_matched = 0))")
+    int countPosts(@Bind("match") String match,
+                   @Bind("groupId") String groupId,
+                   @Bind("createdFrom") Long createdFrom,
+                   @Bind("createdTo") Long createdTo,
+                   @Bind("isMatched") String isMatched);
+
+    @SqlQuery("SELECT c.id, c.comment_id as commentId, c.post_id as postId, c.group_id as groupId, " +
+            "c.content, c.created, bm25(\"CommentFts\") AS score " +
+            "FROM \"CommentFts\" JOIN \"Comment\" c ON c.id = \"CommentFts\".rowid " +
+            "WHERE \"CommentFts\" MATCH :match " +
+            "AND (:groupId IS NULL OR c.group_id = :groupId) " +
+            "AND (:postId IS NULL OR c.post_id = :postId) " +
+            "AND (:createdFrom IS NULL OR c.created >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR c.created < :createdTo) " +
+            "ORDER BY score LIMIT :limit OFFSET :offset")
+    @RegisterConstructorMapper(CommentHit.class)
+    List<CommentHit> searchComments(@Bind("match") String match,
+                                    @Bind("groupId") String groupId,
+                                    @Bind("postId") String postId,
+                                    @Bind("createdFrom") String createdFrom,
+                                    @Bind("createdTo") String createdTo,
+                                    @Bind("limit") int limit,
+                                    @Bind("offset") int offset);
+
+    @SqlQuery("SELECT COUNT(*) FROM \"CommentFts\" JOIN \"Comment\" c ON c.id = \"CommentFts\".rowid " +
+            "WHERE \"CommentFts\" MATCH :match " +
+            "AND (:groupId IS NULL OR c.group_id = :groupId) " +
+            "AND (:postId IS NULL OR c.post_id = :postId) " +
+            "AND (:createdFrom IS NULL OR c.created >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR c.created < :createdTo)")
+    int countComments(@Bind("match") String match,
+                      @Bind("groupId") String groupId,
+                      @Bind("postId") String postId,
+                      @Bind("createdFrom") String createdFrom,
+                      @Bind("createdTo") String createdTo);
+
+    // 索引重建：索引行数与源表不一致时（旧数据库升级、手工改库）清空后按 id 分批重新写入。
+    // 重建期间爬虫仍在写入，清空时记下源表的最大 id，只重建到该 id 为止，之后的行由写入路径自己建索引；
+    // 重建时已存在的 rowid（写入路径在清空后刚写入或刷新过的）跳过，不与之冲突
+
+    @SqlQuery("SELECT (SELECT COUNT(*) FROM \"PostFts\") = (SELECT COUNT(*) FROM \"Post\")")
+    boolean isPostIndexComplete();
+
+    @SqlQuery("SELECT (SELECT COUNT(*) FROM \"CommentFts\") = (SELECT COUNT(*) FROM \"Comment\")")
+    boolean isCommentIndexComplete();
+
+    @SqlUpdate("INSERT INTO \"PostFts\" (\"PostFts\") VALUES ('delete-all')")
+    void clearPostIndex();
+
+    @SqlUpdate("INSERT INTO \"CommentFts\" (\"CommentFts\") VALUES ('delete-all')")
+    void clearCommentIndex();
+
+    @SqlQuery("SELECT COALESCE(MAX(id), 0) FROM \"Post\"")
+    long maxPostId();
+
+    @SqlQuery("SELECT COALESCE(MAX(id), 0) FROM \"Comment\"")
+    long maxCommentId();
+
+    @SqlQuery("SELECT p.id, p.title, COALESCE(b.content, '') as content FROM \"Post\" p " +
+            "LEFT JOIN \"PostBody\" b ON b.post_id = p.post_id " +
+            "WHERE p.id > :afterId AND p.id <= :maxId ORDER BY p.id LIMIT :limit")
+    @RegisterConstructorMapper(IndexSource.class)
+    List<IndexSource> findPostsForIndex(@Bind("afterId") long afterId, @Bind("maxId") long maxId, @Bind("limit") int limit);
+
+    @SqlQuery("SELECT id, '' as title, content FROM \"Comment\" WHERE id > :afterId AND id <= :maxId " +
+            "ORDER BY id LIMIT :limit")
+    @RegisterConstructorMapper(IndexSource.class)
+    List<IndexSource> findCommentsForIndex(@Bind("afterId") long afterId, @Bind("maxId") long maxId, @Bind("limit") int limit);
+
+    @SqlBatch("INSERT INTO \"PostFts\" (rowid, title, content) SELECT :id, :title, :content " +
+            "WHERE NOT EXISTS (SELECT 1 FROM \"PostFts\" WHERE rowid = :id)")
+    void insertPostIndex(@Bind("id") List<Long> ids, @Bind("title") List<String> titles, @Bind("content") List<String> contents);
+
+    @SqlBatch("INSERT INTO \"CommentFts\" (rowid, content) SELECT :id, :content " +
+            "WHERE NOT EXISTS (SELECT 1 FROM \"CommentFts\" WHERE rowid = :id)")
+    void insertCommentIndex(@Bind("id") List<Long> ids, @Bind("content") List<String> contents);
+
+    record PostHit(
+            long id, String postId, String groupId, String title, String alt, String content,
+            boolean isMatched, boolean botReplied, long created, double score
+    ) {}
+
+    record CommentHit(
+            long id, String commentId, String postId, String groupId, String content, String created, double score
+    ) {}
+
+    record IndexSource(long id, String title, String content) {}
+}
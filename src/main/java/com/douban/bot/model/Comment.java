@@ -1,9 +1,13 @@
 package com.douban.bot.model;
 
+import com.douban.bot.utils.JsonUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -24,4 +28,22 @@ public class Comment {
     private LocalDateTime created;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    // 从数据库读取时先保存 author_info 原文，首次读取 authorInfo 时才解析
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String authorInfoJson;
+
+    public Map<String, Object> getAuthorInfo() {
+        if (authorInfo == null && authorInfoJson != null) {
+            authorInfo = JsonUtils.readMap(authorInfoJson);
+        }
+        return authorInfo;
+    }
+
+    public void setAuthorInfo(Map<String, Object> authorInfo) {
+        this.authorInfo = authorInfo;
+        this.authorInfoJson = null;
+    }
 }
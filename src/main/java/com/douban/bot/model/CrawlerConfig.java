@@ -24,6 +24,7 @@ public class CrawlerConfig {
     private Boolean enabled;
     private String cookie;  // 豆瓣Cookie，留空则使用全局配置
     private Boolean crawlComments;  // 是否爬取评论，默认为true
+    private String duplicatePolicy;  // 近似重复帖的处理方式：skip/mark/link，默认 skip
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
@@ -0,0 +1,33 @@
+package com.douban.bot.model;
+
+import java.util.Locale;
+
+/**
+ * 爬取到与已有帖子近似重复的新帖子时的处理方式，按爬虫配置（小组）设置
+ */
+public enum DuplicatePolicy {
+    // 不保存
+    SKIP,
+    // 保存并标记为重复（duplicate_of 指向原帖），不参与匹配和自动回复
+    MARK,
+    // 保存并记录 duplicate_of，其余按普通帖子处理
+    LINK;
+
+    public String value() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 解析配置值，为空时返回默认的 SKIP，无法识别时抛出 IllegalArgumentException
+     */
+    public static DuplicatePolicy fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return SKIP;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("重复帖处理方式无效: " + value + "，可选 skip/mark/link");
+        }
+    }
+}
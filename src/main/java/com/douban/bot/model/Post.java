@@ -1,9 +1,13 @@
 package com.douban.bot.model;
 
+import com.douban.bot.utils.JsonUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -32,8 +36,66 @@ public class Post {
     private Boolean botReplied;  // 是否已自动回复
     private String botReplyContent;  // 自动回复内容
     private LocalDateTime botReplyAt;  // 自动回复时间
+    private LocalDateTime nextAttemptAt;  // 未回复成功时下次可重试的时间
+    @JsonIgnore
+    private Long simhash;  // 标题+正文的 SimHash 指纹，0 表示文本过短
+    private String duplicateOf;  // 近似重复时指向最早的原帖
+    private Boolean isDuplicate;  // 按 mark 策略标记的重复帖，不参与匹配和自动回复
+    private Integer replyCount;  // 列表页显示的回复数，null 表示未知
+    @JsonIgnore
+    private String contentHash;  // 正文和图片的摘要，重新抓取详情时判断正文是否有修改
     private LocalDateTime created;
     private LocalDateTime updated;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    // 从数据库读取时先保存 JSON 列原文，authorInfo/photoList/keywordList 首次被读取时才解析
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String authorInfoJson;
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String photoListJson;
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String keywordListJson;
+
+    public Map<String, Object> getAuthorInfo() {
+        if (authorInfo == null && authorInfoJson != null) {
+            authorInfo = JsonUtils.readMap(authorInfoJson);
+        }
+        return authorInfo;
+    }
+
+    public void setAuthorInfo(Map<String, Object> authorInfo) {
+        this.authorInfo = authorInfo;
+        this.authorInfoJson = null;
+    }
+
+    public List<String> getPhotoList() {
+        if (photoList == null && photoListJson != null) {
+            photoList = JsonUtils.readStringList(photoListJson);
+        }
+        return photoList;
+    }
+
+    public void setPhotoList(List<String> photoList) {
+        this.photoList = photoList;
+        this.photoListJson = null;
+    }
+
+    public List<String> getKeywordList() {
+        if (keywordList == null && keywordListJson != null) {
+            keywordList = JsonUtils.readStringList(keywordListJson);
+        }
+        return keywordList;
+    }
+
+    public void setKeywordList(List<String> keywordList) {
+        this.keywordList = keywordList;
+        this.keywordListJson = null;
+    }
 }
@@ -0,0 +1,27 @@
+package com.douban.bot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 帖子列表使用的轻量视图，只包含元数据，不包含正文和 JSON 列
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostSummary {
+    private String postId;
+    private String groupId;
+    private String title;
+    private String alt;
+    private Boolean isMatched;
+    private Boolean botReplied;
+    private LocalDateTime botReplyAt;
+    private LocalDateTime created;
+    private LocalDateTime updated;
+}
@@ -0,0 +1,270 @@
+package com.douban.bot.service;
+
+import com.douban.bot.config.AppConfig;
+import com.douban.bot.db.CrawlBackfillDao;
+import com.douban.bot.db.RepositoryService;
+import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.utils.TimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史回溯：从常规爬取覆盖的页数之后逐页抓取更早的帖子列表，偏移记录在 CrawlBackfill 中，重启后继续。
+ * 每个步骤（一页列表或一个帖子）通过 CrawlPermits 以低优先级申请许可，常规爬取进行或等待时暂停，
+ * 多个配置的回溯按最近推进时间轮流执行。吞吐量按相邻两页完成的间隔做指数加权平均，用于估算剩余时间
+ */
+@Slf4j
+@Service
+public class BackfillService {
+
+    private static final long PERMIT_WAIT_SECONDS = 30;
+    private static final double THROUGHPUT_ALPHA = 0.3;
+
+    private final RepositoryService repository;
+    private final CrawlerService crawlerService;
+    private final CrawlPermits permits;
+    private final CrawlMetrics metrics;
+    private final AppConfig appConfig;
+    private final CrawlBackfillDao backfillDao;
+    // configId -> 每页耗时的指数加权平均（只在本次进程内统计）
+    private final Map<Long, Throughput> throughputs = new ConcurrentHashMap<>();
+
+    public BackfillService(RepositoryService repository, CrawlerService crawlerService, CrawlPermits permits,
+                           CrawlMetrics metrics, AppConfig appConfig, Jdbi jdbi) {
+        this.repository = repository;
+        this.crawlerService = crawlerService;
+        this.permits = permits;
+        this.metrics = metrics;
+        this.appConfig = appConfig;
+        this.backfillDao = jdbi.onDemand(CrawlBackfillDao.class);
+    }
+
+    private static class Throughput {
+        private double secondsPerPage;
+        private long lastPageAt;
+        private int samples;
+
+        synchronized void record(long pageStartedAt, long now) {
+            // 第一页用本页耗时，之后用相邻两页完成的间隔（包含让出许可和轮流执行其他配置的时间）
+            long since = samples == 0 ? pageStartedAt : lastPageAt;
+            double seconds = Math.max(0.001, (now - since) / 1000.0);
+            secondsPerPage = samples == 0 ? seconds : THROUGHPUT_ALPHA * seconds + (1 - THROUGHPUT_ALPHA) * secondsPerPage;
+            lastPageAt = now;
+            samples++;
+        }
+
+        synchronized double secondsPerPage() {
+            return samples > 0 ? secondsPerPage : 0;
+        }
+    }
+
+    /**
+     * 开始或继续回溯。已有未完成的回溯时从记录的偏移继续，pages 为从该偏移起再回溯的页数（为空时保持原目标）；
+     * 没有记录、已完成或 restart=true 时从常规爬取覆盖的页数之后重新开始
+     */
+    public CrawlBackfillDao.Backfill start(CrawlerConfig config, Integer pages, boolean restart) {
+        long now = System.currentTimeMillis();
+        CrawlBackfillDao.Backfill existing = backfillDao.findByConfigId(config.getId()).orElse(null);
+        int defaultPages = appConfig.getCrawlerBackfillPages() != null ? appConfig.getCrawlerBackfillPages() : 100;
+        boolean resumable = existing != null && !restart && existing.groupId().equals(config.getGroupId())
+                && !CrawlBackfillDao.STATUS_DONE.equals(existing.status());
+        if (resumable) {
+            int endStart = pages != null
+                    ? existing.nextStart() + pages * CrawlerService.POSTS_PER_LIST_PAGE
+                    : existing.endStart();
+            backfillDao.resume(config.getId(), endStart, now);
+            log.info("继续历史回溯: id={}, groupId={}, start={}, endStart={}",
+                    config.getId(), config.getGroupId(), existing.nextStart(), endStart);
+        } else {
+            int freshPages = config.getPages() != null && config.getPages() > 0 ? config.getPages() : 1;
+            int start = freshPages * CrawlerService.POSTS_PER_LIST_PAGE;
+            int endStart = start + (pages != null ? pages : defaultPages) * CrawlerService.POSTS_PER_LIST_PAGE;
+            backfillDao.start(config.getId(), config.getGroupId(), start, endStart, now);
+            throughputs.remove(config.getId());
+            log.info("开始历史回溯: id={}, groupId={}, start={}, endStart={}",
+                    config.getId(), config.getGroupId(), start, endStart);
+        }
+        return backfillDao.findByConfigId(config.getId()).orElseThrow();
+    }
+
+    /**
+     * 暂停回溯，正在处理的页面完成当前帖子后停止。没有进行中的回溯时返回 false
+     */
+    public boolean pause(long configId) {
+        CrawlBackfillDao.Backfill backfill = backfillDao.findByConfigId(configId).orElse(null);
+        if (backfill == null || !CrawlBackfillDao.STATUS_RUNNING.equals(backfill.status())) {
+            return false;
+        }
+        backfillDao.setStatus(configId, CrawlBackfillDao.STATUS_PAUSED, System.currentTimeMillis());
+        log.info("已暂停历史回溯: id={}, groupId={}", configId, backfill.groupId());
+        return true;
+    }
+
+    public void delete(long configId) {
+        backfillDao.deleteByConfigId(configId);
+        throughputs.remove(configId);
+    }
+
+    /**
+     * 回溯进度、吞吐量（页/小时）和预计剩余时间，没有记录时返回 null
+     */
+    public Map<String, Object> getStatus(long configId) {
+        CrawlBackfillDao.Backfill backfill = backfillDao.findByConfigId(configId).orElse(null);
+        if (backfill == null) {
+            return null;
+        }
+        int remainingPages = Math.max(0, (backfill.endStart() - backfill.nextStart() + CrawlerService.POSTS_PER_LIST_PAGE - 1)
+                / CrawlerService.POSTS_PER_LIST_PAGE);
+        Throughput throughput = throughputs.get(configId);
+        double secondsPerPage = throughput != null ? throughput.secondsPerPage() : 0;
+        boolean running = CrawlBackfillDao.STATUS_RUNNING.equals(backfill.status());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("configId", backfill.configId());
+        data.put("groupId", backfill.groupId());
+        data.put("status", backfill.status());
+        data.put("nextPage", backfill.nextStart() / CrawlerService.POSTS_PER_LIST_PAGE + 1);
+        data.put("endPage", backfill.endStart() / CrawlerService.POSTS_PER_LIST_PAGE);
+        data.put("pagesDone", backfill.pagesDone());
+        data.put("remainingPages", remainingPages);
+        data.put("postsSeen", backfill.postsSeen());
+        data.put("failures", backfill.failures());
+        data.put("lastError", backfill.lastError());
+        data.put("startedAt", TimeUtils.fromEpochMillis(backfill.startedAt()));
+        data.put("updatedAt", TimeUtils.fromEpochMillis(backfill.updatedAt()));
+        data.put("finishedAt", backfill.finishedAt() != null ? TimeUtils.fromEpochMillis(backfill.finishedAt()) : null);
+        data.put("yieldingToFresh", running && permits.isFreshBusy());
+        data.put("pagesPerHour", secondsPerPage > 0 ? Math.round(36000 / secondsPerPage) / 10.0 : null);
+        Long etaSeconds = running && secondsPerPage > 0 ? Math.round(remainingPages * secondsPerPage) : null;
+        data.put("etaSeconds", etaSeconds);
+        data.put("etaAt", etaSeconds != null ? TimeUtils.fromEpochMillis(System.currentTimeMillis() + etaSeconds * 1000) : null);
+        return data;
+    }
+
+    /**
+     * 每次检查推进一个回溯任务一页：按最近推进时间轮流选择，常规爬取进行或等待时跳过本次检查
+     */
+    @Scheduled(fixedDelay = 10000)
+    @SuppressWarnings("try")
+    public void scheduledBackfill() {
+        try {
+            List<CrawlBackfillDao.Backfill> running = backfillDao.findRunning();
+            if (running.isEmpty() || permits.isFreshBusy()) {
+                return;
+            }
+            CrawlBackfillDao.Backfill backfill = running.get(0);
+            CrawlerConfig config = repository.getCrawlerConfigById(backfill.configId());
+            if (config == null || !config.getGroupId().equals(backfill.groupId())) {
+                backfillDao.setStatus(backfill.configId(), CrawlBackfillDao.STATUS_FAILED, System.currentTimeMillis());
+                log.warn("历史回溯对应的配置不存在或小组已变更，已停止: id={}", backfill.configId());
+                return;
+            }
+            if (backfill.nextStart() >= backfill.endStart()) {
+                finish(backfill, "已达到目标页数");
+                return;
+            }
+            // 指标作用域只在块内生效，块内不直接引用
+            try (CrawlMetrics.Scope metricsScope = metrics.scope(backfill.groupId(), backfill.configId())) {
+                backfillPage(backfill, config);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("历史回溯执行失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private void backfillPage(CrawlBackfillDao.Backfill backfill, CrawlerConfig config) throws InterruptedException {
+        long configId = backfill.configId();
+        long pageStartedAt = System.currentTimeMillis();
+        // 请求间隔在申请许可之前等待，不占用许可
+        metrics.sleep(5000, 8000);
+
+        CrawlerService.TopicContext context;
+        List<HtmlParser.ListRow> posts;
+        try (CrawlPermits.Permit permit = acquire(configId)) {
+            if (permit == null) {
+                return;
+            }
+            context = crawlerService.prepare(config);
+            if (context == null) {
+                backfillDao.recordFailure(configId, "小组信息获取失败", System.currentTimeMillis());
+                return;
+            }
+            posts = crawlerService.fetchListPage(context, backfill.nextStart());
+        } catch (IOException e) {
+            int maxAttempts = appConfig.getCrawlerMaxAttempts() != null ? appConfig.getCrawlerMaxAttempts() : 3;
+            backfillDao.recordFailure(configId, e.getMessage(), System.currentTimeMillis());
+            if (backfill.failures() + 1 >= maxAttempts) {
+                backfillDao.setStatus(configId, CrawlBackfillDao.STATUS_FAILED, System.currentTimeMillis());
+                log.error("历史回溯列表页多次失败，已停止: id={}, start={}, error={}", configId, backfill.nextStart(), e.getMessage());
+            } else {
+                log.warn("历史回溯列表页失败，稍后重试: id={}, start={}, error={}", configId, backfill.nextStart(), e.getMessage());
+            }
+            return;
+        }
+        if (posts.isEmpty()) {
+            finish(backfill, "已到达最早的帖子");
+            return;
+        }
+
+        int failedTopics = 0;
+        for (HtmlParser.ListRow row : posts) {
+            try (CrawlPermits.Permit permit = acquire(configId)) {
+                if (permit == null) {
+                    // 回溯已暂停，偏移不推进，继续时重新处理本页（已处理的帖子不会重复抓取详情）
+                    return;
+                }
+                crawlerService.crawlTopic(context, row);
+            } catch (IOException e) {
+                failedTopics++;
+                log.warn("历史回溯帖子抓取失败，已跳过: url={}, error={}", row.alt(), e.getMessage());
+            }
+        }
+
+        int nextStart = backfill.nextStart() + CrawlerService.POSTS_PER_LIST_PAGE;
+        long now = System.currentTimeMillis();
+        backfillDao.advance(configId, nextStart, posts.size(), now);
+        throughputs.computeIfAbsent(configId, id -> new Throughput()).record(pageStartedAt, now);
+        log.info("历史回溯完成一页: id={}, groupId={}, page={}, posts={}, failedTopics={}",
+                configId, backfill.groupId(), nextStart / CrawlerService.POSTS_PER_LIST_PAGE, posts.size(), failedTopics);
+        if (nextStart >= backfill.endStart()) {
+            finish(backfill, "已达到目标页数");
+        }
+    }
+
+    /**
+     * 以低优先级申请许可，常规爬取期间一直等待；等待中回溯被暂停或删除时返回 null
+     */
+    private CrawlPermits.Permit acquire(long configId) throws InterruptedException {
+        while (true) {
+            CrawlPermits.Permit permit = permits.tryAcquireBackfill(PERMIT_WAIT_SECONDS, TimeUnit.SECONDS);
+            boolean running = backfillDao.findByConfigId(configId)
+                    .map(backfill -> CrawlBackfillDao.STATUS_RUNNING.equals(backfill.status()))
+                    .orElse(false);
+            if (running && permit != null) {
+                return permit;
+            }
+            if (permit != null) {
+                permit.close();
+            }
+            if (!running) {
+                return null;
+            }
+        }
+    }
+
+    private void finish(CrawlBackfillDao.Backfill backfill, String reason) {
+        backfillDao.setStatus(backfill.configId(), CrawlBackfillDao.STATUS_DONE, System.currentTimeMillis());
+        log.info("历史回溯完成（{}）: id={}, groupId={}", reason, backfill.configId(), backfill.groupId());
+    }
+}
@@ -0,0 +1,245 @@
+package com.douban.bot.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 识别 200 响应是否为反爬页面。豆瓣的验证码、限流和登录提示页都很小，特征出现在标题和正文开头，
+ * 所以只扫描 &lt;title&gt; 和 &lt;body&gt; 之后的前 {@value #PROBE_CHARS} 个字符，不受正常页面大小影响
+ * （&lt;head&gt; 超过 {@value #HEAD_CHARS} 个字符的页面只看标题）；
+ * 所有特征词构建成一个 Aho-Corasick 自动机，每个字符只查一次表，ASCII 字母不区分大小写，扫描过程不分配对象。
+ * 正常页面导航栏里的"登录"不算，只认"请先登录"这类明确的提示
+ */
+public final class BlockedPageDetector {
+
+    // <body> 之后扫描的字符数
+    static final int PROBE_CHARS = 4096;
+    // 标题最多扫描的字符数
+    static final int TITLE_CHARS = 256;
+    // 只在页面开头的这些字符中找 <title> 和 <body>。反爬页面都很小，<head> 超过这个长度的一定是正常页面
+    static final int HEAD_CHARS = 32768;
+
+    public enum Verdict {
+        OK,
+        // 空响应
+        EMPTY,
+        // 验证码或异常请求提示
+        CAPTCHA,
+        // 访问过于频繁
+        RATE_LIMITED,
+        // 需要登录或权限不足，重试没有意义
+        LOGIN_REQUIRED;
+
+        public boolean blocked() {
+            return this != OK;
+        }
+    }
+
+    private record Rule(String pattern, Verdict verdict) {}
+
+    // 同一页面命中多个特征时取排在前面的
+    private static final List<Rule> RULES = List.of(
+            new Rule("captcha", Verdict.CAPTCHA),
+            new Rule("验证码", Verdict.CAPTCHA),
+            new Rule("检测到有异常请求", Verdict.CAPTCHA),
+            new Rule("异常访问", Verdict.CAPTCHA),
+            new Rule("禁止访问", Verdict.CAPTCHA),
+            new Rule("访问过于频繁", Verdict.RATE_LIMITED),
+            new Rule("forbidden", Verdict.RATE_LIMITED),
+            new Rule("请先登录", Verdict.LOGIN_REQUIRED),
+            new Rule("权限不足", Verdict.LOGIN_REQUIRED));
+
+    // ASCII 字符直接查表；特征词中的非 ASCII 字符放进开放寻址的小哈希表，0 表示空位
+    private static final int[] ASCII_SYMBOLS = new int[128];
+    private static final char[] HASH_KEYS;
+    private static final int[] HASH_SYMBOLS;
+    private static final int HASH_MASK;
+    private static final int WIDTH;
+    // 状态转移表，下标为 状态 * WIDTH + 字符编号，值为下一状态乘以 WIDTH 后的行首，下一状态命中规则时最高位置 1。
+    // 编号为 WIDTH - 1 的字符表示不在任何特征词中的字符
+    private static final int[] NEXT;
+    // 到达该状态时命中的规则下标，-1 为未命中
+    private static final int[] MATCH;
+    private static final int MATCHED = Integer.MIN_VALUE;
+
+    static {
+        TreeSet<Character> ascii = new TreeSet<>();
+        TreeSet<Character> other = new TreeSet<>();
+        for (Rule rule : RULES) {
+            for (char c : rule.pattern().toCharArray()) {
+                (c < 128 ? ascii : other).add(c);
+            }
+        }
+        Arrays.fill(ASCII_SYMBOLS, -1);
+        int symbol = 0;
+        for (char c : ascii) {
+            ASCII_SYMBOLS[c] = symbol;
+            ASCII_SYMBOLS[Character.toUpperCase(c)] = symbol;
+            symbol++;
+        }
+        int capacity = Integer.highestOneBit(other.size() * 4 - 1) << 1;
+        HASH_KEYS = new char[capacity];
+        HASH_SYMBOLS = new int[capacity];
+        HASH_MASK = capacity - 1;
+        for (char c : other) {
+            int slot = hash(c);
+            while (HASH_KEYS[slot] != 0) {
+                slot = (slot + 1) & HASH_MASK;
+            }
+            HASH_KEYS[slot] = c;
+            HASH_SYMBOLS[slot] = symbol++;
+        }
+        WIDTH = symbol + 1;
+
+        // 字典树
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> match = new ArrayList<>();
+        trie.add(newRow());
+        match.add(-1);
+        for (int r = 0; r < RULES.size(); r++) {
+            int state = 0;
+            for (char c : RULES.get(r).pattern().toCharArray()) {
+                int s = symbol(c);
+                if (trie.get(state)[s] < 0) {
+                    trie.get(state)[s] = trie.size();
+                    trie.add(newRow());
+                    match.add(-1);
+                }
+                state = trie.get(state)[s];
+            }
+            match.set(state, r);
+        }
+
+        // 按层补全失败转移，得到完整的 DFA
+        int states = trie.size();
+        int[] next = new int[states * WIDTH];
+        MATCH = new int[states];
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < WIDTH; s++) {
+            int child = trie.get(0)[s];
+            if (child < 0) {
+                next[s] = 0;
+            } else {
+                next[s] = child;
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        MATCH[0] = -1;
+        while (head < tail) {
+            int state = queue[head++];
+            int inherited = MATCH[fail[state]];
+            int own = match.get(state);
+            MATCH[state] = own < 0 ? inherited : inherited < 0 ? own : Math.min(own, inherited);
+            for (int s = 0; s < WIDTH; s++) {
+                int child = trie.get(state)[s];
+                if (child < 0) {
+                    next[state * WIDTH + s] = next[fail[state] * WIDTH + s];
+                } else {
+                    next[state * WIDTH + s] = child;
+                    fail[child] = next[fail[state] * WIDTH + s];
+                    queue[tail++] = child;
+                }
+            }
+        }
+        NEXT = new int[next.length];
+        for (int i = 0; i < next.length; i++) {
+            NEXT[i] = next[i] * WIDTH | (MATCH[next[i]] >= 0 ? MATCHED : 0);
+        }
+        for (int c = 0; c < ASCII_SYMBOLS.length; c++) {
+            if (ASCII_SYMBOLS[c] < 0) {
+                ASCII_SYMBOLS[c] = WIDTH - 1;
+            }
+        }
+    }
+
+    private BlockedPageDetector() {
+    }
+
+    public static Verdict detect(String html) {
+        if (html == null || html.isBlank()) {
+            return Verdict.EMPTY;
+        }
+        int best = RULES.size();
+        int titleStart = indexOfTag(html, "<title", Math.min(html.length(), HEAD_CHARS));
+        if (titleStart >= 0) {
+            int textStart = html.indexOf('>', titleStart);
+            if (textStart >= 0) {
+                textStart++;
+                int limit = Math.min(html.length(), textStart + TITLE_CHARS);
+                int textEnd = html.indexOf('<', textStart);
+                best = Math.min(best, scan(html, textStart, textEnd >= 0 && textEnd < limit ? textEnd : limit));
+            }
+        }
+        int bodyStart = indexOfTag(html, "<body", Math.min(html.length(), HEAD_CHARS));
+        // 没有 <body> 的短片段或纯文本从头扫描
+        int probeStart = bodyStart >= 0 ? bodyStart : html.length() <= HEAD_CHARS ? 0 : -1;
+        if (probeStart >= 0) {
+            best = Math.min(best, scan(html, probeStart, Math.min(html.length(), probeStart + PROBE_CHARS)));
+        }
+        return best < RULES.size() ? RULES.get(best).verdict() : Verdict.OK;
+    }
+
+    /**
+     * 扫描 [from, to)，返回命中的规则中最靠前的下标，未命中时返回规则数
+     */
+    private static int scan(String text, int from, int to) {
+        int best = RULES.size();
+        int row = 0;
+        for (int i = from; i < to; i++) {
+            row = NEXT[row + symbol(text.charAt(i))];
+            if (row < 0) {
+                row &= ~MATCHED;
+                best = Math.min(best, MATCH[row / WIDTH]);
+                if (best == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int symbol(char c) {
+        if (c < 128) {
+            return ASCII_SYMBOLS[c];
+        }
+        int slot = hash(c);
+        char key;
+        while ((key = HASH_KEYS[slot]) != 0) {
+            if (key == c) {
+                return HASH_SYMBOLS[slot];
+            }
+            slot = (slot + 1) & HASH_MASK;
+        }
+        return WIDTH - 1;
+    }
+
+    private static int hash(char c) {
+        return ((c * 0x9E3779B1) >>> 16) & HASH_MASK;
+    }
+
+    /**
+     * 在 [0, to) 中找不区分大小写的标签开头，tag 以 '<' 开头，用 indexOf 逐个跳到 '<' 再比较
+     */
+    private static int indexOfTag(String text, String tag, int to) {
+        int i = text.indexOf('<');
+        while (i >= 0 && i + tag.length() <= to) {
+            if (text.regionMatches(true, i, tag, 0, tag.length())) {
+                return i;
+            }
+            i = text.indexOf('<', i + 1);
+        }
+        return -1;
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[WIDTH];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
@@ -0,0 +1,34 @@
+package com.douban.bot.service;
+
+import com.douban.bot.db.RepositoryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定期按源表重算小组计数并校正 GroupCounter。启动时立即执行一次，
+ * 用于初始化旧数据库的计数以及修复手工改库等绕过触发器造成的偏差
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CounterReconciler {
+
+    private final RepositoryService repository;
+
+    @Scheduled(fixedDelayString = "${app.counter-reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        try {
+            long startMs = System.currentTimeMillis();
+            int corrected = repository.reconcileCounters();
+            if (corrected > 0) {
+                log.warn("计数表校正完成: 修正小组数={}, elapsedMs={}", corrected, System.currentTimeMillis() - startMs);
+            } else {
+                log.debug("计数表校正完成: 无偏差, elapsedMs={}", System.currentTimeMillis() - startMs);
+            }
+        } catch (Exception e) {
+            log.error("计数表校正失败: {}", e.getMessage(), e);
+        }
+    }
+}
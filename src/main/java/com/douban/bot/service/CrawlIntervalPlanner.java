@@ -0,0 +1,249 @@
+package com.douban.bot.service;
+
+import com.douban.bot.config.AppConfig;
+import com.douban.bot.db.PostDao;
+import com.douban.bot.db.RepositoryService;
+import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.utils.TimeUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 按各小组的发帖速率计算爬取间隔。
+ * 速率取最近 7 天每小时新帖数的指数加权平均（半衰期 24 小时）与当前时段（一天中的同一小时）历史均值的平均。
+ * 间隔按"每次爬取约看到 crawler-target-posts-per-crawl 个新帖"计算，并限制在上下限内，
+ * 同时不超过列表页能容纳新帖的时间。所有配置的列表页请求超出每小时预算时按平方根规则分配：
+ * 间隔与 sqrt(页数 / 速率) 成正比，在预算内使按速率加权的平均滞后时间最小
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CrawlIntervalPlanner {
+
+    private static final int WINDOW_HOURS = 7 * 24;
+    private static final double HALF_LIFE_HOURS = 24;
+    // 窗口内新帖少于该数量时数据不足，使用配置的固定间隔
+    private static final int MIN_HISTORY_POSTS = 10;
+    private static final double MIN_RATE = 0.01;
+    private static final int POSTS_PER_LIST_PAGE = 25;
+    // 两次爬取之间的新帖最多占满列表页的比例，超过则有帖子翻出爬取范围
+    private static final double COVERAGE_RATIO = 0.8;
+    private static final long PLAN_TTL_MS = 10 * 60 * 1000L;
+
+    private final RepositoryService repository;
+    private final AppConfig appConfig;
+
+    private volatile Plan cached;
+
+    /**
+     * 单个配置的间隔及依据，rate 单位为帖/小时
+     */
+    public record Interval(long configId, String name, String groupId, int pages, double ratePerHour,
+                           double ewmaRate, double profileRate, long intervalSeconds, String reason) {}
+
+    public record Plan(List<Interval> intervals, boolean adaptive, int requestBudgetPerHour,
+                       double listRequestsPerHour, boolean budgetLimited, LocalDateTime computedAt) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("adaptive", adaptive);
+            map.put("requestBudgetPerHour", requestBudgetPerHour);
+            map.put("listRequestsPerHour", Math.round(listRequestsPerHour * 10) / 10.0);
+            map.put("budgetLimited", budgetLimited);
+            map.put("computedAt", computedAt);
+            map.put("intervals", intervals);
+            return map;
+        }
+    }
+
+    /**
+     * 配置的爬取间隔（秒），计划缓存 10 分钟或配置列表变化时重新计算
+     */
+    public long getIntervalSeconds(CrawlerConfig config, List<CrawlerConfig> enabledConfigs) {
+        Plan plan = getPlan(enabledConfigs);
+        return plan.intervals().stream()
+                .filter(interval -> interval.configId() == config.getId())
+                .mapToLong(Interval::intervalSeconds)
+                .findFirst()
+                .orElse(fixedIntervalSeconds(config));
+    }
+
+    public Plan getPlan(List<CrawlerConfig> enabledConfigs) {
+        Plan plan = cached;
+        Set<Long> ids = enabledConfigs.stream().map(CrawlerConfig::getId).collect(Collectors.toSet());
+        boolean sameConfigs = plan != null && plan.intervals().size() == ids.size()
+                && plan.intervals().stream().allMatch(interval -> ids.contains(interval.configId()));
+        if (sameConfigs && System.currentTimeMillis() - TimeUtils.toEpochMillis(plan.computedAt()) < PLAN_TTL_MS) {
+            return plan;
+        }
+        plan = computePlan(enabledConfigs, System.currentTimeMillis());
+        cached = plan;
+        return plan;
+    }
+
+    /**
+     * 配置修改后丢弃缓存的计划
+     */
+    public void invalidate() {
+        cached = null;
+    }
+
+    Plan computePlan(List<CrawlerConfig> configs, long now) {
+        boolean adaptive = appConfig.getCrawlerAdaptiveInterval() == null || appConfig.getCrawlerAdaptiveInterval();
+        long minSeconds = appConfig.getCrawlerMinIntervalSeconds() != null ? appConfig.getCrawlerMinIntervalSeconds() : 300;
+        long maxSeconds = Math.max(minSeconds,
+                appConfig.getCrawlerMaxIntervalSeconds() != null ? appConfig.getCrawlerMaxIntervalSeconds() : 7200);
+        int targetPosts = appConfig.getCrawlerTargetPostsPerCrawl() != null ? appConfig.getCrawlerTargetPostsPerCrawl() : 5;
+        int budget = appConfig.getCrawlerListRequestsPerHour() != null ? appConfig.getCrawlerListRequestsPerHour() : 60;
+
+        List<Interval> intervals = new ArrayList<>(configs.size());
+        Map<String, double[]> ratesByGroup = new HashMap<>();
+        for (CrawlerConfig config : configs) {
+            int pages = config.getPages() != null && config.getPages() > 0 ? config.getPages() : 1;
+            if (!adaptive) {
+                intervals.add(new Interval(config.getId(), config.getName(), config.getGroupId(), pages, 0, 0, 0,
+                        fixedIntervalSeconds(config), "未开启自动间隔，使用配置的间隔"));
+                continue;
+            }
+            double[] rates = ratesByGroup.computeIfAbsent(config.getGroupId(), groupId -> estimateRate(groupId, now));
+            if (rates == null) {
+                intervals.add(new Interval(config.getId(), config.getName(), config.getGroupId(), pages, 0, 0, 0,
+                        fixedIntervalSeconds(config), "历史数据不足，使用配置的间隔"));
+                continue;
+            }
+            double rate = rates[0];
+            double seconds = targetPosts / rate * 3600;
+            String reason = String.format("约每 %d 个新帖爬取一次", targetPosts);
+            double coverageSeconds = pages * POSTS_PER_LIST_PAGE * COVERAGE_RATIO / rate * 3600;
+            if (coverageSeconds < seconds) {
+                seconds = coverageSeconds;
+                reason = String.format("新帖不超过 %d 页列表的容量", pages);
+            }
+            long clamped = clamp(seconds, minSeconds, maxSeconds);
+            if (clamped != Math.round(seconds)) {
+                reason = clamped == minSeconds ? "达到最小间隔" : "达到最大间隔";
+            }
+            intervals.add(new Interval(config.getId(), config.getName(), config.getGroupId(), pages,
+                    round(rate), round(rates[1]), round(rates[2]), clamped, reason));
+        }
+
+        double usage = listRequestsPerHour(intervals);
+        boolean budgetLimited = false;
+        if (adaptive && usage > budget) {
+            budgetLimited = true;
+            intervals = allocateBudget(intervals, budget, minSeconds, maxSeconds);
+            usage = listRequestsPerHour(intervals);
+            log.info("爬取计划超出列表页请求预算，已按平方根规则分配: budget={}/小时, planned={}/小时", budget, round(usage));
+        }
+        return new Plan(List.copyOf(intervals), adaptive, budget, usage, budgetLimited,
+                TimeUtils.fromEpochMillis(now));
+    }
+
+    /**
+     * 平方根分配：最小化 Σ rate_i * T_i / 2，约束 Σ pages_i / T_i = 可用预算，
+     * 得 T_i = sqrt(pages_i / rate_i) * Σ sqrt(pages_j * rate_j) / 预算。
+     * 数据不足的配置保持固定间隔并先从预算中扣除；分配结果只会延长间隔
+     */
+    private static List<Interval> allocateBudget(List<Interval> intervals, int budget, long minSeconds, long maxSeconds) {
+        double fixedUsage = 0;
+        double sqrtSum = 0;
+        for (Interval interval : intervals) {
+            if (interval.ratePerHour() > 0) {
+                sqrtSum += Math.sqrt(interval.pages() * interval.ratePerHour());
+            } else {
+                fixedUsage += interval.pages() * 3600.0 / interval.intervalSeconds();
+            }
+        }
+        double remaining = budget - fixedUsage;
+        List<Interval> result = new ArrayList<>(intervals.size());
+        for (Interval interval : intervals) {
+            if (interval.ratePerHour() <= 0) {
+                result.add(interval);
+                continue;
+            }
+            double hours = remaining > 0
+                    ? Math.sqrt(interval.pages() / interval.ratePerHour()) * sqrtSum / remaining
+                    : Double.MAX_VALUE;
+            long seconds = clamp(hours * 3600, minSeconds, maxSeconds);
+            if (seconds <= interval.intervalSeconds()) {
+                result.add(interval);
+                continue;
+            }
+            result.add(new Interval(interval.configId(), interval.name(), interval.groupId(), interval.pages(),
+                    interval.ratePerHour(), interval.ewmaRate(), interval.profileRate(), seconds,
+                    seconds == maxSeconds ? "受请求预算限制，达到最大间隔" : "受请求预算限制（平方根分配）"));
+        }
+        return result;
+    }
+
+    /**
+     * 估计小组当前的发帖速率，返回 [速率, 指数加权平均, 当前时段均值]，数据不足时返回 null
+     */
+    private double[] estimateRate(String groupId, long now) {
+        long currentHour = now / 3600_000L;
+        long firstHour = currentHour - WINDOW_HOURS + 1;
+        List<PostDao.HourlyCount> counts = repository.getPostsPerHour(groupId, firstHour * 3600_000L);
+        int total = counts.stream().mapToInt(PostDao.HourlyCount::posts).sum();
+        if (total < MIN_HISTORY_POSTS) {
+            return null;
+        }
+
+        int[] perHour = new int[WINDOW_HOURS];
+        for (PostDao.HourlyCount count : counts) {
+            int index = (int) (count.hour() - firstHour);
+            if (index >= 0 && index < WINDOW_HOURS) {
+                perHour[index] += count.posts();
+            }
+        }
+        // 指数加权平均，以窗口均值为初值；当前小时尚未结束，不计入
+        double alpha = 1 - Math.pow(0.5, 1 / HALF_LIFE_HOURS);
+        double ewma = (double) total / WINDOW_HOURS;
+        for (int i = 0; i < WINDOW_HOURS - 1; i++) {
+            ewma = alpha * perHour[i] + (1 - alpha) * ewma;
+        }
+
+        // 一天中当前小时和下一小时的历史均值（爬取间隔通常落在这段时间内）
+        ZoneId zone = ZoneId.systemDefault();
+        int hourOfDay = Instant.ofEpochMilli(now).atZone(zone).getHour();
+        int sum = 0;
+        int samples = 0;
+        for (int i = 0; i < WINDOW_HOURS - 1; i++) {
+            int bucketHour = Instant.ofEpochMilli((firstHour + i) * 3600_000L).atZone(zone).getHour();
+            if (bucketHour == hourOfDay || bucketHour == (hourOfDay + 1) % 24) {
+                sum += perHour[i];
+                samples++;
+            }
+        }
+        double profile = samples > 0 ? (double) sum / samples : ewma;
+
+        double rate = Math.max(MIN_RATE, (ewma + profile) / 2);
+        return new double[]{rate, ewma, profile};
+    }
+
+    private static double listRequestsPerHour(List<Interval> intervals) {
+        return intervals.stream().mapToDouble(interval -> interval.pages() * 3600.0 / interval.intervalSeconds()).sum();
+    }
+
+    private static long fixedIntervalSeconds(CrawlerConfig config) {
+        return config.getSleepSeconds() != null && config.getSleepSeconds() > 0 ? config.getSleepSeconds() : 900;
+    }
+
+    private static long clamp(double seconds, long min, long max) {
+        return Math.max(min, Math.min(max, Math.round(seconds)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,327 @@
+package com.douban.bot.service;
+
+import com.douban.bot.utils.HttpUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.extension.ExtensionMethod;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 爬取和回复各阶段的 Micrometer 指标，通过 /actuator/prometheus 导出：
+ * <ul>
+ *   <li>douban.fetch：每次页面请求的耗时，按页面类型、状态码和结果（ok/blocked/limited/server_error/error）区分</li>
+ *   <li>douban.fetch.bytes：下载的页面字节数；douban.fetch.retries：被限制、反爬或服务端错误后的重试次数</li>
+ *   <li>douban.fetch.deduplicated：由 {@link ResponseCache} 省下的请求（hit/coalesced）</li>
+ *   <li>douban.breaker：{@link SessionBreaker} 的状态变化（open/half_open/closed）</li>
+ *   <li>douban.sleep：请求之间的随机等待</li>
+ *   <li>douban.parse：HtmlParser 各方法和 Jsoup 建树的耗时</li>
+ *   <li>douban.db：每条 SQL 的耗时，按执行它的 DAO 方法和读写区分（通过 Jdbi 的 SqlLogger 统计）</li>
+ *   <li>douban.posts / douban.comments.stored：处理的帖子（new/updated/skipped）和新保存的评论数</li>
+ *   <li>douban.llm / douban.llm.tokens：生成回复的耗时和 token 用量</li>
+ *   <li>douban.reply.comment / douban.reply.verify：发送评论的结果和 403 后验证的耗时</li>
+ * </ul>
+ * 所有指标带 group 和 config 标签，取自当前线程的 {@link #scope}，不在爬取或回复中时为 none。
+ * scope 上挂有 {@link CrawlRunStats} 时，同样的事件也累加到这次爬取的记录中
+ */
+@Component
+public class CrawlMetrics {
+
+    private static final String NONE = "none";
+    private static final Tags NO_SCOPE = Tags.of("group", NONE, "config", NONE);
+    private static final ThreadLocal<Context> SCOPE = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+
+    public CrawlMetrics(MeterRegistry registry, Jdbi jdbi) {
+        this.registry = registry;
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(new DbTimingLogger());
+    }
+
+    /**
+     * 当前线程的指标标签，close 时恢复之前的标签
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private record Context(Tags tags, CrawlRunStats run) {}
+
+    /**
+     * 在当前线程上标记小组和配置，范围内记录的指标都带这两个标签。回复机器人的 configId 为 "bot"
+     */
+    public Scope scope(String groupId, Object configId) {
+        return scope(groupId, configId, null);
+    }
+
+    /**
+     * 同 {@link #scope(String, Object)}，范围内的请求、解析、数据库、等待和帖子事件同时累加到 run
+     */
+    public Scope scope(String groupId, Object configId, CrawlRunStats run) {
+        Context previous = SCOPE.get();
+        SCOPE.set(new Context(Tags.of("group", groupId != null ? groupId : NONE,
+                "config", configId != null ? String.valueOf(configId) : NONE), run));
+        return () -> {
+            if (previous != null) {
+                SCOPE.set(previous);
+            } else {
+                SCOPE.remove();
+            }
+        };
+    }
+
+    /**
+     * 记录一次页面请求。status 为 0 表示请求没有得到响应
+     */
+    public void recordFetch(String type, int status, String outcome, long nanos, String body) {
+        Tags tags = scopeTags().and("type", type);
+        Timer.builder("douban.fetch")
+                .tags(tags.and("status", String.valueOf(status), "outcome", outcome))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        long bytes = body != null ? utf8Length(body) : 0;
+        if (body != null) {
+            DistributionSummary.builder("douban.fetch.bytes")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry)
+                    .record(bytes);
+        }
+        CrawlRunStats run = currentRun();
+        if (run != null) {
+            run.fetchNanos += nanos;
+            run.bytesIn += bytes;
+            if ("blocked".equals(outcome)) {
+                run.blocked++;
+            }
+        }
+    }
+
+    /**
+     * 请求被限制、命中反爬页面或服务端错误后准备重试，reason 为对应的 outcome
+     */
+    public void recordRetry(String type, String reason) {
+        Counter.builder("douban.fetch.retries")
+                .tags(scopeTags().and("type", type, "reason", reason))
+                .register(registry)
+                .increment();
+        CrawlRunStats run = currentRun();
+        if (run != null) {
+            run.retries++;
+        }
+    }
+
+    /**
+     * 相同的页面请求没有发出，reason 为 hit（短期缓存）或 coalesced（共用进行中的请求）
+     */
+    public void recordDeduplicated(String type, String reason) {
+        Counter.builder("douban.fetch.deduplicated")
+                .tags(scopeTags().and("type", type, "reason", reason))
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 会话熔断器进入 state（open/half_open/closed）
+     */
+    public void recordBreaker(String host, String state) {
+        Counter.builder("douban.breaker")
+                .tags(scopeTags().and("host", host, "state", state))
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 请求之间的随机等待（HttpUtils.randomSleep），记录实际等待的时间
+     */
+    public void sleep(int minMs, int maxMs) {
+        long start = System.nanoTime();
+        HttpUtils.randomSleep(minMs, maxMs);
+        long nanos = System.nanoTime() - start;
+        Timer.builder("douban.sleep")
+                .tags(scopeTags())
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        CrawlRunStats run = currentRun();
+        if (run != null) {
+            run.sleepNanos += nanos;
+        }
+    }
+
+    /**
+     * 记录处理过的一个帖子，result 为 new（新保存）/updated（刷新了详情）/skipped（未变化、已回复、排除或重复）
+     */
+    public void recordPost(String result) {
+        Counter.builder("douban.posts")
+                .tags(scopeTags().and("result", result))
+                .register(registry)
+                .increment();
+        CrawlRunStats run = currentRun();
+        if (run != null) {
+            switch (result) {
+                case "new" -> run.postsNew++;
+                case "updated" -> run.postsUpdated++;
+                default -> run.postsSkipped++;
+            }
+        }
+    }
+
+    public void recordCommentsStored(int count) {
+        Counter.builder("douban.comments.stored")
+                .tags(scopeTags())
+                .register(registry)
+                .increment(count);
+        CrawlRunStats run = currentRun();
+        if (run != null) {
+            run.commentsStored += count;
+        }
+    }
+
+    /**
+     * 计时一次解析，method 为 HtmlParser 的方法名，Jsoup.parse 为 "document"
+     */
+    public <T> T parse(String method, Supplier<T> parse) {
+        long start = System.nanoTime();
+        try {
+            return parse.get();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            Timer.builder("douban.parse")
+                    .tags(scopeTags().and("method", method))
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            CrawlRunStats run = currentRun();
+            if (run != null) {
+                run.parseNanos += nanos;
+            }
+        }
+    }
+
+    /**
+     * 记录一次 LLM 调用，usage 缺失时不记录 token
+     */
+    public void recordLlm(String model, String outcome, long nanos, Integer promptTokens, Integer completionTokens) {
+        Tags tags = scopeTags().and("model", model != null ? model : NONE);
+        Timer.builder("douban.llm")
+                .tags(tags.and("outcome", outcome))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (promptTokens != null) {
+            tokens(tags, "prompt").increment(promptTokens);
+        }
+        if (completionTokens != null) {
+            tokens(tags, "completion").increment(completionTokens);
+        }
+    }
+
+    /**
+     * 记录一次发送评论（包含发送前访问帖子页和 403 后的验证），outcome 为 success/failed
+     */
+    public void recordComment(String outcome, long nanos) {
+        Timer.builder("douban.reply.comment")
+                .tags(scopeTags().and("outcome", outcome))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次 403 后的评论验证（包含等待和重新访问帖子页），result 为 verified/missing
+     */
+    public void recordVerification(String result, long nanos) {
+        Timer.builder("douban.reply.verify")
+                .tags(scopeTags().and("result", result))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Counter tokens(Tags tags, String type) {
+        return Counter.builder("douban.llm.tokens")
+                .tags(tags.and("type", type))
+                .register(registry);
+    }
+
+    private static Tags scopeTags() {
+        Context context = SCOPE.get();
+        return context != null ? context.tags() : NO_SCOPE;
+    }
+
+    private static CrawlRunStats currentRun() {
+        Context context = SCOPE.get();
+        return context != null ? context.run() : null;
+    }
+
+    /**
+     * 字符串按 UTF-8 编码后的字节数，不实际编码
+     */
+    static long utf8Length(String text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 每条 SQL 执行后按 DAO 方法计时。不经过 SqlObject 的语句（如建表、手写 Handle 查询）记为 handle
+     */
+    private class DbTimingLogger implements SqlLogger {
+
+        @Override
+        public void logAfterExecution(StatementContext context) {
+            record(context, "ok");
+        }
+
+        @Override
+        public void logException(StatementContext context, SQLException ex) {
+            record(context, "error");
+        }
+
+        private void record(StatementContext context, String outcome) {
+            ExtensionMethod method = context.getExtensionMethod();
+            String sql = context.getRenderedSql();
+            long nanos = context.getElapsedTime(ChronoUnit.NANOS);
+            Timer.builder("douban.db")
+                    .tags(scopeTags().and(
+                            "dao", method != null ? method.getType().getSimpleName() : "handle",
+                            "method", method != null ? method.getMethod().getName() : NONE,
+                            "operation", isRead(sql) ? "read" : "write",
+                            "outcome", outcome))
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            CrawlRunStats run = currentRun();
+            if (run != null && nanos > 0) {
+                run.dbNanos += nanos;
+            }
+        }
+
+        private boolean isRead(String sql) {
+            if (sql == null) {
+                return false;
+            }
+            String trimmed = sql.stripLeading();
+            return trimmed.regionMatches(true, 0, "select", 0, 6) || trimmed.regionMatches(true, 0, "with", 0, 4);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.douban.bot.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 豆瓣请求的共享许可，按优先级分配：
+ * 常规爬取（一轮最新几页）之间可以同时进行；历史回溯同时只有一个，且只在没有常规爬取持有或等待许可时执行。
+ * 回溯按单个步骤（一页列表或一个帖子）申请许可，常规爬取最多等待正在进行的一个步骤结束
+ */
+@Component
+public class CrawlPermits {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int freshActive;
+    private int freshWaiting;
+    private boolean backfillActive;
+
+    /**
+     * 持有的许可，close 时归还
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 常规爬取申请许可，等待正在进行的回溯步骤结束
+     */
+    public Permit acquireFresh() {
+        lock.lock();
+        try {
+            freshWaiting++;
+            try {
+                while (backfillActive) {
+                    released.awaitUninterruptibly();
+                }
+            } finally {
+                freshWaiting--;
+            }
+            freshActive++;
+        } finally {
+            lock.unlock();
+        }
+        return this::releaseFresh;
+    }
+
+    /**
+     * 回溯申请许可，超时仍有常规爬取在进行时返回 null
+     */
+    public Permit tryAcquireBackfill(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (backfillActive || freshActive > 0 || freshWaiting > 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            backfillActive = true;
+        } finally {
+            lock.unlock();
+        }
+        return this::releaseBackfill;
+    }
+
+    /**
+     * 是否有常规爬取正在进行或等待
+     */
+    public boolean isFreshBusy() {
+        lock.lock();
+        try {
+            return freshActive > 0 || freshWaiting > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseFresh() {
+        lock.lock();
+        try {
+            freshActive--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseBackfill() {
+        lock.lock();
+        try {
+            backfillActive = false;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.douban.bot.service;
+
+import com.douban.bot.db.CrawlRunDao;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次常规爬取的累计数据，挂在 {@link CrawlMetrics#scope} 上，由记录指标的同一批事件累加，
+ * 结束时写入 CrawlRun。一次爬取只在一个线程上执行，不需要同步
+ */
+public class CrawlRunStats {
+
+    int listPages;
+    int listPagesOk;
+    int topics;
+    int topicsOk;
+    int postsNew;
+    int postsUpdated;
+    int postsSkipped;
+    int commentsStored;
+    long bytesIn;
+    long sleepNanos;
+    long fetchNanos;
+    long parseNanos;
+    long dbNanos;
+    int blocked;
+    int retries;
+    // 会话熔断而提前结束时的原因
+    String pausedReason;
+
+    CrawlRunDao.CrawlRun toRun(long id, long configId, String groupId, String status, long startedAt, long finishedAt,
+                              String error) {
+        return new CrawlRunDao.CrawlRun(id, configId, groupId, status, startedAt, finishedAt, listPages, listPagesOk,
+                topics, topicsOk, postsNew, postsUpdated, postsSkipped, commentsStored, bytesIn, millis(sleepNanos),
+                millis(fetchNanos), millis(parseNanos), millis(dbNanos), blocked, retries, error);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
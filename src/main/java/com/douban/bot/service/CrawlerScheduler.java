@@ -1,86 +1,110 @@
 package com.douban.bot.service;
 
 import com.douban.bot.config.AppConfig;
+import com.douban.bot.db.CrawlFrontierDao;
+import com.douban.bot.db.CrawlRunDao;
+import com.douban.bot.db.CrawlScheduleDao;
 import com.douban.bot.db.RepositoryService;
 import com.douban.bot.model.CrawlerConfig;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class CrawlerScheduler {
 
     private final CrawlerService crawlerService;
     private final RepositoryService repository;
     private final AppConfig appConfig;
+    private final CrawlScheduleDao scheduleDao;
+    private final CrawlFrontierDao frontierDao;
+    private final CrawlRunDao runDao;
     
-    // 记录每个爬虫配置的上次执行时间
-    private final ConcurrentHashMap<Long, Long> lastExecutionTime = new ConcurrentHashMap<>();
+    private final CrawlIntervalPlanner intervalPlanner;
+    
+    // 首次检查时恢复上次退出前的状态
+    private volatile boolean recovered = false;
+    // 启动时错开的最早执行时间（只在本次进程内有效）
+    private final Map<Long, Long> notBefore = new ConcurrentHashMap<>();
+
+    public CrawlerScheduler(CrawlerService crawlerService, RepositoryService repository, AppConfig appConfig,
+                            CrawlIntervalPlanner intervalPlanner, Jdbi jdbi) {
+        this.crawlerService = crawlerService;
+        this.intervalPlanner = intervalPlanner;
+        this.repository = repository;
+        this.appConfig = appConfig;
+        this.scheduleDao = jdbi.onDemand(CrawlScheduleDao.class);
+        this.frontierDao = jdbi.onDemand(CrawlFrontierDao.class);
+        this.runDao = jdbi.onDemand(CrawlRunDao.class);
+    }
 
     /**
      * 定时检查并执行已启用的爬虫任务
-     * 每30秒检查一次，根据每个爬虫配置的 sleepSeconds 决定是否执行
+     * 每30秒检查一次，执行时间记录在 CrawlSchedule 中，按 CrawlIntervalPlanner 计算的间隔排定下次执行
      */
     @Scheduled(fixedDelay = 30000) // 每30秒检查一次
     public void scheduledCrawl() {
         List<CrawlerConfig> configs = repository.getAllCrawlerConfigs();
         
+        // 筛选已启用的配置
+        List<CrawlerConfig> enabledConfigs = configs == null ? List.of() : configs.stream()
+                .filter(c -> c.getEnabled() != null && c.getEnabled())
+                .toList();
+
+        if (!recovered) {
+            recover(enabledConfigs);
+            recovered = true;
+        }
+        
         if (configs == null || configs.isEmpty()) {
             log.debug("没有配置爬虫任务");
             return;
         }
         
-        // 筛选已启用的配置
-        List<CrawlerConfig> enabledConfigs = configs.stream()
-                .filter(c -> c.getEnabled() != null && c.getEnabled())
-                .toList();
-        
         if (enabledConfigs.isEmpty()) {
             log.debug("没有已启用的爬虫任务");
             return;
         }
         
-        long now = System.currentTimeMillis();
+        Map<Long, Long> lastRunAt = new HashMap<>();
+        for (CrawlScheduleDao.Schedule schedule : scheduleDao.findAll()) {
+            if (schedule.lastRunAt() != null) {
+                lastRunAt.put(schedule.configId(), schedule.lastRunAt());
+            }
+        }
         
         for (CrawlerConfig config : enabledConfigs) {
             try {
-                // 获取配置的间隔时间（秒），默认900秒（15分钟）
-                int sleepSeconds = config.getSleepSeconds() != null ? config.getSleepSeconds() : 900;
-                long intervalMs = sleepSeconds * 1000L;
+                // 爬取间隔（秒）：开启自动间隔时按小组发帖速率计算，否则为配置的 sleepSeconds
+                long intervalSeconds = intervalPlanner.getIntervalSeconds(config, enabledConfigs);
+                long intervalMs = intervalSeconds * 1000L;
                 
-                // 检查是否到了执行时间
-                Long lastExec = lastExecutionTime.get(config.getId());
-                if (lastExec != null && (now - lastExec) < intervalMs) {
+                // 检查是否到了执行时间：按上次执行时间和当前间隔计算，间隔变化后立即生效
+                long now = System.currentTimeMillis();
+                Long lastRun = lastRunAt.get(config.getId());
+                long dueAt = Math.max(lastRun != null ? lastRun + intervalMs : 0L, notBefore.getOrDefault(config.getId(), 0L));
+                if (now < dueAt) {
                     // 还没到执行时间，跳过
                     continue;
                 }
                 
                 // 更新执行时间
-                lastExecutionTime.put(config.getId(), now);
+                scheduleDao.markRun(config.getId(), now, now + intervalMs);
                 
                 log.info("开始执行定时爬虫任务: id={}, name={}, groupId={}, interval={}秒", 
-                        config.getId(), config.getName(), config.getGroupId(), sleepSeconds);
-                
-                // 获取cookie，优先使用爬虫配置的cookie，否则使用全局配置
-                String cookie = config.getCookie() != null && !config.getCookie().isEmpty() 
-                        ? config.getCookie() 
-                        : appConfig.getCookie();
+                        config.getId(), config.getName(), config.getGroupId(), intervalSeconds);
                 
                 // 执行爬虫
-                crawlerService.crawl(
-                        config.getGroupId(),
-                        config.getPages() != null ? config.getPages() : 10,
-                        config.getKeywords() != null ? config.getKeywords() : List.of(),
-                        config.getExcludeKeywords() != null ? config.getExcludeKeywords() : List.of(),
-                        cookie,
-                        config.getCrawlComments() != null ? config.getCrawlComments() : true
-                );
+                crawlerService.crawl(config);
                 
                 log.info("定时爬虫任务执行完成: id={}, name={}", config.getId(), config.getName());
                 
@@ -90,4 +114,34 @@ public class CrawlerScheduler {
             }
         }
     }
+
+    /**
+     * 启动后首次检查：释放上次退出前持有的任务租约并结束未完成的爬取记录，再把已到期的配置按 crawler-boot-stagger-seconds 错开，
+     * 有未完成任务的配置排在前面，避免重启后所有配置同时开始爬取
+     */
+    private void recover(List<CrawlerConfig> enabledConfigs) {
+        int released = frontierDao.releaseAllLeases();
+        if (released > 0) {
+            log.info("已释放上次退出前未完成的爬取任务租约: {}", released);
+        }
+        int aborted = runDao.abortRunning(System.currentTimeMillis());
+        if (aborted > 0) {
+            log.info("已将上次退出前未结束的爬取记录标记为 aborted: {}", aborted);
+        }
+        long now = System.currentTimeMillis();
+        long staggerMs = (appConfig.getCrawlerBootStaggerSeconds() != null ? appConfig.getCrawlerBootStaggerSeconds() : 60) * 1000L;
+        Map<Long, Long> nextRunAt = scheduleDao.findAll().stream()
+                .collect(Collectors.toMap(CrawlScheduleDao.Schedule::configId, CrawlScheduleDao.Schedule::nextRunAt));
+        List<CrawlerConfig> due = enabledConfigs.stream()
+                .filter(c -> nextRunAt.getOrDefault(c.getId(), 0L) <= now)
+                .sorted(Comparator.comparing((CrawlerConfig c) -> !frontierDao.hasPending(c.getId())))
+                .toList();
+        for (int i = 0; i < due.size(); i++) {
+            notBefore.put(due.get(i).getId(), now + i * staggerMs);
+            scheduleDao.setNextRun(due.get(i).getId(), now + i * staggerMs);
+        }
+        if (due.size() > 1) {
+            log.info("已错开 {} 个到期的爬虫任务，间隔 {} 秒", due.size(), staggerMs / 1000);
+        }
+    }
 }
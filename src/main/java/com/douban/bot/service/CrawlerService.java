@@ -1,41 +1,234 @@
 package com.douban.bot.service;
 
 import com.douban.bot.config.AppConfig;
+import com.douban.bot.db.CommentDao;
+import com.douban.bot.db.CrawlFrontierDao;
+import com.douban.bot.db.CrawlRunDao;
+import com.douban.bot.db.PostDao;
 import com.douban.bot.db.RepositoryService;
 import com.douban.bot.model.Comment;
+import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.model.DuplicatePolicy;
 import com.douban.bot.model.Group;
 import com.douban.bot.model.Post;
 import com.douban.bot.utils.HttpUtils;
-import lombok.RequiredArgsConstructor;
+import com.douban.bot.utils.JsonUtils;
+import com.douban.bot.utils.SimHash;
+import com.douban.bot.utils.TimeUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class CrawlerService {
 
+    // 帖子页优先于列表页，一页的帖子处理完再抓下一页
+    private static final int LIST_PRIORITY = 0;
+    private static final int TOPIC_PRIORITY = 10;
+    public static final int POSTS_PER_LIST_PAGE = 25;
+
+    // 抓取的页面类型：tag 为指标标签，label 用于日志
+    private enum Page {
+        GROUP("group", "小组信息"),
+        LIST("list", "小组帖子列表"),
+        TOPIC("topic", "帖子详情"),
+        COMMENTS("comments", "帖子评论"),
+        WARMUP("warmup", "会话预热");
+
+        private final String tag;
+        private final String label;
+
+        Page(String tag, String label) {
+            this.tag = tag;
+            this.label = label;
+        }
+    }
+
     private final RepositoryService repository;
     private final AppConfig config;
+    private final DuplicateDetector duplicateDetector;
+    private final CrawlFrontierDao frontierDao;
+    private final CrawlRunDao runDao;
+    private final CrawlPermits permits;
+    private final CrawlMetrics metrics;
+    private final ResponseCache responseCache;
+    private final SessionBreaker breaker;
+    // 正在运行的配置，避免定时任务和手动触发同时爬取同一配置
+    private final Set<Long> runningConfigs = ConcurrentHashMap.newKeySet();
     private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    public void crawl(String groupId, int pages, List<String> keywords, List<String> exclude, String cookie, boolean crawlComments) {
+    public CrawlerService(RepositoryService repository, AppConfig config, DuplicateDetector duplicateDetector,
+                          CrawlPermits permits, CrawlMetrics metrics, ResponseCache responseCache, SessionBreaker breaker, Jdbi jdbi) {
+        this.repository = repository;
+        this.config = config;
+        this.duplicateDetector = duplicateDetector;
+        this.permits = permits;
+        this.metrics = metrics;
+        this.responseCache = responseCache;
+        this.breaker = breaker;
+        this.frontierDao = jdbi.onDemand(CrawlFrontierDao.class);
+        this.runDao = jdbi.onDemand(CrawlRunDao.class);
+    }
+
+    /**
+     * 执行一轮爬取。列表页和帖子页都记录在 CrawlFrontier 中逐个领取：
+     * 上一轮有未完成的任务时接着执行，否则按配置的页数写入新的列表页。
+     * 列表页解析出的帖子以更高优先级入队，先处理完一页的帖子再抓下一页。
+     * 每轮爬取在 CrawlRun 中留下一条记录，包括页数、帖子数和耗时分布
+     */
+    @SuppressWarnings("try")
+    public void crawl(CrawlerConfig crawlerConfig) {
+        long configId = crawlerConfig.getId();
+        String groupId = crawlerConfig.getGroupId();
+        if (!runningConfigs.add(configId)) {
+            log.warn("该爬虫配置已在运行，跳过本次执行: id={}, groupId={}", configId, groupId);
+            return;
+        }
+        // 常规爬取优先于历史回溯：等正在进行的回溯步骤结束后开始，期间回溯暂停
+        CrawlRunStats run = new CrawlRunStats();
+        // 两个资源只在块内生效、结束时释放，块内不直接引用
+        try (CrawlMetrics.Scope metricsScope = metrics.scope(groupId, configId, run);
+             CrawlPermits.Permit freshPermit = permits.acquireFresh()) {
+            long startedAt = System.currentTimeMillis();
+            long runId = runDao.start(configId, groupId, startedAt);
+            String status = CrawlRunDao.STATUS_FAILED;
+            String error = null;
+            try {
+                if (crawl(crawlerConfig, configId, groupId, run)) {
+                    status = run.pausedReason != null ? CrawlRunDao.STATUS_PAUSED : CrawlRunDao.STATUS_DONE;
+                    error = run.pausedReason;
+                } else {
+                    error = "小组信息获取失败";
+                }
+            } catch (RuntimeException e) {
+                error = e.getMessage();
+                throw e;
+            } finally {
+                runDao.finish(run.toRun(runId, configId, groupId, status, startedAt, System.currentTimeMillis(), error));
+            }
+        } finally {
+            runningConfigs.remove(configId);
+        }
+    }
+
+    public boolean isRunning(long configId) {
+        return runningConfigs.contains(configId);
+    }
+
+    /**
+     * 一个爬虫配置处理帖子时需要的上下文，常规爬取和历史回溯共用
+     */
+    public record TopicContext(Group group, KeywordMatcher matcher, DuplicatePolicy policy, String cookie,
+                               boolean crawlComments, String groupHomeUrl) {}
+
+    /**
+     * 小组信息获取失败时返回 false
+     */
+    private boolean crawl(CrawlerConfig crawlerConfig, long configId, String groupId, CrawlRunStats run) {
+        int pages = crawlerConfig.getPages() != null ? crawlerConfig.getPages() : 10;
         int effectivePages = pages > 0 ? pages : 1;
         if (pages <= 0) {
             log.warn("爬取页数配置无效，已回退为1: groupId={}, pages={}", groupId, pages);
         }
-        log.info("开始爬取小组: {}, 爬取评论: {}, pages={}", groupId, crawlComments, effectivePages);
-        
-        // 如果配置中没有cookie，使用全局配置的cookie
+        TopicContext context = prepare(crawlerConfig);
+        if (context == null) {
+            return false;
+        }
+        log.info("开始爬取小组: {}, 爬取评论: {}, pages={}", groupId, context.crawlComments(), effectivePages);
+
+        List<CrawlFrontierDao.NewItem> listPages = new ArrayList<>(effectivePages);
+        for (int page = 0; page < effectivePages; page++) {
+            listPages.add(new CrawlFrontierDao.NewItem(configId, groupId, CrawlFrontierDao.KIND_LIST,
+                    listPageUrl(groupId, page * POSTS_PER_LIST_PAGE), "{}", LIST_PRIORITY));
+        }
+        int maxAttempts = config.getCrawlerMaxAttempts() != null ? config.getCrawlerMaxAttempts() : 3;
+        int exhausted = frontierDao.failExhausted(configId, maxAttempts, System.currentTimeMillis());
+        if (exhausted > 0) {
+            log.warn("上次未完成的任务中有 {} 个已用完尝试次数，标记为失败: id={}, groupId={}", exhausted, configId, groupId);
+        }
+        if (frontierDao.resumeOrSeed(configId, listPages, System.currentTimeMillis())) {
+            log.info("继续上次未完成的爬取任务: id={}, groupId={}", configId, groupId);
+        }
+
+        // 爬取帖子
+        warmUpSession(context.groupHomeUrl(), context.cookie());
+        long leaseMs = (config.getCrawlerLeaseSeconds() != null ? config.getCrawlerLeaseSeconds() : 600) * 1000L;
+        int failedPages = 0;
+        while (true) {
+            long now = System.currentTimeMillis();
+            CrawlFrontierDao.Item item = frontierDao.claim(configId, maxAttempts, now, now + leaseMs).orElse(null);
+            if (item == null) {
+                break;
+            }
+            try {
+                if (CrawlFrontierDao.KIND_LIST.equals(item.kind())) {
+                    run.listPages++;
+                    metrics.sleep(5000, 8000);
+                    crawlListPage(item, configId, context);
+                    run.listPagesOk++;
+                } else {
+                    run.topics++;
+                    crawlTopic(context, fromPayload(JsonUtils.readMap(item.payload())));
+                    run.topicsOk++;
+                }
+                frontierDao.markDone(item.id(), System.currentTimeMillis());
+            } catch (SessionBreaker.OpenException e) {
+                // 会话熔断且短时间内不会恢复：交还任务，剩余任务留到下次执行
+                frontierDao.release(item.id(), System.currentTimeMillis());
+                run.pausedReason = e.getMessage();
+                log.warn("会话熔断，提前结束本轮爬取: groupId={}, {}", groupId, e.getMessage());
+                break;
+            } catch (IOException | RuntimeException e) {
+                // 数据库忙、payload 格式错误等意外异常同样计入尝试次数，不能让任务一直停在 pending
+                if (e instanceof RuntimeException) {
+                    log.error("处理爬取任务时出现意外异常: url={}", item.url(), e);
+                }
+                String error = e instanceof IOException ? e.getMessage() : e.toString();
+                boolean isList = CrawlFrontierDao.KIND_LIST.equals(item.kind());
+                if (item.attempts() >= maxAttempts) {
+                    frontierDao.markFailed(item.id(), error, System.currentTimeMillis());
+                    if (isList) {
+                        failedPages++;
+                    }
+                    log.error("{}爬取失败，已放弃: url={}, attempts={}, error={}",
+                            isList ? "列表页" : "帖子", item.url(), item.attempts(), error);
+                } else {
+                    frontierDao.retryLater(item.id(), error, System.currentTimeMillis());
+                    log.warn("{}爬取失败，稍后重试: url={}, attempts={}/{}, error={}",
+                            isList ? "列表页" : "帖子", item.url(), item.attempts(), maxAttempts, error);
+                }
+            }
+        }
+        log.info("小组爬取完成: groupId={}, successPages={}, failedPages={}, topics={}, newPosts={}, bytes={}",
+                groupId, run.listPagesOk, failedPages, run.topicsOk, run.postsNew, run.bytesIn);
+        return true;
+    }
+
+    /**
+     * 准备处理帖子所需的上下文：确定 Cookie（配置中没有时使用全局配置），小组不存在时先爬取小组信息。
+     * 小组信息获取失败时返回 null
+     */
+    public TopicContext prepare(CrawlerConfig crawlerConfig) {
+        String groupId = crawlerConfig.getGroupId();
+        boolean crawlComments = crawlerConfig.getCrawlComments() != null ? crawlerConfig.getCrawlComments() : true;
+        String cookie = crawlerConfig.getCookie();
         String useCookie = (cookie != null && !cookie.trim().isEmpty()) ? cookie : config.getCookie();
         if (useCookie == null || useCookie.trim().isEmpty()) {
             log.warn("当前未配置Cookie，可能会触发403反爬: groupId={}", groupId);
@@ -51,197 +244,229 @@ public class CrawlerService {
                 log.info("创建小组: {} 成功", groupId);
             } else {
                 log.error("爬取小组信息失败: {}", groupId);
-                return;
+                return null;
             }
         }
 
-        // 爬取帖子
-        String groupHomeUrl = String.format(config.getGroupInfoBaseUrl(), groupId);
-        warmUpSession(groupHomeUrl, useCookie);
-        int successPages = 0;
-        int failedPages = 0;
-        for (int page = 0; page < effectivePages; page++) {
-            HttpUtils.randomSleep(5000, 8000);
+        return new TopicContext(group,
+                new KeywordMatcher(crawlerConfig.getKeywords(), crawlerConfig.getExcludeKeywords()),
+                DuplicatePolicy.fromValue(crawlerConfig.getDuplicatePolicy()),
+                useCookie, crawlComments, String.format(config.getGroupInfoBaseUrl(), groupId));
+    }
 
-            String url = String.format(config.getGroupTopicsBaseUrl(), groupId) + "?start=" + (page * 25);
-            try {
-                String html = fetchWithRetry(url, useCookie, groupHomeUrl, "小组帖子列表");
-                if (html == null) {
-                    log.warn("爬取第 {} 页失败（返回空内容）", page + 1);
-                    failedPages++;
-                    continue;
-                }
-                Document doc = Jsoup.parse(html);
-                List<Map<String, Object>> posts = HtmlParser.parsePosts(doc);
-                if (posts == null || posts.isEmpty()) {
-                    String title = doc.title();
-                    String bodyText = doc.body() != null ? doc.body().text() : "";
-                    String snippet = bodyText.length() > 120 ? bodyText.substring(0, 120) + "..." : bodyText;
-                    log.warn("小组帖子列表为空，可能被反爬或页面结构变化: groupId={}, page={}, title={}, snippet={}",
-                            groupId, page + 1, title, snippet);
-                }
-                successPages++;
+    /**
+     * 抓取并解析一页帖子列表，start 为列表偏移（每页 25 条）。页面没有帖子时返回空列表
+     */
+    public List<HtmlParser.ListRow> fetchListPage(TopicContext context, int start) throws IOException {
+        return fetchListPage(context, listPageUrl(context.group().getGroupId(), start));
+    }
 
-                for (Map<String, Object> postMap : posts) {
-                    processPost(postMap, group, keywords, exclude, useCookie, crawlComments);
-                }
-            } catch (IOException e) {
-                log.error("爬取第 {} 页失败: {}", page + 1, e.getMessage());
-                failedPages++;
-            }
+    private List<HtmlParser.ListRow> fetchListPage(TopicContext context, String url) throws IOException {
+        String groupId = context.group().getGroupId();
+        String html = fetchWithRetry(url, context.cookie(), context.groupHomeUrl(), Page.LIST);
+        if (html == null) {
+            throw new IOException("小组帖子列表返回空内容");
+        }
+        List<HtmlParser.ListRow> posts = metrics.parse("parseListPage", () -> HtmlParser.parseListPage(html));
+        if (posts.isEmpty()) {
+            // 只有列表为空时才建整棵树，取标题和正文开头用于排查
+            Document doc = parseDocument(html);
+            String title = doc.title();
+            String bodyText = doc.body() != null ? doc.body().text() : "";
+            String snippet = bodyText.length() > 120 ? bodyText.substring(0, 120) + "..." : bodyText;
+            log.warn("小组帖子列表为空，可能被反爬、页面结构变化或已到最后一页: groupId={}, url={}, title={}, snippet={}",
+                    groupId, url, title, snippet);
+            return List.of();
+        }
+        return posts;
+    }
+
+    /**
+     * 处理列表页解析出的一个帖子：新帖抓取详情后保存，已有帖子按回复数变化刷新。
+     * 详情抓取失败时抛出 IOException
+     */
+    public void crawlTopic(TopicContext context, HtmlParser.ListRow row) throws IOException {
+        processPost(row, context.group(), context.matcher(), context.policy(), context.cookie(), context.crawlComments());
+    }
+
+    /**
+     * 抓取一页帖子列表，把解析出的帖子加入任务队列
+     */
+    private void crawlListPage(CrawlFrontierDao.Item item, long configId, TopicContext context) throws IOException {
+        List<HtmlParser.ListRow> posts = fetchListPage(context, item.url());
+        if (posts.isEmpty()) {
+            return;
         }
-        log.info("小组爬取完成: groupId={}, successPages={}, failedPages={}", groupId, successPages, failedPages);
+        String groupId = context.group().getGroupId();
+        List<CrawlFrontierDao.NewItem> topics = new ArrayList<>(posts.size());
+        for (HtmlParser.ListRow row : posts) {
+            topics.add(new CrawlFrontierDao.NewItem(configId, groupId, CrawlFrontierDao.KIND_TOPIC,
+                    row.alt(), JsonUtils.write(toPayload(row), "{}"), TOPIC_PRIORITY));
+        }
+        frontierDao.enqueue(topics, System.currentTimeMillis());
+    }
+
+    /**
+     * 列表行写入任务队列的 payload，字段名与之前版本保存的 JSON 一致，升级前排队的任务可以继续执行
+     */
+    private static Map<String, Object> toPayload(HtmlParser.ListRow row) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("id", row.id());
+        payload.put("title", row.title());
+        payload.put("alt", row.alt());
+        payload.put("author", row.author().toMap());
+        payload.put("updated", row.updated().format(DATETIME_FORMAT));
+        if (row.replyCount() != null) {
+            payload.put("reply_count", row.replyCount());
+        }
+        return payload;
+    }
+
+    private static HtmlParser.ListRow fromPayload(Map<String, Object> payload) {
+        Object author = payload.get("author");
+        HtmlParser.Author parsedAuthor = HtmlParser.Author.UNKNOWN;
+        if (author instanceof Map<?, ?> authorMap) {
+            Object name = authorMap.get("name");
+            Object alt = authorMap.get("alt");
+            parsedAuthor = HtmlParser.Author.of(name != null ? name.toString() : "", alt != null ? alt.toString() : "");
+        }
+        Object replyCount = payload.get("reply_count");
+        return new HtmlParser.ListRow((String) payload.get("id"), (String) payload.get("title"),
+                (String) payload.get("alt"), parsedAuthor, parseDateTime((String) payload.get("updated")),
+                replyCount instanceof Number number ? number.intValue() : null);
+    }
+
+    private String listPageUrl(String groupId, int start) {
+        return String.format(config.getGroupTopicsBaseUrl(), groupId) + "?start=" + start;
     }
 
     private Group crawlGroupInfo(String groupId, String cookie) {
         try {
-            HttpUtils.randomSleep(2000, 5000);
+            metrics.sleep(2000, 5000);
             String url = String.format(config.getGroupInfoBaseUrl(), groupId);
             String useCookie = (cookie != null && !cookie.trim().isEmpty()) ? cookie : config.getCookie();
-            String html = fetchWithRetry(url, useCookie, url, "小组信息");
+            String html = fetchWithRetry(url, useCookie, url, Page.GROUP);
             if (html == null) {
                 return null;
             }
-            Document doc = Jsoup.parse(html);
-            return HtmlParser.parseGroupInfo(doc, groupId, config.getGroupInfoBaseUrl());
+            Document doc = parseDocument(html);
+            return metrics.parse("parseGroupInfo", () -> HtmlParser.parseGroupInfo(doc, groupId, config.getGroupInfoBaseUrl()));
         } catch (IOException e) {
             log.error("爬取小组信息失败: {}", e.getMessage());
             return null;
         }
     }
 
-    private void processPost(Map<String, Object> postMap, Group group, List<String> keywords, List<String> exclude, String cookie, boolean crawlComments) {
-        String title = (String) postMap.get("title");
-        String postUrl = (String) postMap.get("alt");
-        String postId = (String) postMap.get("id");
+    private void processPost(HtmlParser.ListRow row, Group group, KeywordMatcher matcher, DuplicatePolicy policy,
+                             String cookie, boolean crawlComments) throws IOException {
+        String title = row.title();
+        String postUrl = row.alt();
+        String postId = row.id();
 
         // 如果帖子已存在且已自动回复，则不再爬取和更新
-        Post existing = repository.getPostByPostID(postId);
-        if (existing != null && existing.getBotReplied() != null && existing.getBotReplied()) {
+        PostDao.CrawlState state = repository.getPostCrawlState(postId);
+        if (state != null && state.botReplied()) {
             log.debug("帖子已自动回复，跳过爬取和更新: postId={}", postId);
+            metrics.recordPost("skipped");
             return;
         }
-
-        // 爬取帖子详情
-        Map<String, Object> detail;
-        try {
-            HttpUtils.randomSleep(2500, 7500);
-            String useCookie = (cookie != null && !cookie.trim().isEmpty()) ? cookie : config.getCookie();
-            String html = fetchWithRetry(postUrl, useCookie, postUrl, "帖子详情");
-            if (html == null) {
-                return;
-            }
-            Document doc = Jsoup.parse(html);
-            detail = HtmlParser.parsePostDetail(doc);
-        } catch (IOException e) {
-            log.error("爬取帖子详情失败: {}", e.getMessage());
+        Integer replyCount = row.replyCount();
+        LocalDateTime updated = row.updated();
+        if (state != null && !needsRefresh(state, replyCount, TimeUtils.toEpochMillis(updated))) {
+            log.debug("帖子回复数和最后回复时间未变化，跳过详情: postId={}, replyCount={}", postId, replyCount);
+            metrics.recordPost("skipped");
             return;
         }
 
-        String content = (String) detail.getOrDefault("content", "");
-
-        // 检查排除关键词
-        for (String e : exclude) {
-            if (!e.isEmpty() && (title.contains(e) || content.contains(e))) {
-                return;
-            }
+        // 爬取帖子详情，失败时抛出 IOException 由任务队列稍后重试
+        metrics.sleep(2500, 7500);
+        String useCookie = (cookie != null && !cookie.trim().isEmpty()) ? cookie : config.getCookie();
+        String html = fetchWithRetry(postUrl, useCookie, postUrl, Page.TOPIC);
+        if (html == null) {
+            throw new IOException("帖子详情返回空内容");
         }
+        HtmlParser.TopicPage topicPage = metrics.parse("parseTopicPage", () -> HtmlParser.parseTopicPage(html));
+        HtmlParser.TopicDetail detail = topicPage.detail();
+
+        String content = detail.content();
+        List<String> photos = detail.photos();
+        String contentHash = contentHash(content, photos);
 
         // 检查帖子是否已存在
-        existing = repository.getPostByPostID(postId);
-        if (existing != null) {
-            // 更新帖子
-            existing.setTitle(title);
-            String updatedStr = (String) postMap.get("updated");
-            if (updatedStr != null) {
-                try {
-                    existing.setUpdated(LocalDateTime.parse(updatedStr, DATETIME_FORMAT));
-                } catch (Exception ignored) {
-                    existing.setUpdated(LocalDateTime.now());
-                }
+        if (state == null) {
+            state = repository.getPostCrawlState(postId);
+        }
+        if (state != null) {
+            // 更新帖子，正文摘要变化时一并更新正文
+            boolean contentChanged = !contentHash.equals(state.contentHash());
+            repository.refreshTopic(new PostDao.TopicRefresh(postId, title, TimeUtils.toEpochMillis(updated), replyCount,
+                    content, JsonUtils.write(photos, "[]"), contentHash, System.currentTimeMillis()), contentChanged);
+            log.info("更新帖子: {}{}", postId, contentChanged && state.contentHash() != null ? "（正文有修改）" : "");
+            metrics.recordPost("updated");
+            // 已有帖子按评论游标继续同步，只翻上次之后的页
+            if (crawlComments) {
+                crawlAndSaveComments(postId, group.getGroupId(), postUrl, useCookie, topicPage);
             }
-            repository.updatePost(existing);
-            log.info("更新帖子: {}", postId);
             return;
         }
 
-        // 检查标题是否重复
-        if (repository.checkPostTitleExists(title)) {
-            log.info("标题重复，忽略: {}", title);
+        // 检查排除关键词（只针对新帖子，已有帖子的匹配状态由重新匹配任务维护）
+        if (matcher.isExcluded(title, content)) {
+            metrics.recordPost("skipped");
             return;
         }
 
-        // 匹配关键词
-        List<String> matchedKeywords = new java.util.ArrayList<>();
-        boolean isMatched = false;
-        
-        // 过滤空关键词
-        List<String> validKeywords = keywords.stream()
-                .filter(k -> k != null && !k.trim().isEmpty())
-                .toList();
-        
-        // 如果没有配置关键词，默认所有帖子都匹配
-        if (validKeywords.isEmpty()) {
-            isMatched = true;
-            log.debug("未配置关键词，默认匹配所有帖子: 帖子={}", postId);
-        } else {
-            // 有关键词时，进行匹配
-            for (String keyword : validKeywords) {
-            String pattern = keyword.replaceAll("(.)", "$1.?");
-            Pattern p = Pattern.compile(pattern);
-            if (p.matcher(title).find() || p.matcher(content).find()) {
-                matchedKeywords.add(keyword);
-                isMatched = true;
-                }
-            }
+        // 近似重复检测（标题+正文的 SimHash），按配置的策略跳过、标记或链接到原帖
+        long simhash = SimHash.fingerprint(title, content);
+        DuplicateDetector.Match duplicate = duplicateDetector.findDuplicate(simhash);
+        if (duplicate != null && policy == DuplicatePolicy.SKIP) {
+            log.info("近似重复帖，忽略: postId={}, 原帖={}, 距离={}, 标题={}",
+                    postId, duplicate.originalPostId(), duplicate.distance(), title);
+            metrics.recordPost("skipped");
+            return;
         }
+        boolean isDuplicate = duplicate != null && policy == DuplicatePolicy.MARK;
 
-        // 解析时间
-        String createdStr = (String) detail.getOrDefault("created", "");
-        LocalDateTime created = LocalDateTime.now();
-        if (!createdStr.isEmpty()) {
-            try {
-                created = LocalDateTime.parse(createdStr, DATETIME_FORMAT);
-            } catch (Exception ignored) {
-            }
-        }
-        String updatedStr = (String) postMap.getOrDefault("updated", "");
-        LocalDateTime updated = LocalDateTime.now();
-        if (!updatedStr.isEmpty()) {
-            try {
-                updated = LocalDateTime.parse(updatedStr, DATETIME_FORMAT);
-            } catch (Exception ignored) {
-            }
-        }
+        // 匹配关键词（没有配置关键词时默认匹配所有帖子）；标记为重复的帖子不参与自动回复
+        KeywordMatcher.Result match = matcher.match(title, content);
+        boolean isMatched = match.matched() && !isDuplicate;
+        List<String> matchedKeywords = match.keywords();
 
-        // 构建帖子对象
-        @SuppressWarnings("unchecked")
-        Map<String, String> authorInfoMap = (Map<String, String>) postMap.getOrDefault("author", Map.of());
-        @SuppressWarnings("unchecked")
-        List<String> photos = (List<String>) detail.getOrDefault("photos", List.of());
+        LocalDateTime created = detail.created() != null ? detail.created() : LocalDateTime.now();
 
+        // 构建帖子对象
         Post post = Post.builder()
                 .postId(postId)
                 .groupId(group.getGroupId())
-                .authorInfo(Map.copyOf(authorInfoMap))
+                .authorInfo(row.author().toMap())
                 .alt(postUrl)
                 .title(title)
                 .content(content)
                 .photoList(photos)
                 .isMatched(isMatched)
                 .keywordList(matchedKeywords)
+                .simhash(simhash)
+                .duplicateOf(duplicate != null ? duplicate.originalPostId() : null)
+                .isDuplicate(isDuplicate)
+                .replyCount(replyCount)
+                .contentHash(contentHash)
                 .created(created)
                 .updated(updated)
                 .build();
 
         // 保存帖子
         repository.createPost(post);
-        log.info("保存帖子: {}", postId);
+        metrics.recordPost("new");
+        if (duplicate != null) {
+            log.info("保存帖子: {}（近似重复，原帖={}, 距离={}, 策略={}）",
+                    postId, duplicate.originalPostId(), duplicate.distance(), policy.value());
+        } else {
+            log.info("保存帖子: {}", postId);
+        }
 
         // 根据配置决定是否爬取并保存评论
         if (crawlComments) {
-            String useCookie = (cookie != null && !cookie.trim().isEmpty()) ? cookie : config.getCookie();
-            crawlAndSaveComments(postId, group.getGroupId(), postUrl, useCookie);
+            crawlAndSaveComments(postId, group.getGroupId(), postUrl, useCookie, topicPage);
         } else {
             log.debug("跳过爬取评论: 帖子={}, 配置中已禁用", postId);
         }
@@ -252,75 +477,147 @@ public class CrawlerService {
                     group.getGroupId(), postId, matchedKeywords);
         } else {
             log.debug("帖子未匹配关键词: 小组={}, 帖子={}, 关键词={}", 
-                    group.getGroupId(), postId, validKeywords);
+                    group.getGroupId(), postId, matcher.getKeywords());
         }
     }
 
-    private void crawlAndSaveComments(String postId, String groupId, String postUrl, String cookie) {
-        try {
-            HttpUtils.randomSleep(2000, 5000);
-            String useCookie = (cookie != null && !cookie.trim().isEmpty()) ? cookie : config.getCookie();
-            String html = fetchWithRetry(postUrl, useCookie, postUrl, "帖子评论");
-            if (html == null) {
-                return;
-            }
-            Document doc = Jsoup.parse(html);
-            List<Map<String, Object>> comments = HtmlParser.parseComments(doc);
+    /**
+     * 已有帖子是否需要重新抓取详情：详情超过 crawler-topic-refresh-hours 未抓取，
+     * 或列表页的回复数、最后回复时间有变化。兜底解析的列表行没有回复数，只按过期时间判断
+     */
+    private boolean needsRefresh(PostDao.CrawlState state, Integer replyCount, long updated) {
+        long refreshMs = (config.getCrawlerTopicRefreshHours() != null ? config.getCrawlerTopicRefreshHours() : 24) * 3600_000L;
+        if (state.detailFetchedAt() < System.currentTimeMillis() - refreshMs) {
+            return true;
+        }
+        if (replyCount == null) {
+            return false;
+        }
+        return !replyCount.equals(state.replyCount()) || updated != state.updated();
+    }
 
-            for (Map<String, Object> commentMap : comments) {
-                String commentId = (String) commentMap.get("id");
+    private static LocalDateTime parseDateTime(String text) {
+        LocalDateTime time = HtmlParser.parseDateTime(text);
+        return time != null ? time : LocalDateTime.now();
+    }
 
-                // 检查评论是否已存在
-                Comment existing = repository.getCommentByCommentID(commentId);
-                if (existing != null) {
-                    continue;
-                }
+    /**
+     * 正文和图片列表的 SHA-1 摘要
+     */
+    private static String contentHash(String content, List<String> photos) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(content.getBytes(StandardCharsets.UTF_8));
+            for (String photo : photos) {
+                digest.update((byte) '\n');
+                digest.update(photo.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-                // 解析时间
-                String createdStr = (String) commentMap.getOrDefault("created", "");
-                LocalDateTime created = LocalDateTime.now();
-                if (!createdStr.isEmpty()) {
-                    try {
-                        created = LocalDateTime.parse(createdStr, DATETIME_FORMAT);
-                    } catch (Exception ignored) {
+    /**
+     * 同步帖子评论。第一页直接使用已抓取的帖子详情页，之后从评论游标记录的页码开始翻页
+     * （该页可能在上次之后又有新评论，需要重新读取），每次最多翻 crawler-max-comment-pages 页，
+     * 其余留到下次。新评论批量写入，已有评论只更新点赞数
+     */
+    private void crawlAndSaveComments(String postId, String groupId, String postUrl, String cookie,
+                                      HtmlParser.TopicPage firstPage) {
+        CommentDao.CommentCursor cursor = repository.getCommentCursor(postId);
+        int totalPages = firstPage.totalPages();
+        int maxPages = config.getCrawlerMaxCommentPages() != null ? config.getCrawlerMaxCommentPages() : 20;
+        int startPage = cursor != null ? Math.max(1, cursor.lastPage()) : 1;
+        int endPage = Math.min(totalPages - 1, startPage + maxPages - 1);
+
+        int lastPage = cursor != null ? cursor.lastPage() : 0;
+        String lastCommentId = cursor != null ? cursor.lastCommentId() : null;
+        int inserted = 0;
+        int likesUpdated = 0;
+        int fetchedPages = 0;
+        // 第 0 页之后直接跳到 startPage
+        for (int page = 0; page <= endPage; page = page == 0 ? startPage : page + 1) {
+            HtmlParser.TopicPage topicPage = firstPage;
+            if (page > 0) {
+                String pageUrl = postUrl + (postUrl.contains("?") ? "&" : "?") + "start=" + page * HtmlParser.COMMENTS_PER_PAGE;
+                try {
+                    metrics.sleep(2000, 5000);
+                    String html = fetchWithRetry(pageUrl, cookie, postUrl, Page.COMMENTS);
+                    if (html == null) {
+                        break;
                     }
+                    topicPage = metrics.parse("parseTopicPage", () -> HtmlParser.parseTopicPage(html));
+                } catch (IOException e) {
+                    log.error("爬取评论失败: postId={}, page={}, error={}", postId, page + 1, e.getMessage());
+                    break;
+                }
+                fetchedPages++;
+            }
+            List<Comment> comments = topicPage.comments().stream()
+                    .map(row -> toComment(row, postId, groupId))
+                    .toList();
+            CommentDao.PageSyncResult result = repository.saveCommentPage(comments);
+            inserted += result.inserted();
+            likesUpdated += result.likesUpdated();
+            if (page >= lastPage) {
+                lastPage = page;
+                if (!comments.isEmpty()) {
+                    lastCommentId = comments.get(comments.size() - 1).getCommentId();
                 }
-
-                @SuppressWarnings("unchecked")
-                Map<String, String> authorInfoMap = (Map<String, String>) commentMap.getOrDefault("author", Map.of());
-
-                Comment comment = Comment.builder()
-                        .commentId(commentId)
-                        .postId(postId)
-                        .groupId(groupId)
-                        .authorInfo(Map.copyOf(authorInfoMap))
-                        .content((String) commentMap.getOrDefault("content", ""))
-                        .replyToId((String) commentMap.getOrDefault("reply_to_id", null))
-                        .likeCount((Integer) commentMap.getOrDefault("like_count", 0))
-                        .created(created)
-                        .build();
-
-                repository.createComment(comment);
-                log.info("保存评论: {} (帖子: {})", commentId, postId);
             }
-        } catch (IOException e) {
-            log.error("爬取评论失败: {}", e.getMessage());
         }
+
+        metrics.recordCommentsStored(inserted);
+        int commentCount = (cursor != null ? cursor.commentCount() : 0) + inserted;
+        repository.saveCommentCursor(new CommentDao.CommentCursor(postId, lastPage, lastCommentId, commentCount,
+                System.currentTimeMillis()));
+        if (inserted > 0 || likesUpdated > 0 || fetchedPages > 0) {
+            log.info("同步评论: 帖子={}, 总页数={}, 翻页={}, 新增={}, 更新点赞={}",
+                    postId, totalPages, fetchedPages, inserted, likesUpdated);
+        }
+    }
+
+    private static Comment toComment(HtmlParser.CommentRow row, String postId, String groupId) {
+        return Comment.builder()
+                .commentId(row.id())
+                .postId(postId)
+                .groupId(groupId)
+                .authorInfo(row.author().toMap())
+                .content(row.content())
+                .replyToId(row.replyToId())
+                .likeCount(row.likeCount())
+                .created(row.created() != null ? row.created() : LocalDateTime.now())
+                .build();
     }
 
-    private String fetchWithRetry(String url, String cookie, String referer, String context) throws IOException {
+    private Document parseDocument(String html) {
+        return metrics.parse("document", () -> Jsoup.parse(html));
+    }
+
+    private String fetchWithRetry(String url, String cookie, String referer, Page page) throws IOException {
         int maxAttempts = 3;
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            HttpUtils.GetResponse response = HttpUtils.fetchContentWithStatus(url, cookie, referer);
-            int status = response.statusCode;
-            String body = response.body;
+            Response response = fetch(url, cookie, referer, page);
+            int status = response.status();
+            String body = response.body();
 
-            if (status == 200 && isBlockedResponse(body)) {
-                warmUpSession(referer, cookie);
+            if (response.verdict() == BlockedPageDetector.Verdict.LOGIN_REQUIRED) {
+                // Cookie 失效或没有权限，重试不会改变结果
+                throw new IOException(page.label + " 需要登录或权限不足: url=" + url);
+            }
+
+            if (response.blocked()) {
+                metrics.recordRetry(page.tag, "blocked");
+                if (breaker.isOpen(url, cookie)) {
+                    // 熔断后不再预热和固定等待，由下一次 acquire 等待并探测
+                    continue;
+                }
+                refreshSession(referer, cookie);
                 int delayMs = 12000 + (int) (Math.random() * 8000);
-                log.warn("{} 命中反爬页面: url={}, status={}, attempt={}/{}，等待 {}ms 后重试",
-                        context, url, status, attempt, maxAttempts, delayMs);
-                HttpUtils.randomSleep(delayMs, delayMs + 500);
+                log.warn("{} 命中反爬页面: url={}, status={}, verdict={}, attempt={}/{}，等待 {}ms 后重试",
+                        page.label, url, status, response.verdict(), attempt, maxAttempts, delayMs);
+                metrics.sleep(delayMs, delayMs + 500);
                 continue;
             }
 
@@ -329,19 +626,24 @@ public class CrawlerService {
             }
 
             if (status == 403 || status == 429) {
-                warmUpSession(referer, cookie);
+                metrics.recordRetry(page.tag, "limited");
+                if (breaker.isOpen(url, cookie)) {
+                    continue;
+                }
+                refreshSession(referer, cookie);
                 int delayMs = 12000 + (int) (Math.random() * 8000);
                 log.warn("{} 请求被限制: url={}, status={}, attempt={}/{}，等待 {}ms 后重试",
-                        context, url, status, attempt, maxAttempts, delayMs);
-                HttpUtils.randomSleep(delayMs, delayMs + 500);
+                        page.label, url, status, attempt, maxAttempts, delayMs);
+                metrics.sleep(delayMs, delayMs + 500);
                 continue;
             }
 
             if (status >= 500 && status < 600) {
+                metrics.recordRetry(page.tag, "server_error");
                 int delayMs = 3000 + (int) (Math.random() * 3000);
                 log.warn("{} 服务端错误: url={}, status={}, attempt={}/{}，等待 {}ms 后重试",
-                        context, url, status, attempt, maxAttempts, delayMs);
-                HttpUtils.randomSleep(delayMs, delayMs + 500);
+                        page.label, url, status, attempt, maxAttempts, delayMs);
+                metrics.sleep(delayMs, delayMs + 500);
                 continue;
             }
 
@@ -351,32 +653,113 @@ public class CrawlerService {
         return null;
     }
 
+    private record Response(int status, String body, BlockedPageDetector.Verdict verdict) {
+
+        boolean blocked() {
+            return status == 200 && verdict.blocked();
+        }
+    }
+
+    /**
+     * 经 {@link ResponseCache} 取一次页面，200 响应由 {@link BlockedPageDetector} 识别是否为反爬页面。实际发出的请求记录耗时、状态码和下载字节数，
+     * 来自缓存或共用其他请求的不记录
+     */
+    private Response fetch(String url, String cookie, String referer, Page page) throws IOException {
+        long[] elapsed = new long[1];
+        ResponseCache.Result result = responseCache.fetch(url, cookie, page.tag,
+                () -> request(url, cookie, referer, page, elapsed));
+        return toResponse(result, page, url, cookie, elapsed[0]);
+    }
+
+    /**
+     * 同 {@link #fetch}，但不读缓存，用于需要实际发出请求的会话预热
+     */
+    private Response refetch(String url, String cookie, String referer, Page page) throws IOException {
+        long[] elapsed = new long[1];
+        ResponseCache.Result result = responseCache.refresh(url, cookie, () -> request(url, cookie, referer, page, elapsed));
+        return toResponse(result, page, url, cookie, elapsed[0]);
+    }
+
+    /**
+     * 实际发出请求，先经过会话熔断器：熔断中时等待到可以探测，等待过长时抛出 {@link SessionBreaker.OpenException}。
+     * 请求耗时（不含熔断等待）写入 elapsed[0]
+     */
+    private HttpUtils.GetResponse request(String url, String cookie, String referer, Page page, long[] elapsed)
+            throws IOException {
+        breaker.acquire(url, cookie);
+        long start = System.nanoTime();
+        try {
+            HttpUtils.GetResponse response = HttpUtils.fetchContentWithStatus(url, cookie, referer);
+            elapsed[0] = System.nanoTime() - start;
+            return response;
+        } catch (IOException | RuntimeException e) {
+            // 任何异常都要记录结果，否则探测请求一直占着熔断器，其他线程无法继续
+            breaker.record(url, cookie, SessionBreaker.Signal.NEUTRAL);
+            metrics.recordFetch(page.tag, 0, "error", System.nanoTime() - start, null);
+            throw e;
+        }
+    }
+
+    private Response toResponse(ResponseCache.Result result, Page page, String url, String cookie, long elapsedNanos) {
+        int status = result.response().statusCode;
+        String body = result.response().body;
+        Response response = new Response(status, body, result.verdict());
+        if (!result.shared()) {
+            String outcome = fetchOutcome(status, response.blocked());
+            metrics.recordFetch(page.tag, status, outcome, elapsedNanos, body);
+            breaker.record(url, cookie, switch (outcome) {
+                case "blocked", "limited" -> SessionBreaker.Signal.BLOCKED;
+                case "ok" -> SessionBreaker.Signal.OK;
+                default -> SessionBreaker.Signal.NEUTRAL;
+            });
+        }
+        return response;
+    }
+
+    private static String fetchOutcome(int status, boolean blocked) {
+        if (blocked) {
+            return "blocked";
+        }
+        if (status == 200 || status == 302) {
+            return "ok";
+        }
+        if (status == 403 || status == 429) {
+            return "limited";
+        }
+        return status >= 500 && status < 600 ? "server_error" : "error";
+    }
+
+    /**
+     * 爬取开始前访问小组首页。首页刚由 crawlGroupInfo 取过时直接使用缓存，不再请求
+     */
     private void warmUpSession(String referer, String cookie) {
         if (referer == null || referer.isBlank()) {
             return;
         }
         try {
-            HttpUtils.randomSleep(1000, 2000);
-            HttpUtils.fetchContentWithStatus(referer, cookie, referer);
-            log.debug("已预热会话: referer={}", referer);
+            if (!responseCache.contains(referer, cookie)) {
+                metrics.sleep(1000, 2000);
+            }
+            Response response = fetch(referer, cookie, referer, Page.WARMUP);
+            log.debug("已预热会话: referer={}, status={}", referer, response.status());
         } catch (Exception e) {
             log.debug("预热会话失败: referer={}, error={}", referer, e.getMessage());
         }
     }
 
-    private boolean isBlockedResponse(String html) {
-        if (html == null || html.isBlank()) {
-            return true;
+    /**
+     * 被限制或命中反爬页面后重新访问来源页，这次请求本身就是目的，不使用缓存
+     */
+    private void refreshSession(String referer, String cookie) {
+        if (referer == null || referer.isBlank()) {
+            return;
+        }
+        try {
+            metrics.sleep(1000, 2000);
+            refetch(referer, cookie, referer, Page.WARMUP);
+            log.debug("已重新预热会话: referer={}", referer);
+        } catch (Exception e) {
+            log.debug("重新预热会话失败: referer={}, error={}", referer, e.getMessage());
         }
-        String lower = html.toLowerCase();
-        return lower.contains("captcha")
-                || lower.contains("forbidden")
-                || html.contains("验证码")
-                || html.contains("访问过于频繁")
-                || html.contains("检测到有异常请求")
-                || html.contains("异常访问")
-                || html.contains("请先登录")
-                || html.contains("登录")
-                || html.contains("权限不足");
     }
 }
@@ -19,6 +19,8 @@ import java.util.regex.Pattern;
 public class DoubanApiService {
     
     private final AppConfig appConfig;
+    private final CrawlMetrics metrics;
+    private final ResponseCache responseCache;
     
     /**
      * 发送评论到豆瓣帖子
@@ -28,6 +30,13 @@ public class DoubanApiService {
      * @return 是否发送成功
      */
     public boolean postComment(String topicId, String content, String cookie) {
+        long start = System.nanoTime();
+        boolean sent = sendComment(topicId, content, cookie);
+        metrics.recordComment(sent ? "success" : "failed", System.nanoTime() - start);
+        return sent;
+    }
+
+    private boolean sendComment(String topicId, String content, String cookie) {
         if (cookie == null || cookie.trim().isEmpty()) {
             log.error("Cookie为空，无法发送评论: topicId={}", topicId);
             return false;
@@ -39,16 +48,19 @@ public class DoubanApiService {
         }
         
         try {
-            // 先访问帖子页面，获取必要的token和session信息（模拟真实浏览器的行为）
+            // 先访问帖子页面，获取必要的token和session信息（模拟真实浏览器的行为）；
+            // 爬虫刚抓取过该帖子时直接使用缓存的页面
             String postUrl = appConfig.getDoubanBaseHost() + "/group/topic/" + topicId + "/";
             
             // 在访问帖子页面前，添加随机延迟（模拟点击链接的时间）
-            Thread.sleep(1000 + (int)(Math.random() * 1000));
+            if (!responseCache.contains(postUrl, cookie)) {
+                HttpUtils.randomSleep(1000, 2000);
+            }
             
             String postPageContent = null;
             Integer beforeCommentCount = null;
             try {
-                postPageContent = HttpUtils.fetchContent(postUrl, cookie);
+                postPageContent = fetchPage(postUrl, cookie, false);
                 beforeCommentCount = extractCommentCount(postPageContent);
                 log.debug("已访问帖子页面: topicId={}", topicId);
             } catch (Exception e) {
@@ -94,10 +106,11 @@ public class DoubanApiService {
             // 这样可以更真实地模拟人类行为，减少触发验证码的概率
             int readTime = 3000 + (int)(Math.random() * 5000); // 3-8秒
             log.debug("模拟阅读时间: topicId={}, delay={}ms", topicId, readTime);
-            Thread.sleep(readTime);
+            HttpUtils.randomSleep(readTime, readTime);
             
             // 发送POST请求
             HttpUtils.PostResponse postResponse = HttpUtils.postFormDataWithStatus(commentUrl, cookie, postUrl, formData.toString());
+            responseCache.invalidate(postUrl);
             String response = postResponse.body;
             int statusCode = postResponse.statusCode;
             
@@ -120,7 +133,7 @@ public class DoubanApiService {
                 // 403 可能是风控拦截，尝试刷新 ck 后重试一次
                 log.warn("403验证失败，尝试刷新ck后重试一次: topicId={}", topicId);
                 try {
-                    String refreshedPage = HttpUtils.fetchContent(postUrl, cookie);
+                    String refreshedPage = fetchPage(postUrl, cookie, true);
                     String refreshedCk = ck;
                     Pattern ckPattern = Pattern.compile("ck['\"]?\\s*[:=]\\s*['\"]([^'\"]+)['\"]", Pattern.CASE_INSENSITIVE);
                     Matcher matcher = ckPattern.matcher(refreshedPage);
@@ -137,9 +150,10 @@ public class DoubanApiService {
                     retryForm.append("&submit_btn=").append(URLEncoder.encode("发送", StandardCharsets.UTF_8));
 
                     int retryDelay = 4000 + (int)(Math.random() * 4000);
-                    Thread.sleep(retryDelay);
+                    HttpUtils.randomSleep(retryDelay, retryDelay);
                     HttpUtils.PostResponse retryResponse = HttpUtils.postFormDataWithStatus(
                             commentUrl, cookie, postUrl, retryForm.toString());
+                    responseCache.invalidate(postUrl);
                     log.info("403重试评论响应: topicId={}, statusCode={}", topicId, retryResponse.statusCode);
 
                     return verifyCommentAfter403(topicId, cookie, content, beforeCommentCount);
@@ -222,13 +236,21 @@ public class DoubanApiService {
     }
 
     private boolean verifyCommentAfter403(String topicId, String cookie, String content, Integer beforeCommentCount) {
+        long start = System.nanoTime();
+        boolean verified = checkCommentAfter403(topicId, cookie, content, beforeCommentCount);
+        metrics.recordVerification(verified ? "verified" : "missing", System.nanoTime() - start);
+        return verified;
+    }
+
+    private boolean checkCommentAfter403(String topicId, String cookie, String content, Integer beforeCommentCount) {
         try {
             int verifyDelay = 5000 + (int)(Math.random() * 3000);
             log.debug("403验证延迟: topicId={}, delay={}ms", topicId, verifyDelay);
-            Thread.sleep(verifyDelay);
+            HttpUtils.randomSleep(verifyDelay, verifyDelay);
 
             String verifyUrl = appConfig.getDoubanBaseHost() + "/group/topic/" + topicId + "/";
-            HttpUtils.GetResponse verifyResponse = HttpUtils.fetchContentWithStatus(verifyUrl, cookie, verifyUrl);
+            HttpUtils.GetResponse verifyResponse = responseCache.refresh(verifyUrl, cookie,
+                    () -> HttpUtils.fetchContentWithStatus(verifyUrl, cookie, verifyUrl)).response();
             String verifyPageContent = verifyResponse.body;
             if (verifyResponse.statusCode != 200 && verifyResponse.statusCode != 302) {
                 log.warn("403验证时访问帖子页面失败: topicId={}, status={}", topicId, verifyResponse.statusCode);
@@ -248,8 +270,9 @@ public class DoubanApiService {
 
             int retryDelay = 5000 + (int)(Math.random() * 3000);
             log.debug("第一次验证未找到评论，等待后再次验证: topicId={}, delay={}ms", topicId, retryDelay);
-            Thread.sleep(retryDelay);
-            verifyResponse = HttpUtils.fetchContentWithStatus(verifyUrl, cookie, verifyUrl);
+            HttpUtils.randomSleep(retryDelay, retryDelay);
+            verifyResponse = responseCache.refresh(verifyUrl, cookie,
+                    () -> HttpUtils.fetchContentWithStatus(verifyUrl, cookie, verifyUrl)).response();
             verifyPageContent = verifyResponse.body;
             if (verifyResponse.statusCode != 200 && verifyResponse.statusCode != 302) {
                 log.warn("403二次验证访问帖子页面失败: topicId={}, status={}", topicId, verifyResponse.statusCode);
@@ -275,7 +298,25 @@ public class DoubanApiService {
         }
     }
 
-    private boolean isCommentPresent(String html, String content) {
+    /**
+     * 访问帖子页面，非 200/302 时抛出异常。fresh 为 false 时可以使用缓存的页面，
+     * 需要最新的 ck 或评论时为 true，请求结果同样写入缓存
+     */
+    private String fetchPage(String url, String cookie, boolean fresh) throws IOException {
+        ResponseCache.Result result = fresh
+                ? responseCache.refresh(url, cookie, () -> HttpUtils.fetchContentWithStatus(url, cookie, null))
+                : responseCache.fetch(url, cookie, "topic", () -> HttpUtils.fetchContentWithStatus(url, cookie, null));
+        HttpUtils.GetResponse response = result.response();
+        if (response.statusCode != 200 && response.statusCode != 302) {
+            String preview = response.body != null && response.body.length() > 200
+                    ? response.body.substring(0, 200) + "..."
+                    : response.body;
+            throw new IOException("HTTP request failed with status: " + response.statusCode + ", response: " + preview);
+        }
+        return response.body;
+    }
+
+    static boolean isCommentPresent(String html, String content) {
         if (html == null || html.isBlank() || content == null || content.isBlank()) {
             return false;
         }
@@ -297,7 +338,7 @@ public class DoubanApiService {
         return normalizedPage.contains(contentPrefix);
     }
 
-    private String normalizeText(String text) {
+    private static String normalizeText(String text) {
         if (text == null) {
             return "";
         }
@@ -308,7 +349,7 @@ public class DoubanApiService {
                 .trim();
     }
 
-    private Integer extractCommentCount(String html) {
+    static Integer extractCommentCount(String html) {
         if (html == null || html.isBlank()) {
             return null;
         }
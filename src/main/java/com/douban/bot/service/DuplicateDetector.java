@@ -0,0 +1,115 @@
+package com.douban.bot.service;
+
+import com.douban.bot.config.AppConfig;
+import com.douban.bot.db.DuplicateDao;
+import com.douban.bot.utils.SimHash;
+import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 SimHash 的近似重复帖检测。候选帖子通过指纹分段精确查找，再计算海明距离，
+ * 距离不超过 app.duplicate-max-distance 的视为重复，返回最早的原帖（链式重复归并到同一原帖）。
+ * 启动时为旧数据回填指纹
+ */
+@Slf4j
+@Service
+public class DuplicateDetector {
+
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+    // 单次查找最多比较的候选数
+    private static final int MAX_CANDIDATES = 1000;
+
+    private final DuplicateDao duplicateDao;
+    private final int maxDistance;
+
+    public DuplicateDetector(Jdbi jdbi, AppConfig appConfig) {
+        this.duplicateDao = jdbi.onDemand(DuplicateDao.class);
+        int configured = appConfig.getDuplicateMaxDistance() != null ? appConfig.getDuplicateMaxDistance() : 3;
+        // 分段查找只能保证距离不超过 MAX_DISTANCE 的候选不被遗漏
+        this.maxDistance = Math.max(0, Math.min(configured, SimHash.MAX_DISTANCE));
+        if (configured != maxDistance) {
+            log.warn("duplicate-max-distance 超出范围，已调整为 {}", maxDistance);
+        }
+    }
+
+    /**
+     * 重复检测结果：originalPostId 为原帖，distance 为与最相近帖子的海明距离
+     */
+    public record Match(String originalPostId, String matchedPostId, int distance) {}
+
+    /**
+     * 查找与指纹近似的已有帖子，没有时返回 null。simhash 为 0（文本过短）时不检测
+     */
+    public Match findDuplicate(long simhash) {
+        if (simhash == 0) {
+            return null;
+        }
+        List<DuplicateDao.Candidate> candidates = duplicateDao.findCandidates(
+                SimHash.band(simhash, 0), SimHash.band(simhash, 1),
+                SimHash.band(simhash, 2), SimHash.band(simhash, 3), MAX_CANDIDATES);
+        DuplicateDao.Candidate best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        // 候选按发帖时间升序，距离相同时保留较早的帖子
+        for (DuplicateDao.Candidate candidate : candidates) {
+            int distance = SimHash.distance(simhash, candidate.simhash());
+            if (distance <= maxDistance && distance < bestDistance) {
+                best = candidate;
+                bestDistance = distance;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        String original = best.duplicateOf() != null ? best.duplicateOf() : best.postId();
+        return new Match(original, best.postId(), bestDistance);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        Thread thread = new Thread(() -> {
+            try {
+                backfill();
+            } catch (Exception e) {
+                log.error("回填帖子指纹失败", e);
+            }
+        }, "simhash-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 为 simhash 为 NULL 的帖子计算指纹并写入分段索引。只补指纹，不回溯标记已有帖子之间的重复关系
+     */
+    void backfill() {
+        if (!duplicateDao.hasMissingFingerprints()) {
+            return;
+        }
+        long startMs = System.currentTimeMillis();
+        log.info("开始回填帖子 SimHash 指纹");
+        long afterId = 0;
+        int total = 0;
+        while (true) {
+            List<DuplicateDao.FingerprintSource> rows = duplicateDao.findMissingFingerprints(afterId, BACKFILL_BATCH_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<DuplicateDao.Fingerprint> fingerprints = new ArrayList<>(rows.size());
+            for (DuplicateDao.FingerprintSource row : rows) {
+                long simhash = SimHash.fingerprint(row.title(), row.content());
+                fingerprints.add(new DuplicateDao.Fingerprint(row.id(), row.postId(), simhash,
+                        SimHash.band(simhash, 0), SimHash.band(simhash, 1),
+                        SimHash.band(simhash, 2), SimHash.band(simhash, 3)));
+            }
+            duplicateDao.saveFingerprints(fingerprints);
+            afterId = rows.get(rows.size() - 1).id();
+            total += rows.size();
+        }
+        log.info("帖子 SimHash 指纹回填完成: rows={}, elapsedMs={}", total, System.currentTimeMillis() - startMs);
+    }
+}
@@ -0,0 +1,212 @@
+package com.douban.bot.service;
+
+import com.douban.bot.db.CommentDao;
+import com.douban.bot.db.PostDao;
+import com.douban.bot.db.RepositoryService;
+import com.douban.bot.utils.TimeUtils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * 帖子/评论流式导出：按 id 分批读取并逐行写出，内存占用与导出行数无关，导出期间不长时间占用数据库读锁
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    // 每写出多少行刷新一次输出流，避免客户端长时间收不到数据
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+    private static final CsvFactory CSV_FACTORY = CsvFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    // 表头只在从头导出时写出，带 cursor 续传的数据直接追加到之前的文件后面
+    private static final CsvSchema POST_CSV_SCHEMA = CsvSchema.builder()
+            .addColumn("id").addColumn("postId").addColumn("groupId").addColumn("title").addColumn("alt")
+            .addColumn("content").addColumn("authorInfo").addColumn("photoList").addColumn("isMatched")
+            .addColumn("keywordList").addColumn("botReplied").addColumn("botReplyContent").addColumn("botReplyAt")
+            .addColumn("created").addColumn("updated")
+            .build();
+    private static final CsvSchema COMMENT_CSV_SCHEMA = CsvSchema.builder()
+            .addColumn("id").addColumn("commentId").addColumn("postId").addColumn("groupId").addColumn("content")
+            .addColumn("authorInfo").addColumn("replyToId").addColumn("likeCount").addColumn("created")
+            .build();
+
+    private final RepositoryService repository;
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_NDJSON.equals(format) || FORMAT_CSV.equals(format);
+    }
+
+    /**
+     * 导出帖子，返回写出的行数。每行都带有 id，中断后可用最后一行的 id 作为 cursor 继续导出
+     */
+    public long exportPosts(OutputStream out, String format, long afterId, String groupId,
+                            String createdFrom, String createdTo, String isMatched) throws IOException {
+        boolean csv = FORMAT_CSV.equals(format);
+        long startMs = System.currentTimeMillis();
+        long count = 0;
+        long lastId = afterId;
+        int invalidJson = 0;
+        try (Stream<PostDao.PostExportRow> rows = repository.streamPostsForExport(afterId, groupId, createdFrom, createdTo, isMatched);
+             JsonGenerator gen = createGenerator(out, csv, POST_CSV_SCHEMA, afterId)) {
+            Iterator<PostDao.PostExportRow> it = rows.iterator();
+            while (it.hasNext()) {
+                PostDao.PostExportRow row = it.next();
+                gen.writeStartObject();
+                gen.writeNumberField("id", row.id());
+                gen.writeStringField("postId", row.postId());
+                gen.writeStringField("groupId", row.groupId());
+                gen.writeStringField("title", row.title());
+                gen.writeStringField("alt", row.alt());
+                gen.writeStringField("content", row.content());
+                invalidJson += writeJsonColumn(gen, csv, "authorInfo", row.authorInfo(), "{}");
+                invalidJson += writeJsonColumn(gen, csv, "photoList", row.photoList(), "[]");
+                gen.writeBooleanField("isMatched", row.isMatched());
+                invalidJson += writeJsonColumn(gen, csv, "keywordList", row.keywordList(), "[]");
+                gen.writeBooleanField("botReplied", row.botReplied());
+                gen.writeStringField("botReplyContent", row.botReplyContent());
+                gen.writeStringField("botReplyAt", TimeUtils.formatEpochMillis(row.botReplyAt()));
+                gen.writeStringField("created", TimeUtils.formatEpochMillis(row.created()));
+                gen.writeStringField("updated", TimeUtils.formatEpochMillis(row.updated()));
+                gen.writeEndObject();
+                endRow(gen, csv);
+
+                lastId = row.id();
+                if (++count % FLUSH_EVERY_ROWS == 0) {
+                    gen.flush();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("帖子导出中断: rows={}, lastId={}, error={}", count, lastId, e.getMessage());
+            throw e;
+        }
+        if (invalidJson > 0) {
+            log.warn("帖子导出中有 {} 个 JSON 列不是合法 JSON，已按字符串写出", invalidJson);
+        }
+        log.info("帖子导出完成: format={}, groupId={}, rows={}, lastId={}, elapsedMs={}",
+                format, groupId, count, lastId, System.currentTimeMillis() - startMs);
+        return count;
+    }
+
+    /**
+     * 导出评论，返回写出的行数。每行都带有 id，中断后可用最后一行的 id 作为 cursor 继续导出
+     */
+    public long exportComments(OutputStream out, String format, long afterId, String groupId,
+                               String createdFrom, String createdTo) throws IOException {
+        boolean csv = FORMAT_CSV.equals(format);
+        long startMs = System.currentTimeMillis();
+        long count = 0;
+        long lastId = afterId;
+        int invalidJson = 0;
+        try (Stream<CommentDao.CommentExportRow> rows = repository.streamCommentsForExport(afterId, groupId, createdFrom, createdTo);
+             JsonGenerator gen = createGenerator(out, csv, COMMENT_CSV_SCHEMA, afterId)) {
+            Iterator<CommentDao.CommentExportRow> it = rows.iterator();
+            while (it.hasNext()) {
+                CommentDao.CommentExportRow row = it.next();
+                gen.writeStartObject();
+                gen.writeNumberField("id", row.id());
+                gen.writeStringField("commentId", row.commentId());
+                gen.writeStringField("postId", row.postId());
+                gen.writeStringField("groupId", row.groupId());
+                gen.writeStringField("content", row.content());
+                invalidJson += writeJsonColumn(gen, csv, "authorInfo", row.authorInfo(), "{}");
+                gen.writeStringField("replyToId", row.replyToId());
+                gen.writeNumberField("likeCount", row.likeCount());
+                gen.writeStringField("created", row.created());
+                gen.writeEndObject();
+                endRow(gen, csv);
+
+                lastId = row.id();
+                if (++count % FLUSH_EVERY_ROWS == 0) {
+                    gen.flush();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("评论导出中断: rows={}, lastId={}, error={}", count, lastId, e.getMessage());
+            throw e;
+        }
+        if (invalidJson > 0) {
+            log.warn("评论导出中有 {} 个 JSON 列不是合法 JSON，已按字符串写出", invalidJson);
+        }
+        log.info("评论导出完成: format={}, groupId={}, rows={}, lastId={}, elapsedMs={}",
+                format, groupId, count, lastId, System.currentTimeMillis() - startMs);
+        return count;
+    }
+
+    private JsonGenerator createGenerator(OutputStream out, boolean csv, CsvSchema schema, long afterId) throws IOException {
+        if (csv) {
+            CsvGenerator gen = CSV_FACTORY.createGenerator(out);
+            gen.setSchema(afterId == 0 ? schema.withHeader() : schema.withoutHeader());
+            return gen;
+        }
+        JsonGenerator gen = JSON_FACTORY.createGenerator(out);
+        // NDJSON 每行一个对象，由 endRow 写换行，不需要默认的空格分隔符
+        gen.setRootValueSeparator(null);
+        return gen;
+    }
+
+    private void endRow(JsonGenerator gen, boolean csv) throws IOException {
+        if (!csv) {
+            gen.writeRaw('\n');
+        }
+    }
+
+    /**
+     * 数据库中的 JSON 列原样写出，不做反序列化；CSV 中作为普通字符串列。
+     * NDJSON 中只有完整的 JSON 对象或数组才原样写出，损坏或截断的旧数据按字符串写出，避免产生无法解析的行。
+     * 返回 1 表示该列不是合法 JSON，否则返回 0
+     */
+    private int writeJsonColumn(JsonGenerator gen, boolean csv, String field, String json, String emptyValue) throws IOException {
+        String value = json != null && !json.isEmpty() ? json : emptyValue;
+        if (csv) {
+            gen.writeStringField(field, value);
+            return 0;
+        }
+        if (!isJsonContainer(value)) {
+            gen.writeStringField(field, value);
+            return 1;
+        }
+        gen.writeFieldName(field);
+        gen.writeRawValue(value);
+        return 0;
+    }
+
+    /**
+     * 是否为单个完整的 JSON 对象或数组（后面只允许空白）
+     */
+    private static boolean isJsonContainer(String value) {
+        try (JsonParser parser = JSON_FACTORY.createParser(value)) {
+            JsonToken first = parser.nextToken();
+            if (first != JsonToken.START_OBJECT && first != JsonToken.START_ARRAY) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
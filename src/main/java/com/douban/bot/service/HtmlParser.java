@@ -3,22 +3,64 @@ package com.douban.bot.service;
 import com.douban.bot.model.Group;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.jsoup.select.Elements;
-
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.*;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class HtmlParser {
 
-    private static final Pattern POST_ID_PATTERN = Pattern.compile("https?://www\\.douban\\.com/group/topic/(\\d+)/");
+    // 帖子页每页的评论数，翻页参数为 ?start=页码*COMMENTS_PER_PAGE
+    public static final int COMMENTS_PER_PAGE = 100;
+
+    // 不限定域名，app.douban-base-host 指向本地模拟服务时同样能解析
+    private static final Pattern POST_ID_PATTERN = Pattern.compile("https?://[^/]+/group/topic/(\\d+)/");
     private static final Pattern MEMBER_COUNT_PATTERN = Pattern.compile("\\(([\\d万\\+]+)\\)");
     private static final Pattern CREATED_PATTERN = Pattern.compile("创建于(.+?)\\s");
     private static final Pattern COMMENT_ID_PATTERN = Pattern.compile("comment/(\\d+)");
     private static final Pattern REPLY_TO_ID_PATTERN = Pattern.compile("#comment-(\\d+)");
+    private static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // 预先编译的选择器，每页每行复用，不再重复解析 CSS 查询
+    private static final Evaluator LIST_ROW = QueryParser.parse("table.olt tr");
+    private static final Evaluator LIST_TITLE_LINK = QueryParser.parse("td.title a");
+    private static final Evaluator LIST_REPLY_COUNT = QueryParser.parse("td.r-count");
+    private static final Evaluator FALLBACK_TOPIC_LINK = QueryParser.parse("#content a[href*=\"/group/topic/\"]");
+    private static final Evaluator TD = QueryParser.parse("td");
+    private static final Evaluator LINK = QueryParser.parse("a");
+    private static final Evaluator TOPIC_CONTENT = QueryParser.parse("div.topic-content");
+    private static final Evaluator TOPIC_IMAGE = QueryParser.parse("div.topic-content img");
+    private static final Evaluator TOPIC_CREATE_TIME = QueryParser.parse(".create-time");
+    private static final Evaluator COMMENT_ITEM = QueryParser.parse(".comment-item, .reply-item");
+    private static final Evaluator COMMENT_CONTENT = QueryParser.parse(".reply-content, .comment-content, p");
+    private static final Evaluator COMMENT_AUTHOR = QueryParser.parse(".author, .comment-author, a[href*='/people/']");
+    private static final Evaluator PEOPLE_LINK = QueryParser.parse("a[href*='/people/']");
+    private static final Evaluator REPLY_LINK = QueryParser.parse("a[href*='#comment']");
+    private static final Evaluator COMMENT_LIKES = QueryParser.parse(".like-count, .vote-count");
+    private static final Evaluator COMMENT_TIME = QueryParser.parse(".time, .comment-time, .pubtime");
+    // 流式解析时识别的区域
+    private static final Evaluator LIST_TABLE = QueryParser.parse("table.olt");
+    private static final Evaluator COMMENT_LIST = QueryParser.parse("#comments");
+    private static final Evaluator PAGINATOR = QueryParser.parse(".paginator");
+    private static final Evaluator SCRIPT_OR_STYLE = QueryParser.parse("script, style");
 
     public static Group parseGroupInfo(Document doc, String groupId, String baseUrl) {
         // 获取小组名称
@@ -26,7 +68,7 @@ public class HtmlParser {
 
         // 获取成员数
         int memberCount = 0;
-        Elements memberLinks = doc.select("a[href=\"https://www.douban.com/group/" + groupId + "/members\"]");
+        Elements memberLinks = doc.select("a[href$=\"/group/" + groupId + "/members\"]");
         for (Element link : memberLinks) {
             String text = link.text();
             Matcher matcher = MEMBER_COUNT_PATTERN.matcher(text);
@@ -57,9 +99,8 @@ public class HtmlParser {
             if (matcher.find()) {
                 String dateStr = matcher.group(1).trim();
                 try {
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-                    created = LocalDate.parse(dateStr, formatter);
-                } catch (Exception ignored) {
+                    created = LocalDate.parse(dateStr, DATE_FORMAT);
+                } catch (DateTimeParseException ignored) {
                 }
             }
         }
@@ -74,196 +115,392 @@ public class HtmlParser {
                 .build();
     }
 
-    public static List<Map<String, Object>> parsePosts(Document doc) {
-        List<Map<String, Object>> posts = new ArrayList<>();
-        Elements rows = doc.select("table.olt tr");
+    /**
+     * 列表页的一行。updated 为最后回复时间；replyCount 为 null 表示兜底解析没有回复数
+     */
+    public record ListRow(String id, String title, String alt, Author author, LocalDateTime updated, Integer replyCount) {}
 
-        if (rows != null && !rows.isEmpty()) {
-            for (Element row : rows) {
-                Element link = row.selectFirst("td.title a");
-                if (link == null) continue;
+    /**
+     * 帖子详情。created 为 null 表示页面上没有发帖时间
+     */
+    public record TopicDetail(String content, List<String> photos, LocalDateTime created) {}
 
-                String href = link.attr("href");
-                String title = link.text().trim();
-
-                Matcher matcher = POST_ID_PATTERN.matcher(href);
-                if (!matcher.find()) continue;
-
-                String postId = matcher.group(1);
-
-                // 获取作者信息
-                Elements tds = row.select("td");
-                String authorName = "";
-                String authorHref = "";
-                if (tds.size() > 1) {
-                    Element authorLink = tds.get(1).selectFirst("a");
-                    if (authorLink != null) {
-                        authorName = authorLink.text().trim();
-                        authorHref = authorLink.attr("href");
-                    }
-                }
+    /**
+     * 一条评论。replyToId 为空串表示不是回复；created 为 null 表示没有时间或无法解析
+     */
+    public record CommentRow(String id, String content, Author author, String replyToId, int likeCount,
+                             LocalDateTime created) {}
+
+    /**
+     * 流式解析的帖子页：详情（只在第一页有意义）、本页评论和评论总页数
+     */
+    public record TopicPage(TopicDetail detail, List<CommentRow> comments, int totalPages) {}
+
+    /**
+     * 作者的名字和主页链接，链接经过 intern，同一作者在不同帖子和评论页中共用一个字符串
+     */
+    public record Author(String name, String alt) {
+
+        static final Author UNKNOWN = new Author("", "");
+
+        static Author of(String name, String alt) {
+            return name.isEmpty() && alt.isEmpty() ? UNKNOWN : new Author(name, alt.intern());
+        }
+
+        /**
+         * 帖子和评论 author_info 列的内容
+         */
+        public Map<String, Object> toMap() {
+            return Map.of("name", name, "alt", alt);
+        }
+    }
 
-                // 获取更新时间
-                String updateTime = "";
-                if (tds.size() > 3) {
-                    updateTime = tds.get(3).text().trim();
+    /**
+     * 流式解析列表页：从 &lt;body&gt; 开始读（&lt;head&gt; 里大段的样式和脚本不经过分词），
+     * 元素在闭合时逐个交给这里，table.olt 闭合后直接解析其中的行并停止，
+     * 不再为页尾的侧栏、脚本和页脚建树；脚本和样式闭合后立即从树中移除。
+     * 没有 table.olt 或其中没有帖子时，解析完整页面后按 {@link #parsePosts} 兜底
+     */
+    public static List<ListRow> parseListPage(String html) {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(fromBody(html), "")) {
+            Iterator<Element> it = parser.iterator();
+            while (it.hasNext()) {
+                Element el = it.next();
+                if (el.is(SCRIPT_OR_STYLE)) {
+                    el.remove();
+                } else if (el.is(LIST_TABLE)) {
+                    List<ListRow> posts = parseListRows(el.select(LIST_ROW), LocalDateTime.now());
+                    if (!posts.isEmpty()) {
+                        parser.stop();
+                        return posts;
+                    }
                 }
-                String updated = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) + " " + updateTime + ":00";
-
-                Map<String, Object> post = new HashMap<>();
-                post.put("id", postId);
-                post.put("title", title);
-                post.put("alt", href);
-                Map<String, String> author = new HashMap<>();
-                author.put("name", authorName);
-                author.put("alt", authorHref);
-                post.put("author", author);
-                post.put("updated", updated);
-
-                posts.add(post);
             }
-            return posts;
+            return parsePosts(parser.document());
+        }
+    }
+
+    public static List<ListRow> parsePosts(Document doc) {
+        // 同一页的 "MM-dd HH:mm" 按同一个当前时间补全年份
+        LocalDateTime now = LocalDateTime.now();
+        Elements rows = doc.select(LIST_ROW);
+        if (!rows.isEmpty()) {
+            return parseListRows(rows, now);
         }
 
         // 兜底解析：页面结构变化或被反爬时尝试从链接中提取
-        Elements links = doc.select("#content a[href^=\"https://www.douban.com/group/topic/\"]");
-        for (Element link : links) {
+        List<ListRow> posts = new ArrayList<>();
+        for (Element link : doc.select(FALLBACK_TOPIC_LINK)) {
             String href = link.attr("href");
             String title = link.text().trim();
             if (title.isEmpty()) {
                 continue;
             }
 
-            Matcher matcher = POST_ID_PATTERN.matcher(href);
-            if (!matcher.find()) continue;
-
-            String postId = matcher.group(1);
-            Map<String, Object> post = new HashMap<>();
-            post.put("id", postId);
-            post.put("title", title);
-            post.put("alt", href);
-            Map<String, String> author = new HashMap<>();
-            author.put("name", "");
-            author.put("alt", "");
-            post.put("author", author);
-            post.put("updated", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            posts.add(post);
+            String postId = postId(href);
+            if (postId == null) continue;
+
+            posts.add(new ListRow(postId, title, href, Author.UNKNOWN, now, null));
+        }
+
+        return posts;
+    }
+
+    /**
+     * 跳过 &lt;body&gt; 之前的内容，直接在原字符串上读，不复制。没有 &lt;body&gt; 时从头读
+     */
+    private static Reader fromBody(String html) {
+        StringReader reader = new StringReader(html);
+        int i = html.indexOf('<');
+        while (i >= 0) {
+            if (html.regionMatches(true, i, "<body", 0, 5) && i + 5 < html.length()
+                    && (html.charAt(i + 5) == '>' || Character.isWhitespace(html.charAt(i + 5)))) {
+                try {
+                    reader.skip(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                break;
+            }
+            i = html.indexOf('<', i + 1);
         }
+        return reader;
+    }
 
+    private static List<ListRow> parseListRows(Elements rows, LocalDateTime now) {
+        List<ListRow> posts = new ArrayList<>(rows.size());
+        for (Element row : rows) {
+            Element link = row.selectFirst(LIST_TITLE_LINK);
+            if (link == null) continue;
+
+            String href = link.attr("href");
+            String postId = postId(href);
+            if (postId == null) continue;
+            String title = link.text().trim();
+
+            // 获取作者信息
+            Elements tds = row.select(TD);
+            Author author = Author.UNKNOWN;
+            if (tds.size() > 1) {
+                Element authorLink = tds.get(1).selectFirst(LINK);
+                if (authorLink != null) {
+                    author = Author.of(authorLink.text().trim(), authorLink.attr("href"));
+                }
+            }
+
+            // 获取回复数（0 回复时为空）
+            Integer replyCount = null;
+            Element countEl = row.selectFirst(LIST_REPLY_COUNT);
+            if (countEl == null && tds.size() > 2) {
+                countEl = tds.get(2);
+            }
+            if (countEl != null) {
+                String countText = countEl.text().trim();
+                try {
+                    replyCount = countText.isEmpty() ? 0 : Integer.parseInt(countText);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+
+            // 获取最后回复时间
+            LocalDateTime updated = tds.size() > 3 ? parseListTime(tds.get(3).text(), now) : now;
+
+            posts.add(new ListRow(postId, title, href, author, updated, replyCount));
+        }
         return posts;
     }
 
-    public static Map<String, Object> parsePostDetail(Document doc) {
-        Map<String, Object> detail = new HashMap<>();
+    /**
+     * 流式解析帖子页，同样从 &lt;body&gt; 开始读。每条评论在闭合时解析并立即从树中移除，评论再多树上也只留正文和分页器，
+     * 脚本和样式同样闭合即移除；评论列表之后的分页器闭合时停止，不再解析页尾。
+     * 详情和总页数在剩下的这棵小树上按 {@link #parsePostDetail} 和 {@link #parseCommentTotalPages} 读取
+     */
+    public static TopicPage parseTopicPage(String html) {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(fromBody(html), "")) {
+            List<CommentRow> comments = new ArrayList<>(COMMENTS_PER_PAGE);
+            boolean commentsClosed = false;
+            int index = 0;
+            Iterator<Element> it = parser.iterator();
+            while (it.hasNext()) {
+                Element el = it.next();
+                if (el.is(COMMENT_ITEM)) {
+                    CommentRow comment = parseComment(el, index++);
+                    if (comment != null) {
+                        comments.add(comment);
+                    }
+                    el.remove();
+                } else if (el.is(SCRIPT_OR_STYLE)) {
+                    el.remove();
+                } else if (el.is(COMMENT_LIST)) {
+                    commentsClosed = true;
+                } else if (commentsClosed && el.is(PAGINATOR)) {
+                    parser.stop();
+                }
+            }
+            Document doc = parser.document();
+            return new TopicPage(parsePostDetail(doc), comments, parseCommentTotalPages(doc));
+        }
+    }
+
+    private static String postId(String href) {
+        Matcher matcher = POST_ID_PATTERN.matcher(href);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * 解析列表页的最后回复时间：当年的帖子显示为 "MM-dd HH:mm"，往年的显示为 "yyyy-MM-dd"。
+     * "MM-dd" 晚于当前时间时视为去年（跨年）。无法解析时返回 now。
+     * 按位置直接读取数字，不经过正则和 DateTimeFormatter
+     */
+    static LocalDateTime parseListTime(String text, LocalDateTime now) {
+        if (text == null || text.isBlank()) {
+            return now;
+        }
+        String value = text.trim();
+        try {
+            if (value.length() == 11 && value.charAt(2) == '-' && value.charAt(5) == ' ' && value.charAt(8) == ':') {
+                int month = digits(value, 0, 2);
+                int day = digits(value, 3, 2);
+                int hour = digits(value, 6, 2);
+                int minute = digits(value, 9, 2);
+                if ((month | day | hour | minute) >= 0) {
+                    LocalDateTime time = LocalDateTime.of(now.getYear(), month, day, hour, minute);
+                    return time.isAfter(now.plusDays(1)) ? time.minusYears(1) : time;
+                }
+            } else if (value.length() >= 10 && value.charAt(4) == '-' && value.charAt(7) == '-') {
+                int year = digits(value, 0, 4);
+                int month = digits(value, 5, 2);
+                int day = digits(value, 8, 2);
+                if (value.length() == 10 && (year | month | day) >= 0) {
+                    return LocalDateTime.of(year, month, day, 0, 0);
+                }
+                if (value.length() == 16 && value.charAt(10) == ' ' && value.charAt(13) == ':') {
+                    int hour = digits(value, 11, 2);
+                    int minute = digits(value, 14, 2);
+                    if ((year | month | day | hour | minute) >= 0) {
+                        return LocalDateTime.of(year, month, day, hour, minute);
+                    }
+                }
+            }
+        } catch (DateTimeException ignored) {
+            // 如 02-30 这样不存在的日期
+        }
+        return now;
+    }
+
+    /**
+     * 读取 [from, from + length) 的十进制数字，含有非数字时返回 -1
+     */
+    private static int digits(String text, int from, int length) {
+        int value = 0;
+        for (int i = from; i < from + length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
 
+    /**
+     * 解析 "yyyy-MM-dd HH:mm:ss" 格式的时间，没有或无法解析时返回 null
+     */
+    static LocalDateTime parseDateTime(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(text, DATETIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public static TopicDetail parsePostDetail(Document doc) {
         // 获取内容
-        Element contentEl = doc.selectFirst("div.topic-content");
+        Element contentEl = doc.selectFirst(TOPIC_CONTENT);
         String content = contentEl != null ? contentEl.text().trim() : "";
-        detail.put("content", content);
 
         // 获取图片列表
-        List<String> photos = new ArrayList<>();
-        Elements images = doc.select("div.topic-content img");
+        Elements images = doc.select(TOPIC_IMAGE);
+        List<String> photos = images.isEmpty() ? List.of() : new ArrayList<>(images.size());
         for (Element img : images) {
             String src = img.attr("src");
             if (!src.isEmpty()) {
                 photos.add(src);
             }
         }
-        detail.put("photos", photos);
 
         // 获取创建时间
-        Element timeEl = doc.selectFirst(".create-time");
-        String created = timeEl != null ? timeEl.text().trim() : "";
-        detail.put("created", created);
+        Element timeEl = doc.selectFirst(TOPIC_CREATE_TIME);
+        LocalDateTime created = timeEl != null ? parseDateTime(timeEl.text().trim()) : null;
+
+        return new TopicDetail(content, photos, created);
+    }
 
-        return detail;
+    /**
+     * 解析帖子评论的总页数：优先读取分页器的 data-total-page，其次取分页链接中最大的页码，没有分页器时为 1
+     */
+    public static int parseCommentTotalPages(Document doc) {
+        Element thisPage = doc.selectFirst(".paginator .thispage[data-total-page]");
+        if (thisPage != null) {
+            try {
+                return Math.max(1, Integer.parseInt(thisPage.attr("data-total-page").trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        int totalPages = 1;
+        for (Element el : doc.select(".paginator a, .paginator .thispage")) {
+            try {
+                totalPages = Math.max(totalPages, Integer.parseInt(el.text().trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return totalPages;
     }
 
-    public static List<Map<String, Object>> parseComments(Document doc) {
-        List<Map<String, Object>> comments = new ArrayList<>();
-        Elements commentItems = doc.select(".comment-item, .reply-item");
+    public static List<CommentRow> parseComments(Document doc) {
+        Elements commentItems = doc.select(COMMENT_ITEM);
+        List<CommentRow> comments = new ArrayList<>(commentItems.size());
 
         int index = 0;
         for (Element item : commentItems) {
-            // 获取评论ID
-            String commentId = "";
-            if (item.hasAttr("data-id")) {
-                commentId = item.attr("data-id");
-            } else {
-                Element link = item.selectFirst("a");
-                if (link != null) {
-                    String href = link.attr("href");
-                    Matcher matcher = COMMENT_ID_PATTERN.matcher(href);
-                    if (matcher.find()) {
-                        commentId = matcher.group(1);
-                    }
-                }
-            }
-            if (commentId.isEmpty()) {
-                commentId = "temp_" + System.currentTimeMillis() + "_" + index;
+            CommentRow comment = parseComment(item, index++);
+            if (comment != null) {
+                comments.add(comment);
             }
+        }
 
-            // 获取评论内容
-            Element contentEl = item.selectFirst(".reply-content, .comment-content, p");
-            String content = "";
-            if (contentEl != null) {
-                content = contentEl.text().trim();
-            }
-            if (content.isEmpty()) {
-                Elements divs = item.select("div").not(".author, .time");
-                content = divs.text().trim();
-            }
+        return comments;
+    }
 
-            // 获取作者信息
-            Element authorEl = item.selectFirst(".author, .comment-author, a[href*='/people/']");
-            String authorName = authorEl != null ? authorEl.text().trim() : "";
-            Element authorLink = item.selectFirst("a[href*='/people/']");
-            String authorHref = authorLink != null ? authorLink.attr("href") : "";
-
-            // 获取回复的评论ID
-            String replyToId = "";
-            Element replyLink = item.selectFirst("a[href*='#comment']");
-            if (replyLink != null) {
-                String href = replyLink.attr("href");
-                Matcher matcher = REPLY_TO_ID_PATTERN.matcher(href);
+    /**
+     * 解析一条评论，index 为它在本页中的序号，用于没有评论ID时生成临时ID。没有内容时返回 null
+     */
+    private static CommentRow parseComment(Element item, int index) {
+        // 获取评论ID
+        String commentId = "";
+        if (item.hasAttr("data-id")) {
+            commentId = item.attr("data-id");
+        } else {
+            Element link = item.selectFirst(LINK);
+            if (link != null) {
+                String href = link.attr("href");
+                Matcher matcher = COMMENT_ID_PATTERN.matcher(href);
                 if (matcher.find()) {
-                    replyToId = matcher.group(1);
+                    commentId = matcher.group(1);
                 }
             }
+        }
+        if (commentId.isEmpty()) {
+            commentId = "temp_" + System.currentTimeMillis() + "_" + index;
+        }
 
-            // 获取点赞数
-            int likeCount = 0;
-            Element likeEl = item.selectFirst(".like-count, .vote-count");
-            if (likeEl != null) {
-                String likeText = likeEl.text().trim();
-                try {
-                    likeCount = Integer.parseInt(likeText);
-                } catch (NumberFormatException ignored) {
-                }
-            }
+        // 获取评论内容
+        Element contentEl = item.selectFirst(COMMENT_CONTENT);
+        String content = "";
+        if (contentEl != null) {
+            content = contentEl.text().trim();
+        }
+        if (content.isEmpty()) {
+            Elements divs = item.select("div").not(".author, .time");
+            content = divs.text().trim();
+        }
+        if (content.isEmpty()) {
+            return null;
+        }
 
-            // 获取创建时间
-            Element timeEl = item.selectFirst(".time, .comment-time, .pubtime");
-            String created = timeEl != null ? timeEl.text().trim() : LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-
-            if (!content.isEmpty()) {
-                Map<String, Object> comment = new HashMap<>();
-                comment.put("id", commentId);
-                comment.put("content", content);
-                Map<String, String> author = new HashMap<>();
-                author.put("name", authorName);
-                author.put("alt", authorHref);
-                comment.put("author", author);
-                comment.put("reply_to_id", replyToId);
-                comment.put("like_count", likeCount);
-                comment.put("created", created);
-                comments.add(comment);
+        // 获取作者信息
+        Element authorEl = item.selectFirst(COMMENT_AUTHOR);
+        Element authorLink = item.selectFirst(PEOPLE_LINK);
+        Author author = Author.of(authorEl != null ? authorEl.text().trim() : "",
+                authorLink != null ? authorLink.attr("href") : "");
+
+        // 获取回复的评论ID
+        String replyToId = "";
+        Element replyLink = item.selectFirst(REPLY_LINK);
+        if (replyLink != null) {
+            Matcher matcher = REPLY_TO_ID_PATTERN.matcher(replyLink.attr("href"));
+            if (matcher.find()) {
+                replyToId = matcher.group(1);
             }
+        }
 
-            index++;
+        // 获取点赞数
+        int likeCount = 0;
+        Element likeEl = item.selectFirst(COMMENT_LIKES);
+        if (likeEl != null) {
+            try {
+                likeCount = Integer.parseInt(likeEl.text().trim());
+            } catch (NumberFormatException ignored) {
+            }
         }
 
-        return comments;
+        // 获取创建时间
+        Element timeEl = item.selectFirst(COMMENT_TIME);
+        LocalDateTime created = timeEl != null ? parseDateTime(timeEl.text().trim()) : null;
+
+        return new CommentRow(commentId, content, author, replyToId, likeCount, created);
     }
 }
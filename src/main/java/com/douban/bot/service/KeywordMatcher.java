@@ -0,0 +1,73 @@
+package com.douban.bot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 帖子关键词匹配规则，爬取新帖子和配置修改后的重新匹配（RematchService）共用。
+ * 关键词允许字符之间夹一个任意字符（"整租" 可匹配 "整-租"），正则在构造时编译一次，实例不可变、可并发使用
+ */
+public class KeywordMatcher {
+
+    private final List<String> keywords;
+    private final List<Pattern> patterns;
+    private final List<String> exclude;
+
+    public KeywordMatcher(List<String> keywords, List<String> exclude) {
+        this.keywords = keywords == null ? List.of() : keywords.stream()
+                .filter(k -> k != null && !k.trim().isEmpty())
+                .toList();
+        this.patterns = this.keywords.stream().map(KeywordMatcher::compile).toList();
+        this.exclude = exclude == null ? List.of() : exclude.stream()
+                .filter(e -> e != null && !e.isEmpty())
+                .toList();
+    }
+
+    /**
+     * 匹配结果。excluded 表示命中排除关键词（爬取时此类帖子不保存）
+     */
+    public record Result(boolean excluded, boolean matched, List<String> keywords) {}
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public boolean isExcluded(String title, String content) {
+        for (String e : exclude) {
+            if (title.contains(e) || content.contains(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Result match(String title, String content) {
+        title = title != null ? title : "";
+        content = content != null ? content : "";
+        if (isExcluded(title, content)) {
+            return new Result(true, false, List.of());
+        }
+        // 没有配置关键词时默认匹配所有帖子
+        if (patterns.isEmpty()) {
+            return new Result(false, true, List.of());
+        }
+        List<String> matched = new ArrayList<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern p = patterns.get(i);
+            if (p.matcher(title).find() || p.matcher(content).find()) {
+                matched.add(keywords.get(i));
+            }
+        }
+        return new Result(false, !matched.isEmpty(), matched);
+    }
+
+    /**
+     * 每个字符后允许夹一个任意字符。字符按字面量处理，关键词中的 "+"、"(" 等不会被当作正则语法
+     */
+    private static Pattern compile(String keyword) {
+        StringBuilder sb = new StringBuilder();
+        keyword.codePoints().forEach(cp -> sb.append(Pattern.quote(new String(Character.toChars(cp)))).append(".?"));
+        return Pattern.compile(sb.toString());
+    }
+}
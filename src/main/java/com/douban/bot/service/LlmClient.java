@@ -24,6 +24,7 @@ import java.util.List;
 public class LlmClient {
 
     private final AppConfig config;
+    private final CrawlMetrics metrics;
     private final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(60))
             .build();
@@ -67,6 +68,9 @@ public class LlmClient {
         request.setTemperature(useTemperature);
         request.setMaxTokens(useMaxTokens);
 
+        long start = System.nanoTime();
+        String outcome = "error";
+        ChatResponse.Usage usage = null;
         try {
             String jsonRequest = new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(request);
             String apiUrl = useApiBase.endsWith("/") 
@@ -91,6 +95,7 @@ public class LlmClient {
 
             ChatResponse chatResponse = new com.fasterxml.jackson.databind.ObjectMapper()
                     .readValue(response.body(), ChatResponse.class);
+            usage = chatResponse.getUsage();
 
             if (chatResponse.getError() != null && chatResponse.getError().getMessage() != null) {
                 throw new IOException("API错误: " + chatResponse.getError().getMessage());
@@ -100,10 +105,15 @@ public class LlmClient {
                 throw new IOException("未收到有效回复");
             }
 
+            outcome = "ok";
             return chatResponse.getChoices().get(0).getMessage().getContent();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IOException("请求被中断", e);
+        } finally {
+            metrics.recordLlm(useModel, outcome, System.nanoTime() - start,
+                    usage != null ? usage.getPromptTokens() : null,
+                    usage != null ? usage.getCompletionTokens() : null);
         }
     }
 
@@ -132,6 +142,7 @@ public class LlmClient {
     public static class ChatResponse {
         private List<Choice> choices;
         private Error error;
+        private Usage usage;
 
         @Data
         @NoArgsConstructor
@@ -141,6 +152,16 @@ public class LlmClient {
             private String finishReason;
         }
 
+        @Data
+        @NoArgsConstructor
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        public static class Usage {
+            @JsonProperty("prompt_tokens")
+            private Integer promptTokens;
+            @JsonProperty("completion_tokens")
+            private Integer completionTokens;
+        }
+
         @Data
         @NoArgsConstructor
         public static class Error {
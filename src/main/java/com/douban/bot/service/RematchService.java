@@ -0,0 +1,197 @@
+package com.douban.bot.service;
+
+import com.douban.bot.db.PostDao;
+import com.douban.bot.db.RepositoryService;
+import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.utils.JsonUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 爬虫配置的关键词修改后，按新规则重新匹配小组内已有的帖子。
+ * 帖子按 id 分批读取，每批在 ForkJoin 公共池中并行匹配，只批量写回 is_matched/keyword_list 有变化的行。
+ * dryRun 模式只统计影响范围不写库。同一小组同时只允许一个任务，进度按配置 id 记录
+ */
+@Slf4j
+@Service
+public class RematchService {
+
+    private static final int CHUNK_SIZE = 2000;
+
+    private final RepositoryService repository;
+    private final PostDao postDao;
+    // configId -> 最近一次任务的进度
+    private final Map<Long, Progress> progressByConfig = new ConcurrentHashMap<>();
+    // 正在运行的小组
+    private final Map<String, Long> runningGroups = new ConcurrentHashMap<>();
+
+    public RematchService(RepositoryService repository, Jdbi jdbi) {
+        this.repository = repository;
+        this.postDao = jdbi.onDemand(PostDao.class);
+    }
+
+    /**
+     * 任务进度，字段由执行线程更新、接口线程读取
+     */
+    public static class Progress {
+        private final long configId;
+        private final String groupId;
+        private final boolean dryRun;
+        private final long total;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong changed = new AtomicLong();
+        private final AtomicLong newlyMatched = new AtomicLong();
+        private final AtomicLong newlyUnmatched = new AtomicLong();
+        private final AtomicLong keywordsChanged = new AtomicLong();
+        private final AtomicLong excluded = new AtomicLong();
+        private final AtomicLong matchedAfter = new AtomicLong();
+        private volatile String status = "running";
+        private volatile String error;
+        private volatile LocalDateTime finishedAt;
+
+        Progress(long configId, String groupId, boolean dryRun, long total) {
+            this.configId = configId;
+            this.groupId = groupId;
+            this.dryRun = dryRun;
+            this.total = total;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("configId", configId);
+            map.put("groupId", groupId);
+            map.put("dryRun", dryRun);
+            map.put("status", status);
+            map.put("total", total);
+            map.put("scanned", scanned.get());
+            map.put("changed", changed.get());
+            map.put("newlyMatched", newlyMatched.get());
+            map.put("newlyUnmatched", newlyUnmatched.get());
+            map.put("keywordsChanged", keywordsChanged.get());
+            map.put("excluded", excluded.get());
+            map.put("matchedAfter", matchedAfter.get());
+            map.put("startedAt", startedAt);
+            map.put("finishedAt", finishedAt);
+            map.put("error", error);
+            map.put("percent", total > 0 ? Math.min(100, scanned.get() * 100 / total) : 100);
+            return map;
+        }
+    }
+
+    public Progress getProgress(long configId) {
+        return progressByConfig.get(configId);
+    }
+
+    /**
+     * 预览影响范围：同步执行完整的匹配但不写库
+     */
+    public Progress preview(CrawlerConfig config) {
+        Progress progress = newProgress(config, true);
+        run(config, progress);
+        return progress;
+    }
+
+    /**
+     * 在后台线程中重新匹配并写库。该小组已有任务在运行时返回 null
+     */
+    public Progress start(CrawlerConfig config) {
+        if (runningGroups.putIfAbsent(config.getGroupId(), config.getId()) != null) {
+            return null;
+        }
+        Progress progress = newProgress(config, false);
+        progressByConfig.put(config.getId(), progress);
+        Thread thread = new Thread(() -> {
+            try {
+                run(config, progress);
+            } finally {
+                runningGroups.remove(config.getGroupId());
+            }
+        }, "rematch-" + config.getGroupId());
+        thread.setDaemon(true);
+        thread.start();
+        return progress;
+    }
+
+    private Progress newProgress(CrawlerConfig config, boolean dryRun) {
+        return new Progress(config.getId(), config.getGroupId(), dryRun,
+                repository.getPostsCount(config.getGroupId(), null));
+    }
+
+    private void run(CrawlerConfig config, Progress progress) {
+        long startMs = System.currentTimeMillis();
+        KeywordMatcher matcher = new KeywordMatcher(config.getKeywords(), config.getExcludeKeywords());
+        log.info("开始重新匹配关键词: configId={}, groupId={}, dryRun={}, keywords={}",
+                config.getId(), config.getGroupId(), progress.dryRun, matcher.getKeywords());
+        try {
+            long afterId = 0;
+            while (true) {
+                List<PostDao.MatchSource> rows = postDao.findMatchSources(config.getGroupId(), afterId, CHUNK_SIZE);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<PostDao.MatchUpdate> updates = rows.parallelStream()
+                        .map(row -> evaluate(row, matcher, progress))
+                        .filter(Objects::nonNull)
+                        .toList();
+                if (!updates.isEmpty() && !progress.dryRun) {
+                    postDao.applyMatchUpdates(updates);
+                }
+                progress.scanned.addAndGet(rows.size());
+                progress.changed.addAndGet(updates.size());
+                afterId = rows.get(rows.size() - 1).id();
+            }
+            progress.status = "completed";
+            log.info("重新匹配关键词完成: configId={}, groupId={}, dryRun={}, scanned={}, changed={}, elapsedMs={}",
+                    config.getId(), config.getGroupId(), progress.dryRun, progress.scanned.get(),
+                    progress.changed.get(), System.currentTimeMillis() - startMs);
+        } catch (Exception e) {
+            progress.status = "failed";
+            progress.error = e.getMessage();
+            log.error("重新匹配关键词失败: configId={}, groupId={}", config.getId(), config.getGroupId(), e);
+        } finally {
+            progress.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * 匹配单个帖子，结果与库中一致时返回 null。命中排除关键词的已有帖子标记为未匹配，
+     * 标记为重复的帖子保留关键词但始终不匹配（与爬取时的处理一致）
+     */
+    private static PostDao.MatchUpdate evaluate(PostDao.MatchSource row, KeywordMatcher matcher, Progress progress) {
+        KeywordMatcher.Result result = matcher.match(row.title(), row.content());
+        boolean matched = result.matched() && !row.isDuplicate();
+        if (result.excluded()) {
+            progress.excluded.incrementAndGet();
+        }
+        if (matched) {
+            progress.matchedAfter.incrementAndGet();
+        }
+        String keywordList = JsonUtils.write(result.keywords(), "[]");
+        boolean matchChanged = matched != row.isMatched();
+        boolean keywordsChanged = !keywordList.equals(row.keywordList());
+        if (!matchChanged && !keywordsChanged) {
+            return null;
+        }
+        if (matchChanged) {
+            (matched ? progress.newlyMatched : progress.newlyUnmatched).incrementAndGet();
+        }
+        if (keywordsChanged) {
+            progress.keywordsChanged.incrementAndGet();
+        }
+        return new PostDao.MatchUpdate(row.id(), row.postId(), row.groupId(), row.created(), matched, keywordList);
+    }
+}
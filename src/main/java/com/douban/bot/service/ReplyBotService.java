@@ -26,6 +26,7 @@ public class ReplyBotService {
     private final Jdbi jdbi;
     private final AppConfig appConfig;
     private final DoubanApiService doubanApiService;
+    private final CrawlMetrics metrics;
     
     /**
      * 检查帖子是否已回复
@@ -35,6 +36,7 @@ public class ReplyBotService {
     }
 
     @Async
+    @SuppressWarnings("try")
     public void processNewPosts(String groupId) {
         log.info("开始处理自动回复检查: groupId={}", groupId);
         
@@ -50,7 +52,8 @@ public class ReplyBotService {
         }
         log.info("机器人已启用，继续处理: groupId={}", groupId);
 
-        try {
+        // 指标作用域只在块内生效，块内不直接引用
+        try (CrawlMetrics.Scope metricsScope = metrics.scope(groupId, "bot")) {
             Group group = repository.getGroupById(groupId);
             if (group == null) {
                 log.error("小组不存在: {}", groupId);
@@ -219,6 +222,7 @@ public class ReplyBotService {
      * 处理一个未回复的帖子（用于定时任务）
      */
     public void processOneUnrepliedPost(int cooldownSeconds) {
+        CrawlMetrics.Scope scope = null;
         try {
             // 从数据库读取机器人配置
             BotConfigDao.BotConfigRow botConfig = jdbi.withExtension(BotConfigDao.class, BotConfigDao::findById);
@@ -231,14 +235,15 @@ public class ReplyBotService {
                 return;
             }
             
-            // 获取一个未回复的帖子（带冷却时间，避免频繁重试）
-            Post post = repository.getOneUnrepliedPost(cooldownSeconds);
+            // 获取一个到了重试时间的未回复帖子（失败后按 cooldownSeconds 推迟下次尝试，避免频繁重试）
+            Post post = repository.getOneUnrepliedPost();
             if (post == null) {
                 log.debug("没有需要回复的帖子");
                 return;
             }
             
             log.info("找到未回复的帖子，开始处理: postId={}, title={}", post.getPostId(), post.getTitle());
+            scope = metrics.scope(post.getGroupId(), "bot");
             
             // 获取小组信息
             Group group = repository.getGroupById(post.getGroupId());
@@ -257,6 +262,7 @@ public class ReplyBotService {
                 post.setBotReplied(false);
                 post.setBotReplyContent("不符合回复条件");
                 post.setBotReplyAt(LocalDateTime.now());
+                post.setNextAttemptAt(post.getBotReplyAt().plusSeconds(cooldownSeconds));
                 repository.updatePostBotReply(post);
                 return;
             }
@@ -307,6 +313,7 @@ public class ReplyBotService {
             post.setBotReplied(commentSent);
             post.setBotReplyContent(reply);
             post.setBotReplyAt(LocalDateTime.now());
+            post.setNextAttemptAt(post.getBotReplyAt().plusSeconds(cooldownSeconds));
             repository.updatePostBotReply(post);
             if (commentSent) {
                 log.info("已保存回复到数据库: postId={}, 已发送到豆瓣=true", post.getPostId());
@@ -318,6 +325,10 @@ public class ReplyBotService {
             
         } catch (Exception e) {
             log.error("处理未回复帖子失败: {}", e.getMessage(), e);
+        } finally {
+            if (scope != null) {
+                scope.close();
+            }
         }
     }
     
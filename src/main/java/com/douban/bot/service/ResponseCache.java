@@ -0,0 +1,157 @@
+package com.douban.bot.service;
+
+import com.douban.bot.config.AppConfig;
+import com.douban.bot.utils.HttpUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 页面响应的短期缓存，按 URL 和会话（Cookie）区分。同一页面在有效期内（默认 30 秒）只请求一次，
+ * 同时发起的相同请求共用一个进行中的请求。只缓存正常的 200 页面，反爬页面、限流和错误响应不缓存。
+ * 每次因此省下的请求记入 douban.fetch.deduplicated（reason 为 hit/coalesced）
+ */
+@Component
+public class ResponseCache {
+
+    private static final int MAX_ENTRIES = 200;
+
+    private final CrawlMetrics metrics;
+    private final Cache<Key, CompletableFuture<Entry>> cache;
+    private final boolean enabled;
+
+    public ResponseCache(AppConfig config, CrawlMetrics metrics) {
+        this.metrics = metrics;
+        int ttlSeconds = config.getResponseCacheTtlSeconds() != null ? config.getResponseCacheTtlSeconds() : 30;
+        this.enabled = ttlSeconds > 0;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(MAX_ENTRIES)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .build();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        HttpUtils.GetResponse load() throws IOException;
+    }
+
+    /**
+     * 一次取页结果。verdict 为 {@link BlockedPageDetector} 对页面内容的判断；
+     * shared 为 true 表示没有发出请求，来自缓存或其他线程进行中的请求
+     */
+    public record Result(HttpUtils.GetResponse response, BlockedPageDetector.Verdict verdict, boolean shared) {}
+
+    private record Key(String url, String session) {}
+
+    private record Entry(HttpUtils.GetResponse response, BlockedPageDetector.Verdict verdict) {
+
+        /**
+         * 正常的 200 页面，只有这类结果会被缓存
+         */
+        boolean cacheable() {
+            return response.statusCode == 200 && verdict == BlockedPageDetector.Verdict.OK;
+        }
+    }
+
+    /**
+     * 有效期内的相同请求直接返回缓存，有相同请求进行中时等待它的结果，否则由 loader 发出请求
+     */
+    public Result fetch(String url, String session, String type, Loader loader) throws IOException {
+        if (!enabled) {
+            return load(loader);
+        }
+        Key key = new Key(url, session != null ? session : "");
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = cache.asMap().putIfAbsent(key, future);
+        if (existing != null) {
+            boolean done = existing.isDone();
+            Entry entry = await(existing);
+            if (entry != null) {
+                metrics.recordDeduplicated(type, done ? "hit" : "coalesced");
+                return new Result(entry.response(), entry.verdict(), true);
+            }
+            // 共用的请求失败或结果不可缓存，自己重新请求一次
+            return load(loader);
+        }
+        return complete(key, future, loader);
+    }
+
+    /**
+     * 不读缓存，直接请求并用结果替换缓存。用于需要看到最新内容的请求，如发送评论后的验证
+     */
+    public Result refresh(String url, String session, Loader loader) throws IOException {
+        if (!enabled) {
+            return load(loader);
+        }
+        Key key = new Key(url, session != null ? session : "");
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        cache.put(key, future);
+        return complete(key, future, loader);
+    }
+
+    /**
+     * 有效期内已有该页面，或相同请求正在进行
+     */
+    public boolean contains(String url, String session) {
+        return enabled && cache.getIfPresent(new Key(url, session != null ? session : "")) != null;
+    }
+
+    /**
+     * 页面内容已被自己修改（如发送了评论），丢弃该 URL 所有会话的缓存
+     */
+    public void invalidate(String url) {
+        cache.asMap().keySet().removeIf(key -> key.url().equals(url));
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private Result complete(Key key, CompletableFuture<Entry> future, Loader loader) throws IOException {
+        Entry entry;
+        try {
+            entry = toEntry(loader.load());
+        } catch (IOException | RuntimeException e) {
+            cache.asMap().remove(key, future);
+            future.complete(null);
+            throw e;
+        }
+        if (!entry.cacheable()) {
+            cache.asMap().remove(key, future);
+            future.complete(null);
+        } else {
+            future.complete(entry);
+        }
+        return new Result(entry.response(), entry.verdict(), false);
+    }
+
+    private static Result load(Loader loader) throws IOException {
+        Entry entry = toEntry(loader.load());
+        return new Result(entry.response(), entry.verdict(), false);
+    }
+
+    private static Entry toEntry(HttpUtils.GetResponse response) {
+        // 只有 200 响应需要看内容，限流和错误响应不缓存
+        return new Entry(response, response.statusCode == 200
+                ? BlockedPageDetector.detect(response.body) : BlockedPageDetector.Verdict.OK);
+    }
+
+    /**
+     * 等待进行中的请求，失败或被中断时返回 null
+     */
+    private static Entry await(CompletableFuture<Entry> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+}
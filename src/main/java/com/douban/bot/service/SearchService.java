@@ -0,0 +1,266 @@
+package com.douban.bot.service;
+
+import com.douban.bot.db.SearchDao;
+import com.douban.bot.utils.SearchTokenizer;
+import com.douban.bot.utils.TimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 帖子/评论全文检索。索引在帖子和评论写入时同步维护（见 PostDao/CommentDao），
+ * 启动时如果发现索引与数据不一致（旧数据库升级）会在后台重建
+ */
+@Slf4j
+@Service
+public class SearchService {
+
+    public static final String TYPE_POST = "post";
+    public static final String TYPE_COMMENT = "comment";
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    // 摘要长度（字符数），命中位置前保留的上下文长度
+    private static final int SNIPPET_LENGTH = 120;
+    private static final int SNIPPET_CONTEXT = 30;
+
+    private final Jdbi jdbi;
+    private final SearchDao searchDao;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    public SearchService(Jdbi jdbi) {
+        this.jdbi = jdbi;
+        this.searchDao = jdbi.onDemand(SearchDao.class);
+    }
+
+    public record SearchResult(List<Map<String, Object>> items, int total) {}
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    /**
+     * 搜索帖子，按相关度排序。query 中没有可检索字符时返回空结果
+     */
+    public SearchResult searchPosts(String query, String groupId, String createdFrom, String createdTo,
+                                    String isMatched, int page, int pageSize) {
+        String match = SearchTokenizer.matchQuery(query);
+        if (match == null) {
+            return new SearchResult(List.of(), 0);
+        }
+        List<String> terms = SearchTokenizer.terms(query);
+        int offset = (page - 1) * pageSize;
+        List<Map<String, Object>> items = new ArrayList<>();
+        Long fromMillis = TimeUtils.parseEpochMillis(createdFrom);
+        Long toMillis = TimeUtils.parseEpochMillis(createdTo);
+        for (SearchDao.PostHit hit : searchDao.searchPosts(match, groupId, fromMillis, toMillis, isMatched, pageSize, offset)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("type", TYPE_POST);
+            item.put("postId", hit.postId());
+            item.put("groupId", hit.groupId());
+            item.put("title", hit.title());
+            item.put("alt", hit.alt());
+            item.put("isMatched", hit.isMatched());
+            item.put("botReplied", hit.botReplied());
+            item.put("created", TimeUtils.formatEpochMillis(hit.created()));
+            item.put("score", -hit.score());
+            item.put("titleHighlight", highlight(hit.title(), terms, Integer.MAX_VALUE));
+            item.put("snippet", highlight(hit.content(), terms, SNIPPET_LENGTH));
+            items.add(item);
+        }
+        int total = searchDao.countPosts(match, groupId, fromMillis, toMillis, isMatched);
+        return new SearchResult(items, total);
+    }
+
+    /**
+     * 搜索评论，按相关度排序
+     */
+    public SearchResult searchComments(String query, String groupId, String postId, String createdFrom, String createdTo,
+                                       int page, int pageSize) {
+        String match = SearchTokenizer.matchQuery(query);
+        if (match == null) {
+            return new SearchResult(List.of(), 0);
+        }
+        List<String> terms = SearchTokenizer.terms(query);
+        int offset = (page - 1) * pageSize;
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (SearchDao.CommentHit hit : searchDao.searchComments(match, groupId, postId, createdFrom, createdTo, pageSize, offset)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("type", TYPE_COMMENT);
+            item.put("commentId", hit.commentId());
+            item.put("postId", hit.postId());
+            item.put("groupId", hit.groupId());
+            item.put("created", hit.created());
+            item.put("score", -hit.score());
+            item.put("snippet", highlight(hit.content(), terms, SNIPPET_LENGTH));
+            items.add(item);
+        }
+        int total = searchDao.countComments(match, groupId, postId, createdFrom, createdTo);
+        return new SearchResult(items, total);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIndexIfNeeded() {
+        Thread thread = new Thread(() -> {
+            try {
+                rebuildIndex(false);
+            } catch (Exception e) {
+                log.error("重建全文索引失败", e);
+            }
+        }, "search-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 重建全文索引。force 为 false 时只重建行数与源表不一致的索引；返回 false 表示已有重建任务在运行
+     */
+    public boolean rebuildIndex(boolean force) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            if (force || !searchDao.isPostIndexComplete()) {
+                rebuildPostIndex();
+            }
+            if (force || !searchDao.isCommentIndexComplete()) {
+                rebuildCommentIndex();
+            }
+            return true;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuildPostIndex() {
+        long startMs = System.currentTimeMillis();
+        log.info("开始重建帖子全文索引");
+        // 先清空再在同一事务中读最大 id，期间提交的新帖子要么在该 id 之内，要么由写入路径建好索引
+        long maxId = jdbi.inTransaction(handle -> {
+            SearchDao dao = handle.attach(SearchDao.class);
+            dao.clearPostIndex();
+            return dao.maxPostId();
+        });
+        long afterId = 0;
+        int total = 0;
+        while (true) {
+            List<SearchDao.IndexSource> rows = searchDao.findPostsForIndex(afterId, maxId, REBUILD_BATCH_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<Long> ids = new ArrayList<>(rows.size());
+            List<String> titles = new ArrayList<>(rows.size());
+            List<String> contents = new ArrayList<>(rows.size());
+            for (SearchDao.IndexSource row : rows) {
+                ids.add(row.id());
+                titles.add(SearchTokenizer.indexText(row.title()));
+                contents.add(SearchTokenizer.indexText(row.content()));
+            }
+            jdbi.useTransaction(handle -> handle.attach(SearchDao.class).insertPostIndex(ids, titles, contents));
+            afterId = rows.get(rows.size() - 1).id();
+            total += rows.size();
+        }
+        log.info("帖子全文索引重建完成: rows={}, elapsedMs={}", total, System.currentTimeMillis() - startMs);
+    }
+
+    private void rebuildCommentIndex() {
+        long startMs = System.currentTimeMillis();
+        log.info("开始重建评论全文索引");
+        long maxId = jdbi.inTransaction(handle -> {
+            SearchDao dao = handle.attach(SearchDao.class);
+            dao.clearCommentIndex();
+            return dao.maxCommentId();
+        });
+        long afterId = 0;
+        int total = 0;
+        while (true) {
+            List<SearchDao.IndexSource> rows = searchDao.findCommentsForIndex(afterId, maxId, REBUILD_BATCH_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<Long> ids = new ArrayList<>(rows.size());
+            List<String> contents = new ArrayList<>(rows.size());
+            for (SearchDao.IndexSource row : rows) {
+                ids.add(row.id());
+                contents.add(SearchTokenizer.indexText(row.content()));
+            }
+            jdbi.useTransaction(handle -> handle.attach(SearchDao.class).insertCommentIndex(ids, contents));
+            afterId = rows.get(rows.size() - 1).id();
+            total += rows.size();
+        }
+        log.info("评论全文索引重建完成: rows={}, elapsedMs={}", total, System.currentTimeMillis() - startMs);
+    }
+
+    /**
+     * 在原文上高亮关键词（FTS5 的 highlight/snippet 只能作用于切分后的索引文本）。
+     * 结果已做 HTML 转义，命中部分用 &lt;mark&gt; 包裹；maxLength 限制时截取第一个命中位置附近的片段
+     */
+    static String highlight(String text, List<String> terms, int maxLength) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        boolean[] marked = new boolean[text.length()];
+        int firstHit = -1;
+        for (String term : terms) {
+            int from = 0;
+            int index;
+            while (!term.isEmpty() && (index = lower.indexOf(term, from)) >= 0) {
+                for (int i = index; i < index + term.length(); i++) {
+                    marked[i] = true;
+                }
+                if (firstHit < 0 || index < firstHit) {
+                    firstHit = index;
+                }
+                from = index + term.length();
+            }
+        }
+
+        int start = 0;
+        int end = text.length();
+        if (text.length() > maxLength) {
+            start = firstHit > SNIPPET_CONTEXT ? firstHit - SNIPPET_CONTEXT : 0;
+            end = Math.min(text.length(), start + maxLength);
+            start = Math.max(0, Math.min(start, end - maxLength));
+        }
+
+        StringBuilder sb = new StringBuilder(end - start + 32);
+        if (start > 0) {
+            sb.append("…");
+        }
+        boolean open = false;
+        for (int i = start; i < end; i++) {
+            if (marked[i] != open) {
+                sb.append(open ? "</mark>" : "<mark>");
+                open = marked[i];
+            }
+            appendEscaped(sb, text.charAt(i));
+        }
+        if (open) {
+            sb.append("</mark>");
+        }
+        if (end < text.length()) {
+            sb.append("…");
+        }
+        return sb.toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, char c) {
+        switch (c) {
+            case '<' -> sb.append("&lt;");
+            case '>' -> sb.append("&gt;");
+            case '&' -> sb.append("&amp;");
+            case '"' -> sb.append("&quot;");
+            case '\'' -> sb.append("&#39;");
+            default -> sb.append(c);
+        }
+    }
+}
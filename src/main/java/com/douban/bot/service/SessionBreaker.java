@@ -0,0 +1,226 @@
+package com.douban.bot.service;
+
+import com.douban.bot.config.AppConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按主机和会话（Cookie）区分的熔断器。最近 {@value #WINDOW} 个请求中被拦截（403/429/反爬页面）的比例
+ * 达到 crawler-breaker-block-rate 时熔断，暂停该会话的所有请求；等待结束后只放行一个探测请求，
+ * 探测正常则恢复，仍被拦截则等待时间加倍（最长 crawler-breaker-max-seconds）。
+ * 需要等待的时间超过 crawler-breaker-max-wait-seconds 时不再等待，抛出 {@link OpenException}
+ */
+@Slf4j
+@Component
+public class SessionBreaker {
+
+    static final int WINDOW = 20;
+    static final int MIN_SAMPLES = 5;
+
+    public enum Signal {
+        // 正常响应
+        OK,
+        // 403/429 或反爬页面
+        BLOCKED,
+        // 网络错误或服务端错误，不计入拦截率
+        NEUTRAL
+    }
+
+    private enum Mode { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * 会话处于熔断中且剩余等待时间过长
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private record Key(String host, String session) {}
+
+    private static final class State {
+        final boolean[] window = new boolean[WINDOW];
+        int size;
+        int next;
+        int blocked;
+        Mode mode = Mode.CLOSED;
+        long openUntil;
+        long backoffMs;
+        boolean probing;
+
+        void add(boolean isBlocked) {
+            if (size == WINDOW) {
+                if (window[next]) {
+                    blocked--;
+                }
+            } else {
+                size++;
+            }
+            window[next] = isBlocked;
+            if (isBlocked) {
+                blocked++;
+            }
+            next = (next + 1) % WINDOW;
+        }
+
+        void reset() {
+            size = 0;
+            next = 0;
+            blocked = 0;
+        }
+    }
+
+    private final AppConfig config;
+    private final CrawlMetrics metrics;
+    private final Map<Key, State> states = new ConcurrentHashMap<>();
+
+    public SessionBreaker(AppConfig config, CrawlMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 发出请求前调用：未熔断时直接返回；熔断中时等待到可以探测，同一时间只有一个线程发出探测请求，
+     * 其他线程等待探测结果。等待探测结果同样受 crawler-breaker-max-wait-seconds 限制
+     */
+    public void acquire(String url, String session) throws OpenException {
+        Key key = key(url, session);
+        State state = states.computeIfAbsent(key, k -> new State());
+        long deadline = System.currentTimeMillis() + maxWaitMs();
+        while (true) {
+            long waitMs;
+            long until;
+            synchronized (state) {
+                if (state.mode == Mode.CLOSED) {
+                    return;
+                }
+                if (state.mode == Mode.HALF_OPEN) {
+                    if (!state.probing) {
+                        state.probing = true;
+                        return;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new OpenException("等待熔断探测结果超时: host=" + key.host());
+                    }
+                    try {
+                        state.wait(Math.min(remaining, 1000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new OpenException("等待熔断探测时被中断: host=" + key.host());
+                    }
+                    continue;
+                }
+                until = state.openUntil;
+                waitMs = until - System.currentTimeMillis();
+                if (waitMs > maxWaitMs()) {
+                    throw new OpenException("会话已熔断，" + (waitMs / 1000) + " 秒后再试: host=" + key.host());
+                }
+            }
+            if (waitMs > 0) {
+                metrics.sleep((int) waitMs, (int) waitMs);
+            }
+            synchronized (state) {
+                // 等待期间没有其他线程改变状态时，由本线程发出探测请求
+                if (state.mode == Mode.OPEN && state.openUntil == until) {
+                    state.mode = Mode.HALF_OPEN;
+                    state.probing = true;
+                    metrics.recordBreaker(key.host(), "half_open");
+                    log.info("熔断等待结束，发送探测请求: host={}, session={}", key.host(), fingerprint(key.session()));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录一次实际发出的请求的结果
+     */
+    public void record(String url, String session, Signal signal) {
+        Key key = key(url, session);
+        State state = states.computeIfAbsent(key, k -> new State());
+        synchronized (state) {
+            if (state.mode == Mode.HALF_OPEN && state.probing) {
+                state.probing = false;
+                if (signal == Signal.BLOCKED) {
+                    open(key, state, Math.min(state.backoffMs * 2, maxBackoffMs()));
+                } else if (signal == Signal.OK) {
+                    state.mode = Mode.CLOSED;
+                    state.backoffMs = 0;
+                    state.reset();
+                    metrics.recordBreaker(key.host(), "closed");
+                    log.info("探测请求正常，会话恢复: host={}, session={}", key.host(), fingerprint(key.session()));
+                }
+                state.notifyAll();
+                return;
+            }
+            // 熔断前已发出的请求结果不再计入
+            if (state.mode != Mode.CLOSED || signal == Signal.NEUTRAL) {
+                return;
+            }
+            state.add(signal == Signal.BLOCKED);
+            double blockRate = config.getCrawlerBreakerBlockRate() != null ? config.getCrawlerBreakerBlockRate() : 0.5;
+            if (state.size >= MIN_SAMPLES && state.blocked >= blockRate * state.size) {
+                log.warn("最近 {} 个请求中 {} 个被拦截，会话熔断: host={}, session={}",
+                        state.size, state.blocked, key.host(), fingerprint(key.session()));
+                open(key, state, baseBackoffMs());
+            }
+        }
+    }
+
+    public boolean isOpen(String url, String session) {
+        State state = states.get(key(url, session));
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.mode != Mode.CLOSED;
+        }
+    }
+
+    private void open(Key key, State state, long backoffMs) {
+        state.mode = Mode.OPEN;
+        state.backoffMs = backoffMs;
+        state.openUntil = System.currentTimeMillis() + backoffMs;
+        state.reset();
+        metrics.recordBreaker(key.host(), "open");
+        log.warn("会话暂停 {} 秒: host={}, session={}", backoffMs / 1000, key.host(), fingerprint(key.session()));
+    }
+
+    private long baseBackoffMs() {
+        return (config.getCrawlerBreakerBaseSeconds() != null ? config.getCrawlerBreakerBaseSeconds() : 60) * 1000L;
+    }
+
+    private long maxBackoffMs() {
+        return (config.getCrawlerBreakerMaxSeconds() != null ? config.getCrawlerBreakerMaxSeconds() : 1800) * 1000L;
+    }
+
+    private long maxWaitMs() {
+        return (config.getCrawlerBreakerMaxWaitSeconds() != null ? config.getCrawlerBreakerMaxWaitSeconds() : 300) * 1000L;
+    }
+
+    private static Key key(String url, String session) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            host = null;
+        }
+        return new Key(host != null ? host : url, session != null ? session : "");
+    }
+
+    /**
+     * 日志中只输出 Cookie 的摘要
+     */
+    private static String fingerprint(String session) {
+        return session.isEmpty() ? "-" : Integer.toHexString(session.hashCode());
+    }
+}
@@ -18,6 +18,8 @@ import java.util.Random;
 public class HttpUtils {
 
     private static final Random random = new Random();
+    // 请求间等待时间的倍数，对接本地模拟服务做压测时设为 0
+    private static volatile double delayScale = 1.0;
     
     public static CloseableHttpClient createHttpClient() {
         return HttpClients.createDefault();
@@ -34,6 +36,10 @@ public class HttpUtils {
         return USER_AGENTS.get(random.nextInt(USER_AGENTS.size()));
     }
 
+    public static void setDelayScale(double scale) {
+        delayScale = Math.max(0, scale);
+    }
+
     public static void randomSleep(int minMs, int maxMs) {
         if (maxMs <= minMs) {
             sleep(minMs);
@@ -44,8 +50,12 @@ public class HttpUtils {
     }
 
     private static void sleep(int ms) {
+        long scaled = Math.round(ms * delayScale);
+        if (scaled <= 0) {
+            return;
+        }
         try {
-            Thread.sleep(ms);
+            Thread.sleep(scaled);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -0,0 +1,68 @@
+package com.douban.bot.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数据库 JSON 列（author_info、photo_list、keyword_list 等）的编解码。
+ * ObjectReader/ObjectWriter 预先构建并复用，避免每行都创建 TypeReference 和查找反序列化器
+ */
+public final class JsonUtils {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, Object>>() {});
+    private static final ObjectReader STRING_LIST_READER = MAPPER.readerFor(new TypeReference<List<String>>() {});
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
+    private JsonUtils() {
+    }
+
+    /**
+     * 解析 JSON 对象，null/空串/"{}" 直接返回不可变的空 Map
+     */
+    public static Map<String, Object> readMap(String json) {
+        if (json == null || json.isEmpty() || json.equals("{}")) {
+            return Map.of();
+        }
+        try {
+            return MAP_READER.readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Error decoding JSON object column", e);
+        }
+    }
+
+    /**
+     * 解析字符串数组，null/空串/"[]" 直接返回不可变的空 List
+     */
+    public static List<String> readStringList(String json) {
+        if (json == null || json.isEmpty() || json.equals("[]")) {
+            return List.of();
+        }
+        try {
+            return STRING_LIST_READER.readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Error decoding JSON array column", e);
+        }
+    }
+
+    /**
+     * 序列化为 JSON，value 为 null 时返回 emptyJson
+     */
+    public static String write(Object value, String emptyJson) {
+        if (value == null) {
+            return emptyJson;
+        }
+        try {
+            return WRITER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Error encoding JSON column", e);
+        }
+    }
+}
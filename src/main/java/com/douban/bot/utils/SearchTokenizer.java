@@ -0,0 +1,142 @@
+package com.douban.bot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 全文索引的分词：FTS5 自带的 unicode61 分词器会把连续的汉字当成一个词，无法按子串检索，
+ * 所以写入索引前在 Java 端把中日韩文字切成重叠的二元组（bigram），其它文字按字母数字连续段切分，
+ * 再以空格拼接交给 unicode61。查询时用同样的规则把关键词转换成短语查询。
+ *
+ * <p>例如 "整租一居室" 索引为 "整租 租一 一居 居室 室"（末尾单字保证单字查询也能按前缀命中），
+ * 查询 "一居" 转换为短语 "一居"，查询 "猫" 转换为前缀查询 "猫"*</p>
+ */
+public final class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 把原文转换为写入 FTS5 的文本
+     */
+    public static String indexText(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length() * 3);
+        for (Run run : runs(text)) {
+            if (run.cjk()) {
+                int[] cps = run.text().codePoints().toArray();
+                for (int i = 0; i + 1 < cps.length; i++) {
+                    append(sb, new String(cps, i, 2));
+                }
+                append(sb, new String(cps, cps.length - 1, 1));
+            } else {
+                append(sb, run.text());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把用户输入转换为 FTS5 MATCH 表达式，多个关键词（空白分隔）之间为 AND 关系。
+     * 输入中没有任何可检索的字符时返回 null
+     */
+    public static String matchQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        List<String> phrases = new ArrayList<>();
+        for (String term : terms(query)) {
+            List<Run> runs = runs(term);
+            if (runs.isEmpty()) {
+                continue;
+            }
+            StringBuilder phrase = new StringBuilder();
+            for (int r = 0; r < runs.size(); r++) {
+                Run run = runs.get(r);
+                if (!run.cjk()) {
+                    append(phrase, run.text());
+                    continue;
+                }
+                int[] cps = run.text().codePoints().toArray();
+                for (int i = 0; i + 1 < cps.length; i++) {
+                    append(phrase, new String(cps, i, 2));
+                }
+                // 中间的汉字段与索引一致带上段尾单字；最后一段在原文中可能还有后续汉字，只保留二元组
+                if (r < runs.size() - 1 || cps.length == 1) {
+                    append(phrase, new String(cps, cps.length - 1, 1));
+                }
+            }
+            // 单个汉字或字母数字结尾的关键词按前缀匹配（单字只出现在二元组的开头或段尾）
+            Run last = runs.get(runs.size() - 1);
+            boolean prefix = !last.cjk() || last.text().codePointCount(0, last.text().length()) == 1;
+            // 分词结果只包含字母、数字和中日韩文字，放进双引号里不需要转义
+            phrases.add("\"" + phrase + "\"" + (prefix ? "*" : ""));
+        }
+        return phrases.isEmpty() ? null : String.join(" AND ", phrases);
+    }
+
+    /**
+     * 按空白切分出的原始关键词（小写），用于结果高亮
+     */
+    public static List<String> terms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+        for (String part : query.trim().split("\\s+")) {
+            if (!part.isEmpty()) {
+                terms.add(part.toLowerCase(Locale.ROOT));
+            }
+        }
+        return terms;
+    }
+
+    private record Run(String text, boolean cjk) {}
+
+    /**
+     * 把文本切成连续的中日韩文字段和字母数字段，其它字符（标点、空白等）作为分隔符丢弃
+     */
+    private static List<Run> runs(String text) {
+        List<Run> runs = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean currentCjk = false;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            boolean cjk = isCjk(cp);
+            boolean word = cjk || Character.isLetterOrDigit(cp);
+            if (!word || (!current.isEmpty() && cjk != currentCjk)) {
+                if (!current.isEmpty()) {
+                    runs.add(new Run(current.toString(), currentCjk));
+                    current.setLength(0);
+                }
+            }
+            if (word) {
+                current.appendCodePoint(cjk ? cp : Character.toLowerCase(cp));
+                currentCjk = cjk;
+            }
+        }
+        if (!current.isEmpty()) {
+            runs.add(new Run(current.toString(), currentCjk));
+        }
+        return runs;
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static void append(StringBuilder sb, String token) {
+        if (!sb.isEmpty()) {
+            sb.append(' ');
+        }
+        sb.append(token);
+    }
+}
@@ -0,0 +1,103 @@
+package com.douban.bot.utils;
+
+import java.text.Normalizer;
+
+/**
+ * 帖子近似重复检测用的 64 位 SimHash。
+ * 标题和正文经过归一化（NFKC、转小写、去掉空白和标点）后取字符 3-gram 作为特征，标题特征权重加倍。
+ * 指纹按 16 位分成 {@link #BANDS} 段：海明距离不超过 BANDS - 1 的两个指纹至少有一段完全相同，
+ * 因此按段精确查找即可找到全部候选（见 PostSimhashBand 表）
+ */
+public final class SimHash {
+
+    public static final int BANDS = 4;
+    public static final int BAND_BITS = 16;
+    // 按分段查找能保证不漏掉的最大海明距离
+    public static final int MAX_DISTANCE = BANDS - 1;
+
+    private static final int SHINGLE = 3;
+    private static final int TITLE_WEIGHT = 2;
+    // 归一化后少于该长度的文本不计算指纹（特征太少，误判率高）
+    private static final int MIN_LENGTH = 8;
+
+    private SimHash() {
+    }
+
+    /**
+     * 计算指纹，文本过短时返回 0（表示没有指纹，不参与重复检测）
+     */
+    public static long fingerprint(String title, String content) {
+        String normalizedTitle = normalize(title);
+        String normalizedContent = normalize(content);
+        if (normalizedTitle.length() + normalizedContent.length() < MIN_LENGTH) {
+            return 0;
+        }
+        int[] weights = new int[64];
+        addShingles(weights, normalizedTitle, TITLE_WEIGHT);
+        addShingles(weights, normalizedContent, 1);
+        long fingerprint = 0;
+        for (int i = 0; i < 64; i++) {
+            if (weights[i] > 0) {
+                fingerprint |= 1L << i;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    public static int band(long fingerprint, int index) {
+        return (int) ((fingerprint >>> (index * BAND_BITS)) & ((1 << BAND_BITS) - 1));
+    }
+
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        normalized.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .map(Character::toLowerCase)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    private static void addShingles(int[] weights, String text, int weight) {
+        if (text.isEmpty()) {
+            return;
+        }
+        if (text.length() <= SHINGLE) {
+            addFeature(weights, hash(text, 0, text.length()), weight);
+            return;
+        }
+        for (int i = 0; i + SHINGLE <= text.length(); i++) {
+            addFeature(weights, hash(text, i, i + SHINGLE), weight);
+        }
+    }
+
+    private static void addFeature(int[] weights, long hash, int weight) {
+        for (int i = 0; i < 64; i++) {
+            weights[i] += ((hash >>> i) & 1) != 0 ? weight : -weight;
+        }
+    }
+
+    /**
+     * 64 位 FNV-1a，再做一次 murmur3 的 fmix64 让各位分布更均匀
+     */
+    private static long hash(String text, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e7f4a7c15L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
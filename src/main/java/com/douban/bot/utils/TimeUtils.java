@@ -0,0 +1,44 @@
+package com.douban.bot.utils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 数据库中的帖子时间以 epoch 毫秒（INTEGER）保存，这里负责与 LocalDateTime/文本格式互相转换。
+ * 与原先的文本时间一致，按系统默认时区解释本地时间；0 表示没有值
+ */
+public final class TimeUtils {
+
+    public static final DateTimeFormatter DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private TimeUtils() {
+    }
+
+    public static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+
+    public static LocalDateTime fromEpochMillis(long millis) {
+        return millis > 0 ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()) : null;
+    }
+
+    /**
+     * 解析 yyyy-MM-dd HH:mm:ss 文本为 epoch 毫秒，空值返回 null（用于可选的查询条件）
+     */
+    public static Long parseEpochMillis(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        return toEpochMillis(LocalDateTime.parse(text, DATETIME_FORMAT));
+    }
+
+    /**
+     * 格式化为 yyyy-MM-dd HH:mm:ss，0 返回 null（用于导出等需要文本时间的场景）
+     */
+    public static String formatEpochMillis(long millis) {
+        LocalDateTime time = fromEpochMillis(millis);
+        return time != null ? time.format(DATETIME_FORMAT) : null;
+    }
+}
@@ -151,7 +151,9 @@ async function loadPosts() {
         const params = new URLSearchParams({
             group_id: currentGroupId || '',
             page: currentPage.toString(),
-            page_size: pageSize.toString()
+            page_size: pageSize.toString(),
+            // 列表只取卡片需要的字段，正文只取摘要，全文在详情页加载
+            fields: 'title,groupId,created,isMatched,botReplied,authorInfo,keywordList,contentPreview'
         });
         
         // 添加筛选参数
@@ -204,7 +206,7 @@ function createPostCard(post) {
     
     const authorName = post.authorInfo?.name || '未知';
     const created = formatDate(post.created);
-    const content = post.content || '';
+    const preview = post.contentPreview || '';
     const keywords = post.keywordList || [];
 
     card.innerHTML = `
@@ -217,7 +219,7 @@ function createPostCard(post) {
             ${post.isMatched ? '<span style="color: #28a745;">✓ 已匹配</span>' : ''}
             ${post.botReplied ? '<span style="color: #007bff; margin-left: 10px;">🤖 已自动回复</span>' : ''}
         </div>
-        ${content ? `<div class="post-content">${escapeHtml(content.substring(0, 200))}${content.length > 200 ? '...' : ''}</div>` : ''}
+        ${preview ? `<div class="post-content">${escapeHtml(preview)}</div>` : ''}
         ${keywords.length > 0 ? `
             <div class="post-keywords">
                 ${keywords.map(k => `<span class="keyword-tag">${escapeHtml(k)}</span>`).join('')}
@@ -505,6 +507,10 @@ function createConfigCard(config) {
                     ${config.crawlComments !== false ? '✅ 是' : '❌ 否'}
                 </span>
             </div>
+            <div class="config-item">
+                <label>重复帖处理:</label>
+                <span>${{skip: '跳过', mark: '标记', link: '关联原帖'}[config.duplicatePolicy] || '跳过'}</span>
+            </div>
             <div class="config-item">
                 <label>创建时间:</label>
                 <span>${formatDate(config.createdAt)}</span>
@@ -546,6 +552,7 @@ function openConfigModal(config = null) {
         document.getElementById('sleep-seconds').value = config.sleepSeconds || 900;
         document.getElementById('config-enabled').checked = config.enabled !== false;
         document.getElementById('config-crawl-comments').checked = config.crawlComments !== false;
+        document.getElementById('duplicate-policy').value = config.duplicatePolicy || 'skip';
     } else {
         title.textContent = '添加爬虫配置';
         form.reset();
@@ -580,7 +587,8 @@ async function saveConfig() {
         pages: parseInt(document.getElementById('pages').value) || 10,
         sleepSeconds: parseInt(document.getElementById('sleep-seconds').value) || 900,
         enabled: document.getElementById('config-enabled').checked,
-        crawlComments: document.getElementById('config-crawl-comments').checked
+        crawlComments: document.getElementById('config-crawl-comments').checked,
+        duplicatePolicy: document.getElementById('duplicate-policy').value
     };
     
     // 只有当用户输入了新的 Cookie 时才添加到请求中
@@ -0,0 +1,161 @@
+package com.douban.bot.bench;
+
+import com.douban.bot.fake.FakeDoubanServer;
+import com.douban.bot.fake.FakeEnvironment;
+import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.utils.JsonUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 端到端压测：对接本地模拟豆瓣服务，测量爬取（列表页 → 帖子详情 → 评论分页 → 入库）和回复
+ * （LLM → add_comment → 回写）的吞吐量和延迟，结果输出到控制台和 target/benchmark/crawl-benchmark.json。
+ * 默认不执行，运行方式：
+ * <pre>
+ * mvn test -Dtest=CrawlBenchmark -Dbenchmark=true -Dbench.groups=4 -Dbench.topics=500 -Dbench.latencyMs=20
+ * </pre>
+ * 可调参数（系统属性）：bench.groups、bench.topics（每组帖子数）、bench.pages（每组爬取页数）、bench.comments（单帖最大评论数）、
+ * bench.latencyMs（模拟服务响应延迟上限，下限为其一半）、bench.errorRate（随机 403/429 比例）、bench.captchaRate、
+ * bench.threads（同时爬取的配置数）、bench.replies（回复次数）、bench.delayScale（请求间等待倍数，默认 0）
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CrawlBenchmark {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void crawlAndReply() throws Exception {
+        int groups = Integer.getInteger("bench.groups", 4);
+        int topics = Integer.getInteger("bench.topics", 250);
+        int pages = Integer.getInteger("bench.pages", (topics + FakeDoubanServer.TOPICS_PER_LIST_PAGE - 1)
+                / FakeDoubanServer.TOPICS_PER_LIST_PAGE);
+        int maxComments = Integer.getInteger("bench.comments", 250);
+        int latencyMs = Integer.getInteger("bench.latencyMs", 10);
+        double errorRate = Double.parseDouble(System.getProperty("bench.errorRate", "0.01"));
+        double captchaRate = Double.parseDouble(System.getProperty("bench.captchaRate", "0.005"));
+        int threads = Integer.getInteger("bench.threads", 1);
+        int replies = Integer.getInteger("bench.replies", 50);
+        double delayScale = Double.parseDouble(System.getProperty("bench.delayScale", "0"));
+
+        try (FakeDoubanServer server = new FakeDoubanServer(groups, topics, maxComments)
+                .latency(latencyMs / 2, latencyMs)
+                .errorRate(errorRate)
+                .captchaRate(captchaRate)
+                .start()) {
+            FakeEnvironment env = new FakeEnvironment(server, dir, delayScale);
+
+            // 爬取：每个小组一个配置，按 bench.threads 并发执行
+            List<Long> crawlMillis = Collections.synchronizedList(new ArrayList<>());
+            long crawlStart = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int group = 0; group < groups; group++) {
+                CrawlerConfig config = env.crawlerConfig(group + 1, group, pages, true);
+                futures.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    env.crawlerService.crawl(config);
+                    crawlMillis.add((System.nanoTime() - start) / 1_000_000);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            double crawlSeconds = (System.nanoTime() - crawlStart) / 1e9;
+            Map<String, Object> stats = env.repository.getStats();
+            long posts = ((Number) stats.get("posts")).longValue();
+            long comments = ((Number) stats.get("comments")).longValue();
+            Map<String, Long> crawlRequests = snapshot(server);
+
+            // 回复：逐个处理未回复的帖子，记录每次的耗时
+            env.enableBot();
+            List<Long> replyMillis = new ArrayList<>();
+            long replyStart = System.nanoTime();
+            for (int i = 0; i < replies; i++) {
+                long start = System.nanoTime();
+                env.replyBotService.processOneUnrepliedPost(3600);
+                replyMillis.add((System.nanoTime() - start) / 1_000_000);
+            }
+            double replySeconds = (System.nanoTime() - replyStart) / 1e9;
+            long replied = ((Number) env.repository.getStats().get("replied")).longValue();
+
+            long totalRequests = crawlRequests.values().stream().mapToLong(Long::longValue).sum();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("groups", groups);
+            result.put("topicsPerGroup", topics);
+            result.put("pages", pages);
+            result.put("maxComments", maxComments);
+            result.put("latencyMs", latencyMs);
+            result.put("errorRate", errorRate);
+            result.put("captchaRate", captchaRate);
+            result.put("threads", threads);
+            result.put("delayScale", delayScale);
+            result.put("crawlSeconds", round(crawlSeconds));
+            result.put("posts", posts);
+            result.put("comments", comments);
+            result.put("postsPerSecond", round(posts / crawlSeconds));
+            result.put("commentsPerSecond", round(comments / crawlSeconds));
+            result.put("requestsPerSecond", round(totalRequests / crawlSeconds));
+            result.put("crawlRequests", crawlRequests);
+            result.put("captchaServed", server.captchaServed());
+            result.put("crawlMillisPerGroup", percentiles(crawlMillis));
+            result.put("replies", replied);
+            result.put("replySeconds", round(replySeconds));
+            result.put("repliesPerSecond", round(replied / replySeconds));
+            result.put("replyMillis", percentiles(replyMillis));
+
+            String json = JsonUtils.write(result, "{}");
+            Path output = Path.of("target", "benchmark", "crawl-benchmark.json");
+            Files.createDirectories(output.getParent());
+            Files.writeString(output, json, StandardCharsets.UTF_8);
+            System.out.println("[benchmark] " + json);
+            System.out.println("[benchmark] 结果已写入 " + output.toAbsolutePath());
+        }
+    }
+
+    private static Map<String, Long> snapshot(FakeDoubanServer server) {
+        Map<String, Long> counts = new TreeMap<>();
+        server.requestCounts().forEach((route, count) -> counts.put(route, count.get()));
+        return counts;
+    }
+
+    private static Map<String, Object> percentiles(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", sorted.size());
+        if (sorted.isEmpty()) {
+            return map;
+        }
+        map.put("p50", percentile(sorted, 0.50));
+        map.put("p95", percentile(sorted, 0.95));
+        map.put("p99", percentile(sorted, 0.99));
+        map.put("max", sorted.get(sorted.size() - 1));
+        map.put("mean", round(sorted.stream().mapToLong(Long::longValue).average().orElse(0)));
+        return map;
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
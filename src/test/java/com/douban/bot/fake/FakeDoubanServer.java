@@ -0,0 +1,476 @@
+package com.douban.bot.fake;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地模拟的豆瓣服务，app.douban-base-host 指向 {@link #baseUrl()} 即可在无网络时跑通爬取和回复流程。
+ * 按配置的规模生成小组首页、讨论列表、帖子页（含评论分页）和 add_comment 接口，
+ * 另外提供 OpenAI 兼容的 /v1/chat/completions 供回复流程使用。
+ * 可注入响应延迟、随机 403/429、连续限流（风暴）和验证码页面；设置 recordedDir 后优先返回录制的页面。
+ * 页面内容由小组/帖子编号确定性生成，同一配置多次运行结果一致
+ */
+public class FakeDoubanServer implements AutoCloseable {
+
+    public static final int TOPICS_PER_LIST_PAGE = 25;
+    public static final int COMMENTS_PER_PAGE = 100;
+
+    private static final Pattern GROUP_PATH = Pattern.compile("^/group/([^/]+)/$");
+    private static final Pattern DISCUSSION_PATH = Pattern.compile("^/group/([^/]+)/discussion$");
+    private static final Pattern TOPIC_PATH = Pattern.compile("^/group/topic/(\\d+)/$");
+    private static final Pattern ADD_COMMENT_PATH = Pattern.compile("^/group/topic/(\\d+)/add_comment$");
+    private static final DateTimeFormatter LIST_TIME = DateTimeFormatter.ofPattern("MM-dd HH:mm");
+    private static final DateTimeFormatter DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String[] WORDS = {
+            "整租", "合租", "一居室", "两居室", "地铁", "朝阳", "海淀", "望京", "国贸", "通州", "转租", "押一付一",
+            "南北通透", "精装修", "拎包入住", "近公园", "带阳台", "独卫", "主卧", "次卧", "限女生", "短租", "长租",
+            "小区安静", "采光好", "可养猫", "有电梯", "六楼", "民水民电", "燃气灶", "洗衣机", "空调", "冰箱",
+            "宽带", "房东直租", "无中介费", "随时看房", "下月入住", "价格可谈", "通勤方便", "步行五分钟", "公交站",
+            "超市", "菜市场", "健身房", "咖啡馆", "书店", "医院", "学校", "大学", "科技园", "软件园", "上班族",
+            "程序员", "设计师", "学生", "情侣", "室友", "作息规律", "爱干净", "不吸烟", "周末", "做饭", "安静"
+    };
+
+    private final int groups;
+    private final int topicsPerGroup;
+    private final int maxComments;
+    private final long baseTopicId;
+    private final LocalDateTime now = LocalDateTime.now().withSecond(0).withNano(0);
+
+    private volatile int minLatencyMs;
+    private volatile int maxLatencyMs;
+    private volatile double errorRate;
+    private volatile double captchaRate;
+    private volatile int captchaEvery;
+    private final AtomicLong getRequests = new AtomicLong();
+    private final AtomicLong captchaServed = new AtomicLong();
+    private volatile Path recordedDir;
+    private final AtomicInteger stormRemaining = new AtomicInteger();
+    private volatile int stormStatus = 429;
+
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+    private final Map<Long, Queue<String>> postedComments = new ConcurrentHashMap<>();
+    private final AtomicLong llmRequests = new AtomicLong();
+
+    private HttpServer server;
+
+    /**
+     * @param groups         小组数，小组 id 为 {@link #groupId(int)}
+     * @param topicsPerGroup 每个小组的帖子数，讨论列表每页 25 条，按最后回复时间倒序
+     * @param maxComments    单个帖子的最大评论数，各帖子的评论数在 0 到该值之间
+     */
+    public FakeDoubanServer(int groups, int topicsPerGroup, int maxComments) {
+        this.groups = groups;
+        this.topicsPerGroup = topicsPerGroup;
+        this.maxComments = maxComments;
+        this.baseTopicId = 300_000_000L;
+    }
+
+    public FakeDoubanServer latency(int minMs, int maxMs) {
+        this.minLatencyMs = minMs;
+        this.maxLatencyMs = Math.max(minMs, maxMs);
+        return this;
+    }
+
+    /**
+     * 每个请求以该概率随机返回 403 或 429
+     */
+    public FakeDoubanServer errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * 每个 GET 请求以该概率返回 200 的验证码页面
+     */
+    public FakeDoubanServer captchaRate(double rate) {
+        this.captchaRate = rate;
+        return this;
+    }
+
+    /**
+     * 每 n 个 GET 请求返回一次验证码页面（确定性，便于断言）
+     */
+    public FakeDoubanServer captchaEvery(int n) {
+        this.captchaEvery = n;
+        return this;
+    }
+
+    /**
+     * 接下来的 requests 个请求全部返回 status（限流风暴）
+     */
+    public FakeDoubanServer storm(int status, int requests) {
+        this.stormStatus = status;
+        this.stormRemaining.set(requests);
+        return this;
+    }
+
+    /**
+     * 录制页面目录：请求路径（含查询串）中的非字母数字字符替换为 "_" 后加 .html 作为文件名，存在时原样返回
+     */
+    public FakeDoubanServer recordedDir(Path dir) {
+        this.recordedDir = dir;
+        return this;
+    }
+
+    public FakeDoubanServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String llmBaseUrl() {
+        return baseUrl() + "/v1";
+    }
+
+    public static String groupId(int index) {
+        return "fakegroup" + index;
+    }
+
+    public long topicId(int group, int index) {
+        return baseTopicId + group * 1_000_000L + index;
+    }
+
+    public int topicsPerGroup() {
+        return topicsPerGroup;
+    }
+
+    /**
+     * 帖子的评论数（确定性生成）
+     */
+    public int commentCount(long topicId) {
+        return maxComments == 0 ? 0 : (int) (topicId % (maxComments + 1));
+    }
+
+    public long requestCount(String route) {
+        AtomicLong count = requestCounts.get(route);
+        return count != null ? count.get() : 0;
+    }
+
+    public Map<String, AtomicLong> requestCounts() {
+        return requestCounts;
+    }
+
+    public Map<Integer, AtomicLong> statusCounts() {
+        return statusCounts;
+    }
+
+    public long captchaServed() {
+        return captchaServed.get();
+    }
+
+    public long llmRequests() {
+        return llmRequests.get();
+    }
+
+    public List<String> postedComments(long topicId) {
+        Queue<String> comments = postedComments.get(topicId);
+        return comments != null ? List.copyOf(comments) : List.of();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            boolean isPost = "POST".equalsIgnoreCase(exchange.getRequestMethod());
+            String route = route(path);
+            requestCounts.computeIfAbsent(route, key -> new AtomicLong()).incrementAndGet();
+            sleepLatency();
+
+            if (path.equals("/v1/chat/completions") && isPost) {
+                llmRequests.incrementAndGet();
+                drain(exchange.getRequestBody());
+                String reply = "你好，请问房子还在吗？可以约时间看房吗？#" + llmRequests.get();
+                respond(exchange, 200, "application/json",
+                        "{\"id\":\"fake\",\"choices\":[{\"index\":0,\"finish_reason\":\"stop\","
+                                + "\"message\":{\"role\":\"assistant\",\"content\":\"" + reply + "\"}}],"
+                                + "\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":20,\"total_tokens\":140}}");
+                return;
+            }
+
+            if (stormRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                respond(exchange, stormStatus, "text/html", "<html><body>rate limited</body></html>");
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                respond(exchange, random.nextBoolean() ? 403 : 429, "text/html", "<html><body>rate limited</body></html>");
+                return;
+            }
+            long getIndex = isPost ? 0 : getRequests.incrementAndGet();
+            boolean captcha = !isPost && ((captchaRate > 0 && random.nextDouble() < captchaRate)
+                    || (captchaEvery > 0 && getIndex % captchaEvery == 0));
+            if (captcha) {
+                captchaServed.incrementAndGet();
+                respond(exchange, 200, "text/html",
+                        "<html><head><title>禁止访问</title></head><body><form id=\"captcha\">请输入验证码</form></body></html>");
+                return;
+            }
+
+            String recorded = recordedPage(path, query);
+            if (recorded != null) {
+                respond(exchange, 200, "text/html; charset=utf-8", recorded);
+                return;
+            }
+
+            Matcher matcher;
+            if (isPost && (matcher = ADD_COMMENT_PATH.matcher(path)).matches()) {
+                long topicId = Long.parseLong(matcher.group(1));
+                String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                String content = formValue(form, "rv_comment");
+                postedComments.computeIfAbsent(topicId, id -> new ConcurrentLinkedQueue<>()).add(content);
+                exchange.getResponseHeaders().set("Location", baseUrl() + "/group/topic/" + topicId + "/");
+                respond(exchange, 302, "text/html", "");
+                return;
+            }
+            if ((matcher = GROUP_PATH.matcher(path)).matches()) {
+                Integer group = groupIndex(matcher.group(1));
+                if (group != null) {
+                    respond(exchange, 200, "text/html; charset=utf-8", groupPage(matcher.group(1)));
+                    return;
+                }
+            }
+            if ((matcher = DISCUSSION_PATH.matcher(path)).matches()) {
+                Integer group = groupIndex(matcher.group(1));
+                if (group != null) {
+                    int start = intParam(query, "start");
+                    respond(exchange, 200, "text/html; charset=utf-8", discussionPage(group, start));
+                    return;
+                }
+            }
+            if ((matcher = TOPIC_PATH.matcher(path)).matches()) {
+                long topicId = Long.parseLong(matcher.group(1));
+                if (topicExists(topicId)) {
+                    respond(exchange, 200, "text/html; charset=utf-8", topicPage(topicId, intParam(query, "start")));
+                    return;
+                }
+            }
+            respond(exchange, 404, "text/html", "<html><body>not found</body></html>");
+        }
+    }
+
+    private static String route(String path) {
+        if (path.startsWith("/v1/")) {
+            return "llm";
+        }
+        if (path.endsWith("/add_comment")) {
+            return "add_comment";
+        }
+        if (path.startsWith("/group/topic/")) {
+            return "topic";
+        }
+        if (path.endsWith("/discussion")) {
+            return "discussion";
+        }
+        if (path.startsWith("/group/")) {
+            return "group";
+        }
+        return "other";
+    }
+
+    private String groupPage(String groupId) {
+        return "<html><head><title>" + groupId + "</title></head><body><div id=\"content\">"
+                + "<h1>模拟小组 " + groupId + "</h1>"
+                + "<div class=\"group-loc\">创建于2015-06-01 </div>"
+                + "<a href=\"" + baseUrl() + "/group/" + groupId + "/members\">浏览所有成员 (12345)</a>"
+                + "</div></body></html>";
+    }
+
+    /**
+     * 讨论列表：帖子按编号顺序排列（编号越小最后回复越新），超出帖子总数时返回空表格
+     */
+    private String discussionPage(int group, int start) {
+        StringBuilder html = new StringBuilder(8192);
+        html.append("<html><head><title>讨论</title></head><body><div id=\"content\"><table class=\"olt\">")
+                .append("<tr class=\"th\"><td>讨论</td><td>作者</td><td>回应</td><td>最后回应</td></tr>");
+        for (int i = start; i < Math.min(start + TOPICS_PER_LIST_PAGE, topicsPerGroup); i++) {
+            long topicId = topicId(group, i);
+            int comments = commentCount(topicId);
+            html.append("<tr><td class=\"title\"><a href=\"").append(baseUrl()).append("/group/topic/").append(topicId)
+                    .append("/\" title=\"").append(title(topicId)).append("\">").append(title(topicId)).append("</a></td>")
+                    .append("<td nowrap=\"nowrap\"><a href=\"").append(baseUrl()).append("/people/u").append(topicId % 997)
+                    .append("/\">用户").append(topicId % 997).append("</a></td>")
+                    .append("<td nowrap=\"nowrap\" class=\"r-count\">").append(comments > 0 ? comments : "").append("</td>")
+                    .append("<td nowrap=\"nowrap\" class=\"time\">").append(updated(i).format(LIST_TIME)).append("</td></tr>");
+        }
+        html.append("</table></div></body></html>");
+        return html.toString();
+    }
+
+    private String topicPage(long topicId, int start) {
+        int total = commentCount(topicId);
+        int totalPages = Math.max(1, (total + COMMENTS_PER_PAGE - 1) / COMMENTS_PER_PAGE);
+        int page = start / COMMENTS_PER_PAGE;
+        StringBuilder html = new StringBuilder(16384);
+        html.append("<html><head><title>").append(title(topicId)).append("</title>")
+                .append("<script>var _CONFIG = {ck: 'fakeck'};</script></head><body><div id=\"content\">")
+                .append("<h1>").append(title(topicId)).append("</h1>")
+                .append("<span class=\"create-time\">").append(now.minusDays(topicId % 30).format(DATETIME)).append("</span>")
+                .append("<div class=\"topic-content\"><p>").append(content(topicId)).append("</p></div>")
+                .append("<div>").append(total).append(" 回应</div><ul id=\"comments\">");
+        for (int i = start; i < Math.min(start + COMMENTS_PER_PAGE, total); i++) {
+            long commentId = topicId * 1000 + i;
+            html.append("<li class=\"comment-item\" data-id=\"").append(commentId).append("\">")
+                    .append("<a href=\"").append(baseUrl()).append("/people/c").append(i % 89).append("/\">评论者")
+                    .append(i % 89).append("</a>")
+                    .append("<span class=\"pubtime\">").append(now.minusMinutes(total - i).format(DATETIME)).append("</span>")
+                    .append("<p class=\"reply-content\">第").append(i + 1).append("楼 ").append(words(commentId, 6)).append("</p>")
+                    .append("<span class=\"like-count\">").append(i % 5).append("</span></li>");
+        }
+        if (page == 0) {
+            int index = 0;
+            for (String posted : postedComments(topicId)) {
+                html.append("<li class=\"comment-item\" data-id=\"").append(topicId * 1000 + 900 + index++).append("\">")
+                        .append("<p class=\"reply-content\">").append(posted).append("</p></li>");
+            }
+        }
+        html.append("</ul>");
+        if (totalPages > 1) {
+            html.append("<div class=\"paginator\"><span class=\"thispage\" data-total-page=\"").append(totalPages).append("\">")
+                    .append(page + 1).append("</span></div>");
+        }
+        html.append("</div></body></html>");
+        return html.toString();
+    }
+
+    private boolean topicExists(long topicId) {
+        long offset = topicId - baseTopicId;
+        int group = (int) (offset / 1_000_000L);
+        int index = (int) (offset % 1_000_000L);
+        return offset >= 0 && group < groups && index < topicsPerGroup;
+    }
+
+    private Integer groupIndex(String groupId) {
+        if (!groupId.startsWith("fakegroup")) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(groupId.substring("fakegroup".length()));
+            return index >= 0 && index < groups ? index : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private LocalDateTime updated(int index) {
+        return now.minusMinutes(index * 7L);
+    }
+
+    private static String title(long topicId) {
+        return words(topicId, 5) + " " + topicId % 10000;
+    }
+
+    private static String content(long topicId) {
+        return words(topicId * 31 + 7, 40);
+    }
+
+    /**
+     * 由种子确定性地选词，保证不同帖子的 SimHash 相差足够远，不会被当作近似重复
+     */
+    private static String words(long seed, int count) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(i % 6 == 5 ? "。" : "，");
+        }
+        return text.toString();
+    }
+
+    private String recordedPage(String path, String query) throws IOException {
+        Path dir = recordedDir;
+        if (dir == null) {
+            return null;
+        }
+        String key = (path + (query != null ? "?" + query : "")).replaceAll("[^A-Za-z0-9]", "_");
+        Path file = dir.resolve(key + ".html");
+        return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : null;
+    }
+
+    private void sleepLatency() {
+        int max = maxLatencyMs;
+        if (max <= 0) {
+            return;
+        }
+        int delay = max > minLatencyMs ? ThreadLocalRandom.current().nextInt(minLatencyMs, max + 1) : max;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        statusCounts.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        in.readAllBytes();
+    }
+
+    private static int intParam(String query, String name) {
+        String value = formValue(query, name);
+        try {
+            return value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String formValue(String form, String name) {
+        if (form == null) {
+            return null;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,89 @@
+package com.douban.bot.fake;
+
+import com.douban.bot.config.AppConfig;
+import com.douban.bot.db.BotConfigDao;
+import com.douban.bot.db.DatabaseConfig;
+import com.douban.bot.db.RepositoryService;
+import com.douban.bot.model.CrawlerConfig;
+import com.douban.bot.service.CrawlMetrics;
+import com.douban.bot.service.CrawlPermits;
+import com.douban.bot.service.CrawlerService;
+import com.douban.bot.service.DoubanApiService;
+import com.douban.bot.service.DuplicateDetector;
+import com.douban.bot.service.LlmClient;
+import com.douban.bot.service.ReplyBotService;
+import com.douban.bot.service.ResponseCache;
+import com.douban.bot.service.SessionBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jdbi.v3.core.Jdbi;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 不启动 Spring 容器，手工组装一套指向 {@link FakeDoubanServer} 的爬虫和回复服务，数据库为临时目录中的 SQLite 文件。
+ * 请求间等待按 delayScale 缩放（0 为不等待）
+ */
+public class FakeEnvironment {
+
+    public static final String COOKIE = "bid=fake; ck=fakeck";
+
+    public final FakeDoubanServer server;
+    public final AppConfig appConfig;
+    public final Jdbi jdbi;
+    public final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    public final RepositoryService repository;
+    public final ResponseCache responseCache;
+    public final CrawlerService crawlerService;
+    public final ReplyBotService replyBotService;
+
+    public FakeEnvironment(FakeDoubanServer server, Path dir, double delayScale) throws Exception {
+        this.server = server;
+        appConfig = new AppConfig();
+        appConfig.setDoubanBaseHost(server.baseUrl());
+        appConfig.setCookie(COOKIE);
+        appConfig.setCrawlerDelayScale(delayScale);
+
+        DatabaseConfig databaseConfig = new DatabaseConfig();
+        ReflectionTestUtils.setField(databaseConfig, "dbPath", dir.resolve("bench.sqlite3").toString());
+        jdbi = databaseConfig.jdbi(databaseConfig.dataSource());
+
+        CrawlMetrics metrics = new CrawlMetrics(meterRegistry, jdbi);
+        responseCache = new ResponseCache(appConfig, metrics);
+        repository = new RepositoryService(jdbi, appConfig, meterRegistry);
+        crawlerService = new CrawlerService(repository, appConfig, new DuplicateDetector(jdbi, appConfig),
+                new CrawlPermits(), metrics, responseCache, new SessionBreaker(appConfig, metrics), jdbi);
+        replyBotService = new ReplyBotService(repository, new LlmClient(appConfig, metrics), jdbi, appConfig,
+                new DoubanApiService(appConfig, metrics, responseCache), metrics);
+    }
+
+    public CrawlerConfig crawlerConfig(long id, int group, int pages, boolean crawlComments) {
+        String groupId = FakeDoubanServer.groupId(group);
+        return CrawlerConfig.builder()
+                .id(id)
+                .name("bench-" + groupId)
+                .groupUrl(server.baseUrl() + "/group/" + groupId + "/")
+                .groupId(groupId)
+                .keywords(List.of())
+                .excludeKeywords(List.of())
+                .pages(pages)
+                .sleepSeconds(900)
+                .enabled(true)
+                .cookie("")
+                .crawlComments(crawlComments)
+                .duplicatePolicy("skip")
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * 开启回复机器人，LLM 使用模拟服务的 /v1/chat/completions
+     */
+    public void enableBot() {
+        jdbi.useExtension(BotConfigDao.class, dao -> dao.update(true, "openai", server.llmBaseUrl(), "fake-key",
+                "fake-model", 0.7, 200, "[]", 0, 0, 0, 0, false, "", COOKIE, 1.0, 1,
+                LocalDateTime.now().format(BotConfigDao.DATETIME_FORMAT)));
+    }
+}
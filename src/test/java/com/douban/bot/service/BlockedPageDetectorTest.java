@@ -0,0 +1,50 @@
+package com.douban.bot.service;
+
+import com.douban.bot.service.BlockedPageDetector.Verdict;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 用 fixtures/blocked 下的页面检查反爬页面识别
+ */
+class BlockedPageDetectorTest {
+
+    @Test
+    void recognisesBlockedPages() throws IOException {
+        assertEquals(Verdict.CAPTCHA, BlockedPageDetector.detect(fixture("captcha")));
+        assertEquals(Verdict.RATE_LIMITED, BlockedPageDetector.detect(fixture("rate-limited")));
+        assertEquals(Verdict.LOGIN_REQUIRED, BlockedPageDetector.detect(fixture("login-required")));
+        assertEquals(Verdict.CAPTCHA, BlockedPageDetector.detect(
+                "<html><head><title>禁止访问</title></head><body><form id=\"captcha\">请输入验证码</form></body></html>"));
+        assertEquals(Verdict.CAPTCHA, BlockedPageDetector.detect("<HTML><BODY>Please solve the CAPTCHA</BODY></HTML>"));
+    }
+
+    @Test
+    void normalPageWithLoginLinkAndLateKeywordsIsOk() throws IOException {
+        // 导航栏的"登录"、靠后的帖子标题里的"验证码"和页尾脚本里的 captcha 都不算反爬页面
+        String page = fixture("normal-list");
+        assertEquals(Verdict.OK, BlockedPageDetector.detect(page));
+        assertEquals(Verdict.OK, BlockedPageDetector.detect("<html><body>" + "正文".repeat(BlockedPageDetector.PROBE_CHARS)
+                + "验证码</body></html>"));
+    }
+
+    @Test
+    void emptyResponses() {
+        assertEquals(Verdict.EMPTY, BlockedPageDetector.detect(null));
+        assertEquals(Verdict.EMPTY, BlockedPageDetector.detect(" \n"));
+        assertEquals(Verdict.OK, BlockedPageDetector.detect("{\"count\": 0}"));
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = BlockedPageDetectorTest.class.getResourceAsStream("/fixtures/blocked/" + name + ".html")) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
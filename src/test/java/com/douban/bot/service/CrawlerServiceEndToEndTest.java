@@ -0,0 +1,189 @@
+package com.douban.bot.service;
+
+import com.douban.bot.db.CrawlFrontierDao;
+import com.douban.bot.db.CrawlRunDao;
+import com.douban.bot.fake.FakeDoubanServer;
+import com.douban.bot.fake.FakeEnvironment;
+import com.douban.bot.model.CrawlerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对接本地模拟豆瓣服务跑完整的爬取和回复流程，不访问外网
+ */
+class CrawlerServiceEndToEndTest {
+
+    @TempDir
+    Path dir;
+
+    private FakeDoubanServer server;
+    private FakeEnvironment env;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeDoubanServer(1, 60, 150).start();
+        env = new FakeEnvironment(server, dir, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void crawlsListTopicsAndAllCommentPages() {
+        CrawlerConfig config = env.crawlerConfig(1, 0, 2, true);
+        env.crawlerService.crawl(config);
+
+        long expectedComments = 0;
+        for (int i = 0; i < 2 * FakeDoubanServer.TOPICS_PER_LIST_PAGE; i++) {
+            expectedComments += server.commentCount(server.topicId(0, i));
+        }
+        assertEquals(50L, env.repository.getStats().get("posts"));
+        assertEquals(expectedComments, env.repository.getStats().get("comments"));
+        assertEquals(2, server.requestCount("discussion"));
+        assertEquals(12345, env.repository.getGroupById(FakeDoubanServer.groupId(0)).getMemberCount());
+
+        // 指标带小组和配置标签
+        MeterRegistry registry = env.meterRegistry;
+        String groupId = FakeDoubanServer.groupId(0);
+        assertEquals(2, registry.get("douban.fetch").tags("group", groupId, "config", "1", "type", "list", "outcome", "ok")
+                .timer().count());
+        // 帖子详情页和之后的评论页都按流式解析
+        assertEquals(server.requestCount("topic"), registry.get("douban.parse")
+                .tags("group", groupId, "method", "parseTopicPage").timer().count());
+        assertTrue(registry.get("douban.fetch.bytes").tags("group", groupId, "type", "topic").summary().totalAmount() > 0);
+        assertEquals(50, registry.get("douban.db").tags("group", groupId, "dao", "PostDao", "method", "insertBody")
+                .timer().count());
+        // 预热会话使用 crawlGroupInfo 刚取到的小组首页
+        assertEquals(1, registry.get("douban.fetch.deduplicated").tags("type", "warmup", "reason", "hit")
+                .counter().count());
+
+        // 同样的事件汇总到爬取记录
+        List<CrawlRunDao.CrawlRun> runs = env.jdbi.onDemand(CrawlRunDao.class).findByConfigId(1, 10);
+        assertEquals(1, runs.size());
+        CrawlRunDao.CrawlRun run = runs.get(0);
+        assertEquals(CrawlRunDao.STATUS_DONE, run.status());
+        assertEquals(2, run.listPagesOk());
+        assertEquals(50, run.topicsOk());
+        assertEquals(50, run.postsNew());
+        assertEquals(expectedComments, run.commentsStored());
+        assertTrue(run.bytesIn() > 0);
+        assertTrue(run.fetchMs() + run.dbMs() <= run.finishedAt() - run.startedAt());
+    }
+
+    @Test
+    void recrawlSkipsUnchangedTopicsAndRetriesRateLimitedPages() {
+        CrawlerConfig config = env.crawlerConfig(1, 0, 1, false);
+        env.crawlerService.crawl(config);
+        long topicRequests = server.requestCount("topic");
+        long listRequests = server.requestCount("discussion");
+
+        // 两轮爬取的间隔远大于页面缓存的有效期
+        env.responseCache.clear();
+        // 预热请求之后的两个请求被限流，列表页重试后成功；回复数未变化的帖子不再抓取详情
+        server.storm(429, 3);
+        env.crawlerService.crawl(config);
+
+        assertEquals(topicRequests, server.requestCount("topic"));
+        assertTrue(server.requestCount("discussion") > listRequests + 1);
+        assertEquals(25L, env.repository.getStats().get("posts"));
+
+        CrawlRunDao.CrawlRun run = env.jdbi.onDemand(CrawlRunDao.class).findByConfigId(1, 1).get(0);
+        assertEquals(0, run.postsNew());
+        assertEquals(25, run.postsSkipped());
+
+        // 新帖抓取详情前后的两次状态检查只查一次库，保存后缓存失效，第二轮每帖再查一次
+        assertEquals(50, env.meterRegistry.get("douban.db").tags("dao", "PostDao", "method", "findCrawlState")
+                .timer().count());
+        assertEquals(25L, env.meterRegistry.get("cache.gets").tags("cache", "postStates", "result", "hit")
+                .functionCounter().count(), 0.0);
+    }
+
+    @Test
+    void captchaPagesAreRetried() {
+        server.captchaEvery(4);
+        env.crawlerService.crawl(env.crawlerConfig(1, 0, 1, false));
+        assertTrue(server.captchaServed() > 5);
+        assertTrue(env.meterRegistry.get("douban.fetch").tags("outcome", "blocked").timers().stream()
+                .mapToLong(timer -> timer.count()).sum() == server.captchaServed());
+        assertEquals(25L, env.repository.getStats().get("posts"));
+    }
+
+    @Test
+    void breakerPausesBlockedSessionAndRecovers() {
+        CrawlerConfig config = env.crawlerConfig(1, 0, 1, false);
+        env.crawlerService.crawl(config);
+        env.responseCache.clear();
+
+        // 连续被拒绝后熔断，等待结束只发一个探测请求，恢复后本轮爬取正常完成
+        server.storm(403, 12);
+        env.crawlerService.crawl(config);
+
+        CrawlRunDao.CrawlRun run = env.jdbi.onDemand(CrawlRunDao.class).findByConfigId(1, 1).get(0);
+        assertEquals(CrawlRunDao.STATUS_DONE, run.status());
+        assertEquals(1, run.listPagesOk());
+        assertTrue(env.meterRegistry.get("douban.breaker").tags("state", "open").counter().count() >= 1);
+        assertEquals(1, env.meterRegistry.get("douban.breaker").tags("state", "closed").counter().count());
+    }
+
+    @Test
+    void breakerEndsRunWhenSessionStaysBlocked() {
+        CrawlerConfig config = env.crawlerConfig(1, 0, 1, false);
+        env.crawlerService.crawl(config);
+        env.responseCache.clear();
+        long before = server.statusCounts().values().stream().mapToLong(count -> count.get()).sum();
+
+        // 一直被拒绝：探测间隔加倍到超过最长等待时间后结束本轮，任务不计失败、留到下次
+        server.storm(403, 1000);
+        env.crawlerService.crawl(config);
+
+        long requests = server.statusCounts().values().stream().mapToLong(count -> count.get()).sum() - before;
+        CrawlRunDao.CrawlRun run = env.jdbi.onDemand(CrawlRunDao.class).findByConfigId(1, 1).get(0);
+        assertEquals(CrawlRunDao.STATUS_PAUSED, run.status());
+        // 窗口中还有上一轮的 20 个正常请求，第 10 个被拒绝的请求触发熔断，之后只有 60/120/240 秒后的 3 次探测
+        assertTrue(requests <= 14, "熔断后仍发出了 " + requests + " 个请求");
+        assertTrue(env.jdbi.onDemand(CrawlFrontierDao.class).hasPending(1));
+    }
+
+    @Test
+    void repliesThroughFakeLlmAndAddComment() {
+        env.crawlerService.crawl(env.crawlerConfig(1, 0, 1, false));
+        env.enableBot();
+
+        for (int i = 0; i < 3; i++) {
+            env.replyBotService.processOneUnrepliedPost(60);
+        }
+
+        assertEquals(3, server.llmRequests());
+        assertEquals(3, server.requestCount("add_comment"));
+        assertEquals(3L, env.repository.getStats().get("replied"));
+        long topicsWithReply = 0;
+        for (int i = 0; i < FakeDoubanServer.TOPICS_PER_LIST_PAGE; i++) {
+            List<String> posted = server.postedComments(server.topicId(0, i));
+            if (!posted.isEmpty()) {
+                assertTrue(posted.get(0).startsWith("你好"));
+                topicsWithReply++;
+            }
+        }
+        assertEquals(3, topicsWithReply);
+        // 发送评论前访问的帖子页刚由爬虫抓取过，直接使用缓存；帖子页请求只多了评论接口 302 跳转后的 3 次
+        assertEquals(25 + 3, server.requestCount("topic"));
+        assertEquals(3, env.meterRegistry.get("douban.fetch.deduplicated").tags("type", "topic", "reason", "hit")
+                .counter().count());
+
+        assertEquals(3, env.meterRegistry.get("douban.reply.comment").tags("config", "bot", "outcome", "success")
+                .timer().count());
+        assertEquals(360, env.meterRegistry.get("douban.llm.tokens").tags("model", "fake-model", "type", "prompt")
+                .counter().count());
+    }
+}